@@ -0,0 +1,90 @@
+package io.bokun.inventory.plugin.harness.benchmark;
+
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.common.api.grpc.*;
+import io.bokun.inventory.plugin.api.grpc.*;
+import io.grpc.stub.*;
+
+/**
+ * Fake gRPC plugin for benchmarks: streams given number of (identical) products on every search, emitting them only
+ * while the harness is ready to receive, so it never buffers more than flow control allows. May wait before responding,
+ * to make calls take as long as they would against a real plugin.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+final class FakeStreamingPlugin extends PluginApiGrpc.PluginApiImplBase {
+
+    private final BasicProductInfo product = BasicProductInfo.newBuilder()
+            .setId("1")
+            .setName("Bókun test product")
+            .build();
+
+    private final int productCount;
+    private final long responseDelayMs;
+
+    @Nullable
+    private final ScheduledExecutorService delayScheduler;
+
+    FakeStreamingPlugin(int productCount) {
+        this(productCount, 0L, null);
+    }
+
+    /**
+     * @param responseDelayMs how long to wait before starting to respond.
+     * @param delayScheduler scheduler to wait on; required if there is a delay.
+     */
+    FakeStreamingPlugin(int productCount, long responseDelayMs, @Nullable ScheduledExecutorService delayScheduler) {
+        this.productCount = productCount;
+        this.responseDelayMs = responseDelayMs;
+        this.delayScheduler = delayScheduler;
+    }
+
+    @Override
+    public void searchProducts(SearchProductsRequest request, StreamObserver<BasicProductInfo> responseObserver) {
+        ServerCallStreamObserver<BasicProductInfo> stream = (ServerCallStreamObserver<BasicProductInfo>) responseObserver;
+        Emitter emitter = new Emitter(stream);
+        stream.setOnReadyHandler(emitter);
+        if (responseDelayMs > 0L) {
+            delayScheduler.schedule(emitter::start, responseDelayMs, TimeUnit.MILLISECONDS);
+        } else {
+            emitter.start();
+        }
+    }
+
+    /**
+     * Emits products once started, as long as the stream is ready. Runs either on gRPC or on delay scheduler thread.
+     */
+    private final class Emitter implements Runnable {
+
+        private final ServerCallStreamObserver<BasicProductInfo> stream;
+        private boolean started;
+        private int sent;
+
+        private Emitter(ServerCallStreamObserver<BasicProductInfo> stream) {
+            this.stream = stream;
+        }
+
+        synchronized void start() {
+            started = true;
+            run();
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!started) {
+                return;
+            }
+            while (stream.isReady() && sent < productCount) {
+                stream.onNext(product);
+                sent++;
+            }
+            if (sent == productCount) {
+                sent++;
+                stream.onCompleted();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.bokun.inventory.plugin.harness.benchmark;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import io.bokun.inventory.common.api.grpc.*;
+import io.bokun.inventory.plugin.api.grpc.*;
+import io.bokun.inventory.plugin.harness.*;
+import io.grpc.*;
+import io.grpc.netty.*;
+import io.grpc.stub.*;
+
+import static io.bokun.inventory.plugin.harness.GrpcTransportEngine.CallbackExecutor.*;
+
+/**
+ * Compares gRPC transport engine settings by keeping many short search calls in flight against a fake local plugin
+ * and measuring how many of them complete per second.
+ *
+ * <p>Run with <tt>./gradlew benchmark -Pbenchmark=GrpcEngineBenchmark</tt>.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class GrpcEngineBenchmark {
+
+    private static final int PRODUCTS_PER_CALL = 10;
+    private static final int CALLS_IN_FLIGHT = 512;
+    private static final int WARMUP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 100_000;
+
+    private GrpcEngineBenchmark() {
+    }
+
+    private static void runCalls(PluginApiGrpc.PluginApiStub stub, int calls) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(CALLS_IN_FLIGHT);
+        CountDownLatch done = new CountDownLatch(calls);
+        AtomicInteger failed = new AtomicInteger();
+        SearchProductsRequest request = SearchProductsRequest.getDefaultInstance();
+        for (int i = 0; i < calls; i++) {
+            inFlight.acquire();
+            stub.searchProducts(request, new StreamObserver<BasicProductInfo>() {
+                @Override
+                public void onNext(BasicProductInfo value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failed.incrementAndGet();
+                    onCompleted();
+                }
+
+                @Override
+                public void onCompleted() {
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failed.get() > 0) {
+            throw new IllegalStateException(failed.get() + " calls failed");
+        }
+    }
+
+    private static void measure(String name, GrpcTransportEngine engine, PluginData pluginData) throws InterruptedException {
+        GrpcChannelRegistry registry = new GrpcChannelRegistry(engine);
+        try {
+            PluginApiGrpc.PluginApiStub stub = PluginApiGrpc.newStub(registry.getChannel(pluginData));
+            runCalls(stub, WARMUP_CALLS);
+            long start = System.nanoTime();
+            runCalls(stub, MEASURED_CALLS);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%-60s %12.1f calls/s%n", name, MEASURED_CALLS * 1_000_000_000.0d / nanos);
+        } finally {
+            registry.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        Server server = NettyServerBuilder.forPort(0)
+                .addService(new FakeStreamingPlugin(PRODUCTS_PER_CALL))
+                .build()
+                .start();
+        try {
+            PluginData pluginData = new PluginData("localhost:" + server.getPort(), false, null, null, "GRPC", null, null);
+            System.out.printf("%d calls, %d in flight, %d products each%n", MEASURED_CALLS, CALLS_IN_FLIGHT, PRODUCTS_PER_CALL);
+            for (boolean nativeTransport : new boolean[] {false, true}) {
+                String transport = nativeTransport ? "native" : "nio";
+                measure("  " + transport + ", default executor", new GrpcTransportEngine(0, nativeTransport, DEFAULT, 0), pluginData);
+                measure("  " + transport + ", direct executor", new GrpcTransportEngine(0, nativeTransport, DIRECT, 0), pluginData);
+                measure("  " + transport + ", bounded executor", new GrpcTransportEngine(0, nativeTransport, BOUNDED, cores), pluginData);
+                measure("  " + transport + ", 1 event loop, direct executor", new GrpcTransportEngine(1, nativeTransport, DIRECT, 0), pluginData);
+            }
+        } finally {
+            server.shutdownNow().awaitTermination();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.bokun.inventory.plugin.harness.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import io.bokun.inventory.plugin.api.grpc.*;
+import io.bokun.inventory.plugin.harness.*;
+import io.bokun.inventory.plugin.harness.validation.*;
+import io.grpc.*;
+import io.grpc.netty.*;
+
+/**
+ * Measures how fast the harness drains a server-streaming gRPC response. A fake plugin listening on a local port
+ * streams products as fast as flow control lets it; the harness consumes them through {@link GrpcSearchProductsAction},
+ * either streaming them into a counting sink or collecting them all into a list.
+ *
+ * <p>Run with <tt>./gradlew benchmark -Pbenchmark=GrpcStreamBenchmark</tt>.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class GrpcStreamBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private GrpcStreamBenchmark() {
+    }
+
+    private static void measureDrain(String name, int productCount, Runnable drain) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            drain.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            drain.run();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf(
+                "%-60s %12.1f products/s%n",
+                name,
+                (long) productCount * MEASURED_ITERATIONS * 1_000_000_000.0d / nanos
+        );
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int productCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        Server server = NettyServerBuilder.forPort(0)
+                .addService(new FakeStreamingPlugin(productCount))
+                .build()
+                .start();
+        try {
+            PluginData pluginData = new PluginData("localhost:" + server.getPort(), false, null, null, "GRPC", null, null);
+            GrpcSearchProductsAction action = new GrpcSearchProductsAction(new BasicProductInfoValidator(new PricingCategoryValidator()));
+            List<PluginConfigurationParameterValue> configuration = Collections.emptyList();
+
+            System.out.printf("Search streaming %d products%n", productCount);
+            measureDrain("  streamed into counting sink", productCount, () -> action.search(pluginData, configuration, product -> { }));
+            measureDrain("  collected into list", productCount, () -> action.search(pluginData, configuration));
+        } finally {
+            GrpcUtil.shutdownChannels();
+            server.shutdownNow().awaitTermination();
+        }
+    }
+}
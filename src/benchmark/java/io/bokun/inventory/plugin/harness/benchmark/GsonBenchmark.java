@@ -0,0 +1,152 @@
+package io.bokun.inventory.plugin.harness.benchmark;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.time.*;
+import java.util.*;
+
+import com.google.common.collect.*;
+import com.google.gson.*;
+import io.bokun.inventory.plugin.api.rest.*;
+import okio.Buffer;
+
+import static io.bokun.inventory.plugin.harness.RestShallowAvailabilityAction.*;
+import static io.bokun.inventory.plugin.harness.RestUtil.*;
+import static io.bokun.inventory.plugin.harness.benchmark.Measurement.*;
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Compares JSON (de)serialization of REST models the way it used to be done (new {@link Gson} per call, whole body
+ * read into a string and parsed into an array) against the shared {@link Gson} instance with streaming decoding.
+ * Payloads are modelled after busy plugins: a month of deep availability with several start times a day, and
+ * product searches of various sizes.
+ *
+ * <p>Run with <tt>./gradlew benchmark -Pbenchmark=GsonBenchmark</tt>.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class GsonBenchmark {
+
+    private static final int START_TIMES_PER_DAY = 12;
+    private static final int RATES_PER_START_TIME = 3;
+    private static final int PRICING_CATEGORIES_PER_RATE = 4;
+
+    private GsonBenchmark() {
+    }
+
+    private static Price price(int amount) {
+        Price price = new Price();
+        price.setAmount(Integer.toString(amount));
+        price.setCurrency("EUR");
+        return price;
+    }
+
+    private static RateWithPrice rateWithPrice(int rateIndex) {
+        List<PricingCategoryWithPrice> categories = new ArrayList<>();
+        for (int i = 0; i < PRICING_CATEGORIES_PER_RATE; i++) {
+            PricingCategoryWithPrice categoryWithPrice = new PricingCategoryWithPrice();
+            categoryWithPrice.setPricingCategoryId("category-" + i);
+            categoryWithPrice.setPrice(price(100 + 10 * i + rateIndex));
+            categories.add(categoryWithPrice);
+        }
+        PricePerPerson pricePerPerson = new PricePerPerson();
+        pricePerPerson.setPricingCategoryWithPrice(categories);
+        RateWithPrice rateWithPrice = new RateWithPrice();
+        rateWithPrice.setRateId("rate-" + rateIndex);
+        rateWithPrice.setPricePerPerson(pricePerPerson);
+        return rateWithPrice;
+    }
+
+    private static byte[] deepAvailabilityPayload(int days) {
+        List<ProductAvailabilityWithRatesResponse> availabilities = new ArrayList<>();
+        LocalDate date = LocalDate.now();
+        for (int day = 0; day < days; day++) {
+            for (int startTime = 0; startTime < START_TIMES_PER_DAY; startTime++) {
+                List<RateWithPrice> rates = new ArrayList<>();
+                for (int rate = 0; rate < RATES_PER_START_TIME; rate++) {
+                    rates.add(rateWithPrice(rate));
+                }
+                ProductAvailabilityWithRatesResponse availability = new ProductAvailabilityWithRatesResponse();
+                availability.setDate(toApiDate(date.plusDays(day)));
+                availability.setRates(rates);
+                availabilities.add(availability);
+            }
+        }
+        return GSON.toJson(availabilities).getBytes(UTF_8);
+    }
+
+    private static byte[] searchPayload(int products) {
+        List<BasicProductInfo> result = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            BasicProductInfo product = new BasicProductInfo();
+            product.setId(Integer.toString(i));
+            product.setName("Bókun test product no. " + i);
+            result.add(product);
+        }
+        return GSON.toJson(result).getBytes(UTF_8);
+    }
+
+    private static ProductsAvailabilityRequest shallowAvailabilityRequest(int products) {
+        ProductsAvailabilityRequest request = new ProductsAvailabilityRequest();
+        request.setParameters(new ArrayList<>());
+        DatePeriod range = new DatePeriod();
+        range.setFrom(toApiDate(LocalDate.now()));
+        range.setTo(toApiDate(LocalDate.now().plusMonths(1L)));
+        request.setRange(range);
+        request.setRequiredCapacity(1L);
+        List<String> productIds = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            productIds.add(Integer.toString(i));
+        }
+        request.setExternalProductIds(productIds);
+        return request;
+    }
+
+    /**
+     * How array responses used to be decoded: new Gson, whole body as a string, reflective array, immutable copy.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> decodeBefore(byte[] payload, Class<T> clazz) {
+        String body = new String(payload, UTF_8);
+        Object arr = new Gson().fromJson(body, Array.newInstance(clazz, 0).getClass());
+        return ImmutableList.copyOf((T[]) arr);
+    }
+
+    /**
+     * How array responses are decoded now: shared Gson, elements streamed straight from the source and discarded.
+     */
+    private static <T> int decodeAfter(byte[] payload, Class<T> clazz) {
+        try {
+            return readJsonArray(new Buffer().write(payload), clazz, element -> { });
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static void writeJsonBody(Object value) {
+        try {
+            jsonBody(value).writeTo(new Buffer());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static <T> void compareDecoding(String payloadName, byte[] payload, Class<T> clazz, int opsPerIteration) {
+        System.out.printf("%s (%d KiB)%n", payloadName, payload.length / 1024);
+        measure("  before: new Gson + String + array copy", opsPerIteration, () -> decodeBefore(payload, clazz));
+        measure("  after:  shared Gson + streaming", opsPerIteration, () -> decodeAfter(payload, clazz));
+    }
+
+    public static void main(String[] args) {
+        compareDecoding("Deep availability, 1 month", deepAvailabilityPayload(31), ProductAvailabilityWithRatesResponse.class, 20);
+        compareDecoding("Deep availability, 1 year", deepAvailabilityPayload(365), ProductAvailabilityWithRatesResponse.class, 2);
+        compareDecoding("Search, 1k products", searchPayload(1_000), BasicProductInfo.class, 100);
+        compareDecoding("Search, 100k products", searchPayload(100_000), BasicProductInfo.class, 1);
+
+        ProductsAvailabilityRequest request = shallowAvailabilityRequest(100);
+        System.out.println("Shallow availability request, 100 products");
+        measure("  new Gson().toJson", 10_000, () -> new Gson().toJson(request));
+        measure("  shared Gson.toJson", 10_000, () -> GSON.toJson(request));
+        measure("  streamed into sink", 10_000, () -> writeJsonBody(request));
+    }
+}
@@ -0,0 +1,58 @@
+package io.bokun.inventory.plugin.harness.benchmark;
+
+import java.lang.management.*;
+
+import javax.annotation.*;
+
+/**
+ * Minimalistic single-threaded measurement loop for harness benchmarks: runs given operation in a few warm-up and
+ * measured iterations and reports throughput together with bytes allocated per operation.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+final class Measurement {
+
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+
+    private Measurement() {
+    }
+
+    /**
+     * Measures given operation and prints the result to standard output.
+     *
+     * @param name what is being measured.
+     * @param opsPerIteration how many times operation is run within a single iteration.
+     * @param operation operation to measure.
+     */
+    static void measure(@Nonnull String name, int opsPerIteration, @Nonnull Runnable operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(opsPerIteration, operation);
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long nanos = 0L;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            nanos += runIteration(opsPerIteration, operation);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long ops = (long) opsPerIteration * MEASURED_ITERATIONS;
+        System.out.printf(
+                "%-60s %12.1f ops/s %16d B/op%n",
+                name,
+                ops * 1_000_000_000.0d / nanos,
+                allocated / ops
+        );
+    }
+
+    private static long runIteration(int opsPerIteration, Runnable operation) {
+        long start = System.nanoTime();
+        for (int i = 0; i < opsPerIteration; i++) {
+            operation.run();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,134 @@
+package io.bokun.inventory.plugin.harness.benchmark;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import io.bokun.inventory.plugin.api.grpc.*;
+import io.bokun.inventory.plugin.harness.*;
+import io.bokun.inventory.plugin.harness.load.*;
+import io.bokun.inventory.plugin.harness.validation.*;
+import io.grpc.*;
+import io.grpc.netty.*;
+
+/**
+ * Compares platform and virtual worker threads by having many simulated clients make blocking calls through
+ * {@link GrpcSearchProductsAction} against a fake local plugin which takes a while to respond. Reports calls per
+ * second, peak number of live platform threads and growth of resident memory while the clients run.
+ *
+ * <p>Run with <tt>./gradlew benchmark -Pbenchmark=VirtualThreadBenchmark</tt> on JDK 21 or newer; on older ones only
+ * platform threads are measured. Optional arguments are numbers of clients to try, e.g. <tt>1000 10000</tt>.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class VirtualThreadBenchmark {
+
+    private static final long RESPONSE_DELAY_MS = 50L;
+    private static final int CALLS_PER_CLIENT = 20;
+    private static final long MEMORY_SAMPLING_MS = 100L;
+
+    private VirtualThreadBenchmark() {
+    }
+
+    /**
+     * @return resident memory of this process in kilobytes, or -1 if it can't be told (i.e. not on Linux).
+     */
+    private static long residentKb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return -1L;
+    }
+
+    private static void measure(WorkerThreads.Kind kind, int clients, Runnable call) throws InterruptedException {
+        System.gc();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long baselineKb = residentKb();
+        AtomicLong peakKb = new AtomicLong(baselineKb);
+        ScheduledExecutorService memorySampler = Executors.newSingleThreadScheduledExecutor();
+        memorySampler.scheduleAtFixedRate(
+                () -> peakKb.accumulateAndGet(residentKb(), Math::max),
+                0L,
+                MEMORY_SAMPLING_MS,
+                TimeUnit.MILLISECONDS
+        );
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = WorkerThreads.newExecutor(kind, clients, "benchmark-client-%d");
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            executor.execute(() -> {
+                for (int c = 0; c < CALLS_PER_CLIENT; c++) {
+                    try {
+                        call.run();
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1L, TimeUnit.HOURS);
+        long nanos = System.nanoTime() - start;
+        memorySampler.shutdownNow();
+        System.out.printf(
+                "  %-8s %6d clients %12.1f calls/s %8d peak threads %10s RSS growth %6d failed%n",
+                kind,
+                clients,
+                (long) clients * CALLS_PER_CLIENT * 1_000_000_000.0d / nanos,
+                threads.getPeakThreadCount(),
+                (baselineKb < 0L) ? "n/a" : ((peakKb.get() - baselineKb) / 1024L) + " MB",
+                failed.get()
+        );
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Integer> clientCounts = new ArrayList<>();
+        for (String arg : args) {
+            clientCounts.add(Integer.parseInt(arg));
+        }
+        if (clientCounts.isEmpty()) {
+            clientCounts.addAll(Arrays.asList(1_000, 10_000));
+        }
+        ScheduledExecutorService delayScheduler = Executors.newScheduledThreadPool(2);
+        Server server = NettyServerBuilder.forPort(0)
+                .addService(new FakeStreamingPlugin(1, RESPONSE_DELAY_MS, delayScheduler))
+                .build()
+                .start();
+        try {
+            PluginData pluginData = new PluginData("localhost:" + server.getPort(), false, null, null, "GRPC", null, null);
+            GrpcSearchProductsAction action = new GrpcSearchProductsAction(new BasicProductInfoValidator(new PricingCategoryValidator()));
+            List<PluginConfigurationParameterValue> configuration = Collections.emptyList();
+            Runnable call = () -> action.search(pluginData, configuration, product -> { });
+
+            List<WorkerThreads.Kind> kinds = new ArrayList<>();
+            kinds.add(WorkerThreads.Kind.PLATFORM);
+            if (WorkerThreads.isVirtualAvailable()) {
+                kinds.add(WorkerThreads.Kind.VIRTUAL);
+            } else {
+                System.out.println("Virtual threads are not available on this JDK, measuring platform threads only");
+            }
+            System.out.printf("Blocking searches taking %dms, %d per client%n", RESPONSE_DELAY_MS, CALLS_PER_CLIENT);
+            for (WorkerThreads.Kind kind : kinds) {
+                measure(kind, 100, call);      // warm-up
+            }
+            for (int clients : clientCounts) {
+                for (WorkerThreads.Kind kind : kinds) {
+                    measure(kind, clients, call);
+                }
+            }
+        } finally {
+            GrpcUtil.shutdownChannels();
+            server.shutdownNow().awaitTermination();
+            delayScheduler.shutdownNow();
+        }
+    }
+}
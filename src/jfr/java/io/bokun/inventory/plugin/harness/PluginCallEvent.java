@@ -0,0 +1,84 @@
+package io.bokun.inventory.plugin.harness;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder event of a single plugin call, spanning from the moment the call is made until its outcome is
+ * known. Only ever loaded if JFR is available in the running JVM, see {@link PluginCall}; hence all the access goes
+ * through {@link Recorder}, taking and returning plain {@link Object}s. Kept apart from the rest of the harness, in
+ * <tt>src/jfr</tt>, so that the harness still builds on JDK 8 older than 8u262, which has no JFR API; the event is
+ * left out of the build then.
+ *
+ * <p>Asynchronous calls begin on the caller's thread but are committed on the thread completing them, so event thread
+ * is that of HTTP client's dispatcher or gRPC callback executor.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+@Name("io.bokun.inventory.plugin.harness.PluginCall")
+@Label("Plugin Call")
+@Description("Call made by the harness to an inventory plugin")
+@Category("Plugin Harness")
+@StackTrace(false)
+final class PluginCallEvent extends Event {
+
+    @Label("Action")
+    private String action;
+
+    @Label("Transport")
+    private String transport;
+
+    @Label("Plugin")
+    private String plugin;
+
+    @Label("Product ID")
+    private String productId;
+
+    @Label("Request Size")
+    @DataAmount
+    private long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    private long responseBytes;
+
+    @Label("Elements")
+    @Description("Number of responses streamed, or of array elements returned")
+    private int elements;
+
+    @Label("Outcome")
+    private String outcome;
+
+    /**
+     * Emits plugin calls as {@link PluginCallEvent}s; instantiated reflectively by {@link PluginCall}.
+     */
+    static final class Recorder implements PluginCallRecorder {
+
+        @Override
+        public Object begin() {
+            PluginCallEvent event = new PluginCallEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        @Override
+        public void endAndCommit(Object begun, PluginCall call, String plugin, CallOutcome outcome, int elements) {
+            PluginCallEvent event = (PluginCallEvent) begun;
+            event.end();
+            if (!event.shouldCommit()) {
+                return;
+            }
+            event.action = call.actionType.methodName;
+            event.transport = call.transport.name();
+            event.plugin = plugin;
+            event.productId = call.productId;
+            event.requestBytes = call.getRequestBytes();
+            event.responseBytes = call.getResponseBytes();
+            event.elements = elements;
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+}
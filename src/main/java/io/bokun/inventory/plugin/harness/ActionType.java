@@ -0,0 +1,37 @@
+package io.bokun.inventory.plugin.harness;
+
+import javax.annotation.*;
+
+/**
+ * Kinds of calls harness makes to a plugin, regardless of transport.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public enum ActionType {
+
+    GET_DEFINITION("getDefinition", 30L),
+    SEARCH_PRODUCTS("searchProducts", 300L),
+    GET_PRODUCT_BY_ID("getProductById", 60L),
+    SHALLOW_AVAILABILITY("getAvailableProducts", 120L),
+    DEEP_AVAILABILITY("getProductAvailability", 120L),
+    CREATE_RESERVATION("createReservation", 120L),
+    CONFIRM_BOOKING("confirmBooking", 120L),
+    CREATE_AND_CONFIRM_BOOKING("createAndConfirmBooking", 120L),
+    CANCEL_BOOKING("cancelBooking", 120L);
+
+    /**
+     * Name of the plugin API method, as used in logs.
+     */
+    @Nonnull
+    public final String methodName;
+
+    /**
+     * How long (in seconds) plugin is given to complete the call unless configured otherwise.
+     */
+    public final long defaultDeadlineS;
+
+    ActionType(@Nonnull String methodName, long defaultDeadlineS) {
+        this.methodName = methodName;
+        this.defaultDeadlineS = defaultDeadlineS;
+    }
+}
@@ -0,0 +1,24 @@
+package io.bokun.inventory.plugin.harness;
+
+/**
+ * How a single call to a plugin has ended.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public enum CallOutcome {
+
+    /**
+     * Plugin has completed the call and returned a valid result.
+     */
+    SUCCESS,
+
+    /**
+     * Plugin has failed the call, or returned something harness could not accept.
+     */
+    ERROR,
+
+    /**
+     * Plugin did not complete the call within its deadline, hence the call was cancelled.
+     */
+    TIMEOUT
+}
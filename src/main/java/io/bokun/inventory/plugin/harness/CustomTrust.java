@@ -5,6 +5,7 @@ import java.security.*;
 import java.security.cert.Certificate;
 import java.security.cert.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.net.ssl.*;
 
@@ -32,18 +33,25 @@ import static java.nio.charset.StandardCharsets.*;
  */
 public final class CustomTrust {
 
+    /**
+     * Parsing certificates and initialising the SSL context is expensive, so it is done once per distinct certificate.
+     * Reusing the same socket factory also lets connections resume TLS sessions from its session cache.
+     */
+    private static final ConcurrentMap<String, SSLSocketFactory> socketFactories = new ConcurrentHashMap<>();
+
     private CustomTrust() {
     }
 
     public static void acceptSelfSignedCertificate(OkHttpClient client, String sslCertificate) {
-        X509TrustManager trustManager;
-        SSLSocketFactory sslSocketFactory;
+        client.setSslSocketFactory(socketFactories.computeIfAbsent(sslCertificate, CustomTrust::createSslSocketFactory));
+    }
+
+    private static SSLSocketFactory createSslSocketFactory(String sslCertificate) {
         try {
-            trustManager = trustManagerForCertificates(new ByteArrayInputStream(sslCertificate.getBytes(UTF_8)));
+            X509TrustManager trustManager = trustManagerForCertificates(new ByteArrayInputStream(sslCertificate.getBytes(UTF_8)));
             SSLContext sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, new TrustManager[] {trustManager}, null);
-            sslSocketFactory = sslContext.getSocketFactory();
-            client.setSslSocketFactory(sslSocketFactory);
+            return sslContext.getSocketFactory();
         } catch (GeneralSecurityException e) {
             throw new RuntimeException(e);
         }
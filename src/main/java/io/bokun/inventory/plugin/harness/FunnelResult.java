@@ -0,0 +1,149 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.*;
+import java.util.function.*;
+
+import javax.annotation.*;
+
+import com.google.common.collect.*;
+
+/**
+ * Outcome of a single pass through the booking funnel (definition, search, availability, booking, cancellation): how
+ * long each step took and, if the funnel did not complete, which step it failed at and why.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class FunnelResult {
+
+    private final Map<ActionType, Long> stepNanos;
+
+    @Nullable
+    private final ActionType failedStep;
+
+    @Nullable
+    private final String failedStepName;
+
+    @Nullable
+    private final String failure;
+
+    @Nullable
+    private final RuntimeException cause;
+
+    private FunnelResult(Map<ActionType, Long> stepNanos,
+                         @Nullable ActionType failedStep,
+                         @Nullable String failedStepName,
+                         @Nullable String failure,
+                         @Nullable RuntimeException cause) {
+        this.stepNanos = Maps.immutableEnumMap(stepNanos);
+        this.failedStep = failedStep;
+        this.failedStepName = failedStepName;
+        this.failure = failure;
+        this.cause = cause;
+    }
+
+    public boolean isSuccessful() {
+        return failedStepName == null;
+    }
+
+    /**
+     * @return time spent in each step taken, including the failed one. If a step called the plugin several times (e.g.
+     * shallow availability is retried until available product is found), this is the total of all calls.
+     */
+    @Nonnull
+    public Map<ActionType, Long> getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * @return plugin call funnel has failed at, or {@code null} if funnel has completed or failed at a step harness
+     * takes on its own.
+     */
+    @Nullable
+    public ActionType getFailedStep() {
+        return failedStep;
+    }
+
+    /**
+     * @return name of the step funnel has failed at, be it a plugin call or not, or {@code null} if funnel has completed.
+     */
+    @Nullable
+    public String getFailedStepName() {
+        return failedStepName;
+    }
+
+    @Nullable
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return exception the failed step has thrown, or {@code null} if funnel has completed or step failed without one
+     * (e.g. plugin has declined the reservation).
+     */
+    @Nullable
+    public RuntimeException getCause() {
+        return cause;
+    }
+
+    /**
+     * Times funnel steps as they are taken. Not thread safe; meant to be used by one funnel pass only.
+     */
+    public static final class Tracker {
+
+        private final Map<ActionType, Long> stepNanos = new EnumMap<>(ActionType.class);
+
+        @Nullable
+        private ActionType currentStep;
+
+        @Nullable
+        private String currentStepName;
+
+        /**
+         * Runs and times a single step of the funnel.
+         */
+        public <T> T step(@Nonnull ActionType step, @Nonnull Supplier<T> action) {
+            currentStep = step;
+            currentStepName = step.methodName;
+            long start = System.nanoTime();
+            try {
+                return action.get();
+            } finally {
+                stepNanos.merge(step, System.nanoTime() - start, Long::sum);
+            }
+        }
+
+        /**
+         * Runs a step of the funnel harness takes on its own, without calling the plugin, e.g. mapping configuration
+         * for it. It isn't timed, but funnel is reported as failed at it if it throws.
+         */
+        public <T> T prepare(@Nonnull String stepName, @Nonnull Supplier<T> action) {
+            currentStep = null;
+            currentStepName = stepName;
+            return action.get();
+        }
+
+        @Nonnull
+        public FunnelResult succeeded() {
+            return new FunnelResult(stepNanos, null, null, null, null);
+        }
+
+        /**
+         * @return result of funnel which has failed at given step without throwing.
+         */
+        @Nonnull
+        public FunnelResult failed(@Nonnull ActionType step, @Nonnull String failure) {
+            return new FunnelResult(stepNanos, step, step.methodName, failure, null);
+        }
+
+        /**
+         * @return result of funnel which has failed because the step being taken has thrown.
+         */
+        @Nonnull
+        public FunnelResult failed(@Nonnull RuntimeException cause) {
+            if (currentStepName == null) {
+                return new FunnelResult(stepNanos, ActionType.GET_DEFINITION, ActionType.GET_DEFINITION.methodName, String.valueOf(cause.getMessage()), cause);
+            }
+            return new FunnelResult(stepNanos, currentStep, currentStepName, String.valueOf(cause.getMessage()), cause);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
@@ -8,7 +9,6 @@ import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -32,41 +32,26 @@ public class GrpcCancelBookingAction implements Action {
 
     @Nonnull
     public CancelBookingResponse cancelBooking(@Nonnull PluginData pluginData, @Nonnull CancelBookingRequest cancelBookingRequest) {
-        List<CancelBookingResponse> result = new ArrayList<>(1);
-        withPluginStub(
-                pluginData,
-                stub -> {
-                    log.info("Calling ::cancelBooking@{}", pluginData.url);
-                    doWithLatch(
-                            latch -> stub.cancelBooking(
-                                    cancelBookingRequest,
-                                    new StreamObserver<CancelBookingResponse>() {
-                                        @Override
-                                        public void onNext(CancelBookingResponse response) {
-                                            result.add(response);
-                                        }
-
-                                        @Override
-                                        public void onError(Throwable throwable) {
-                                            log.error("Plugin erred on cancelling", throwable);
-                                            latch.countDown();
-                                        }
+        return awaitResult(cancelBookingAsync(pluginData, cancelBookingRequest));
+    }
 
-                                        @Override
-                                        public void onCompleted() {
-                                            latch.countDown();
-                                        }
-                                    }
-                            )
-                    );
+    @Nonnull
+    public CompletableFuture<CancelBookingResponse> cancelBookingAsync(@Nonnull PluginData pluginData, @Nonnull CancelBookingRequest cancelBookingRequest) {
+        log.info("Calling ::cancelBooking@{}", pluginData.url);
+        return GrpcUtil.<CancelBookingResponse>callPlugin(
+                pluginData,
+                ActionType.CANCEL_BOOKING,
+                (stub, observer) -> stub.cancelBooking(cancelBookingRequest, observer),
+                result -> {
+                    if (result.size() != 1) {
+                        log.error("Could not get booking cancelled");
+                        throw new IllegalStateException();
+                    }
+                    validateOrThrow(result.get(0), cancelBookingResponseValidator);
                 }
-        );
-        if (result.size() != 1) {
-            log.error("Could not get booking cancelled");
-            throw new IllegalStateException();
-        }
-        validateOrThrow(result.get(0), cancelBookingResponseValidator);
-        log.info("Success for ::cancelBooking@{}", pluginData.url);
-        return result.get(0);
+        ).thenApply(result -> {
+            log.info("Success for ::cancelBooking@{}", pluginData.url);
+            return result.get(0);
+        });
     }
 }
@@ -0,0 +1,131 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+import javax.net.ssl.*;
+
+import com.google.common.base.*;
+import io.grpc.*;
+import io.grpc.netty.*;
+import io.netty.handler.ssl.*;
+import org.slf4j.*;
+
+import static com.google.common.base.Strings.*;
+import static io.grpc.netty.NegotiationType.*;
+import static io.netty.handler.ssl.ClientAuth.*;
+import static io.netty.handler.ssl.SslProvider.*;
+
+/**
+ * Keeps one long-lived channel per plugin, so consecutive calls share the same TCP/TLS/HTTP2 connection instead of
+ * establishing a new one for every action. Channels are created lazily and live until {@link #shutdown()} is called.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class GrpcChannelRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(GrpcChannelRegistry.class);
+
+    private static final Splitter COLON_SPLITTER = Splitter.on(":");
+
+    /**
+     * How often to ping the plugin while there are calls in flight. Servers reject pings more frequent than
+     * 5 minutes by default, hence not going any lower.
+     */
+    private static final long KEEP_ALIVE_TIME_S = 300L;
+
+    /**
+     * How long to wait for ping acknowledgement before considering the connection dead.
+     */
+    private static final long KEEP_ALIVE_TIMEOUT_S = 20L;
+
+    /**
+     * How long to wait for in-flight calls to finish when shutting down.
+     */
+    private static final long SHUTDOWN_GRACE_PERIOD_S = 5L;
+
+    private final GrpcTransportEngine engine;
+
+    private final ConcurrentMap<PluginData, ManagedChannel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * @param engine event loops and executors shared by all channels; shut down together with the registry.
+     */
+    public GrpcChannelRegistry(@Nonnull GrpcTransportEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Returns the channel for given plugin, creating one if it does not exist yet.
+     *
+     * @param pluginData plugin config info for shaping the channel.
+     * @return shared channel, which must not be shut down by the caller.
+     */
+    @Nonnull
+    public ManagedChannel getChannel(@Nonnull PluginData pluginData) {
+        return channels.computeIfAbsent(pluginData, this::createChannel);
+    }
+
+    /**
+     * Shuts down all channels created so far, waiting a little for in-flight calls to complete, followed by the engine.
+     */
+    public void shutdown() {
+        List<ManagedChannel> toShutdown = new ArrayList<>(channels.values());
+        channels.clear();
+        toShutdown.forEach(ManagedChannel::shutdown);
+        for (ManagedChannel channel : toShutdown) {
+            try {
+                if (!channel.awaitTermination(SHUTDOWN_GRACE_PERIOD_S, TimeUnit.SECONDS)) {
+                    log.warn("Channel {} did not terminate in {}s, forcing shutdown", channel, SHUTDOWN_GRACE_PERIOD_S);
+                    channel.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                channel.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        engine.shutdown();
+    }
+
+    @Nonnull
+    private ManagedChannel createChannel(@Nonnull PluginData pluginData) {
+        log.debug("Opening channel to {}", pluginData.url);
+        NettyChannelBuilder channelBuilder;
+        if (pluginData.tls) {
+            SslContextBuilder sslContextBuilder = GrpcSslContexts.configure(SslContextBuilder.forClient(), OPENSSL);
+            if (!isNullOrEmpty(pluginData.cert)) {
+                // Some certs (such as GoDaddy), albeit valid, don't work with Java out of the box.
+                // Here we can add such certs to the trusted chain so this wouldn't cause us trouble. It also enables to use self-signed certs too
+                sslContextBuilder.trustManager(new ByteArrayInputStream(pluginData.cert.getBytes()));
+            }
+            SslContext sslContext;
+            try {
+                sslContext = sslContextBuilder          // if tls is enabled, decorate with SSL
+                        .sslProvider(OPENSSL)
+                        .clientAuth(OPTIONAL)
+                        .build();
+            } catch (SSLException ssle) {
+                log.error("Could not build SSL context", ssle);
+                throw new RuntimeException(ssle);
+            }
+
+            Iterator<String> urlWithPort = COLON_SPLITTER.split(pluginData.url).iterator();
+            String hostname = urlWithPort.next();
+            int port = Integer.parseInt(urlWithPort.next());
+
+            channelBuilder = NettyChannelBuilder.forAddress(hostname, port)
+                    .usePlaintext(false)
+                    .sslContext(sslContext)
+                    .negotiationType(TLS);
+        } else {
+            channelBuilder = NettyChannelBuilder.forTarget(pluginData.url)
+                    .usePlaintext(true);
+        }
+        return engine.configure(channelBuilder)
+                .keepAliveTime(KEEP_ALIVE_TIME_S, TimeUnit.SECONDS)
+                .keepAliveTimeout(KEEP_ALIVE_TIMEOUT_S, TimeUnit.SECONDS)
+                .build();
+    }
+}
@@ -1,6 +1,7 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
@@ -8,7 +9,6 @@ import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -32,41 +32,26 @@ public class GrpcConfirmBookingAction implements Action {
 
     @Nonnull
     public ConfirmBookingResponse confirmBooking(@Nonnull PluginData pluginData, @Nonnull ConfirmBookingRequest confirmBookingRequest) {
-        List<ConfirmBookingResponse> result = new ArrayList<>(1);
-        withPluginStub(
-                pluginData,
-                stub -> {
-                    log.info("Calling ::confirmBooking@{}", pluginData.url);
-                    doWithLatch(
-                            latch -> stub.confirmBooking(
-                                    confirmBookingRequest,
-                                    new StreamObserver<ConfirmBookingResponse>() {
-                                        @Override
-                                        public void onNext(ConfirmBookingResponse response) {
-                                            result.add(response);
-                                        }
-
-                                        @Override
-                                        public void onError(Throwable throwable) {
-                                            log.error("Plugin erred on confirming", throwable);
-                                            latch.countDown();
-                                        }
+        return awaitResult(confirmBookingAsync(pluginData, confirmBookingRequest));
+    }
 
-                                        @Override
-                                        public void onCompleted() {
-                                            latch.countDown();
-                                        }
-                                    }
-                            )
-                    );
+    @Nonnull
+    public CompletableFuture<ConfirmBookingResponse> confirmBookingAsync(@Nonnull PluginData pluginData, @Nonnull ConfirmBookingRequest confirmBookingRequest) {
+        log.info("Calling ::confirmBooking@{}", pluginData.url);
+        return GrpcUtil.<ConfirmBookingResponse>callPlugin(
+                pluginData,
+                ActionType.CONFIRM_BOOKING,
+                (stub, observer) -> stub.confirmBooking(confirmBookingRequest, observer),
+                result -> {
+                    if (result.size() != 1) {
+                        log.error("Could not get booking confirmed");
+                        throw new IllegalStateException();
+                    }
+                    validateOrThrow(result.get(0), confirmBookingResponseValidator);
                 }
-        );
-        if (result.size() != 1) {
-            log.error("Could not get booking confirmed");
-            throw new IllegalStateException();
-        }
-        validateOrThrow(result.get(0), confirmBookingResponseValidator);
-        log.info("Success for ::confirmBooking@{}", pluginData.url);
-        return result.get(0);
+        ).thenApply(result -> {
+            log.info("Success for ::confirmBooking@{}", pluginData.url);
+            return result.get(0);
+        });
     }
 }
@@ -1,6 +1,7 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
@@ -8,7 +9,6 @@ import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -32,41 +32,26 @@ public class GrpcCreateAndConfirmBookingAction implements Action {
 
     @Nonnull
     public ConfirmBookingResponse createAndConfirmBooking(@Nonnull PluginData pluginData, @Nonnull CreateConfirmBookingRequest request) {
-        List<ConfirmBookingResponse> result = new ArrayList<>(1);
-        withPluginStub(
-                pluginData,
-                stub -> {
-                    log.info("Calling ::createConfirmBooking@{}", pluginData.url);
-                    doWithLatch(
-                            latch -> stub.createAndConfirmBooking(
-                                    request,
-                                    new StreamObserver<ConfirmBookingResponse>() {
-                                        @Override
-                                        public void onNext(ConfirmBookingResponse response) {
-                                            result.add(response);
-                                        }
-
-                                        @Override
-                                        public void onError(Throwable throwable) {
-                                            log.error("Plugin erred on creating & confirming", throwable);
-                                            latch.countDown();
-                                        }
+        return awaitResult(createAndConfirmBookingAsync(pluginData, request));
+    }
 
-                                        @Override
-                                        public void onCompleted() {
-                                            latch.countDown();
-                                        }
-                                    }
-                            )
-                    );
+    @Nonnull
+    public CompletableFuture<ConfirmBookingResponse> createAndConfirmBookingAsync(@Nonnull PluginData pluginData, @Nonnull CreateConfirmBookingRequest request) {
+        log.info("Calling ::createConfirmBooking@{}", pluginData.url);
+        return GrpcUtil.<ConfirmBookingResponse>callPlugin(
+                pluginData,
+                ActionType.CREATE_AND_CONFIRM_BOOKING,
+                (stub, observer) -> stub.createAndConfirmBooking(request, observer),
+                result -> {
+                    if (result.size() != 1) {
+                        log.error("Could not get booking confirmed");
+                        throw new IllegalStateException();
+                    }
+                    validateOrThrow(result.get(0), confirmBookingResponseValidator);
                 }
-        );
-        if (result.size() != 1) {
-            log.error("Could not get booking confirmed");
-            throw new IllegalStateException();
-        }
-        validateOrThrow(result.get(0), confirmBookingResponseValidator);
-        log.info("Success for ::createConfirmBooking@{}", pluginData.url);
-        return result.get(0);
+        ).thenApply(result -> {
+            log.info("Success for ::createConfirmBooking@{}", pluginData.url);
+            return result.get(0);
+        });
     }
 }
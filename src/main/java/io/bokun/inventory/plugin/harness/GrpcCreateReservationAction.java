@@ -1,6 +1,7 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
@@ -8,7 +9,6 @@ import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -32,41 +32,26 @@ public class GrpcCreateReservationAction implements Action {
 
     @Nonnull
     public ReservationResponse createReservation(PluginData pluginData, ReservationRequest reservationRequest) {
-        List<ReservationResponse> result = new ArrayList<>(1);
-        withPluginStub(
-                pluginData,
-                stub -> {
-                    log.info("Calling ::createReservation@{} with params:{}", pluginData.url, reservationRequest);
-                    doWithLatch(
-                            latch -> stub.createReservation(
-                                    reservationRequest,
-                                    new StreamObserver<ReservationResponse>() {
-                                        @Override
-                                        public void onNext(ReservationResponse response) {
-                                            result.add(response);
-                                        }
-
-                                        @Override
-                                        public void onError(Throwable throwable) {
-                                            log.error("Plugin erred on reserving", throwable);
-                                            latch.countDown();
-                                        }
+        return awaitResult(createReservationAsync(pluginData, reservationRequest));
+    }
 
-                                        @Override
-                                        public void onCompleted() {
-                                            latch.countDown();
-                                        }
-                                    }
-                            )
-                    );
+    @Nonnull
+    public CompletableFuture<ReservationResponse> createReservationAsync(PluginData pluginData, ReservationRequest reservationRequest) {
+        log.info("Calling ::createReservation@{} with params:{}", pluginData.url, reservationRequest);
+        return GrpcUtil.<ReservationResponse>callPlugin(
+                pluginData,
+                ActionType.CREATE_RESERVATION,
+                (stub, observer) -> stub.createReservation(reservationRequest, observer),
+                result -> {
+                    if (result.size() != 1) {
+                        log.error("Could not get booking reserved");
+                        throw new IllegalStateException();
+                    }
+                    validateOrThrow(result.get(0), reservationResponseValidator);
                 }
-        );
-        if (result.size() != 1) {
-            log.error("Could not get booking reserved");
-            throw new IllegalStateException();
-        }
-        validateOrThrow(result.get(0), reservationResponseValidator);
-        log.info("Success for ::createReservation@{}", pluginData.url);
-        return result.get(0);
+        ).thenApply(result -> {
+            log.info("Success for ::createReservation@{}", pluginData.url);
+            return result.get(0);
+        });
     }
 }
@@ -2,6 +2,8 @@ package io.bokun.inventory.plugin.harness;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import javax.annotation.*;
 
@@ -10,7 +12,6 @@ import io.bokun.inventory.common.api.grpc.Date;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -38,6 +39,46 @@ public class GrpcDeepAvailabilityAction implements Action {
                                                                       @Nonnull LocalDate from,
                                                                       @Nonnull LocalDate to,
                                                                       @Nonnull String productId) {
+        return awaitResult(getAvailabilityAsync(pluginData, pluginConfiguration, from, to, productId));
+    }
+
+    /**
+     * Same as {@link #getAvailability(PluginData, Collection, LocalDate, LocalDate, String)}, but streams the
+     * availabilities: each of them is validated and passed to the consumer as soon as it is received.
+     *
+     * @return number of availabilities returned by plugin.
+     */
+    public int getAvailability(@Nonnull PluginData pluginData,
+                               @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                               @Nonnull LocalDate from,
+                               @Nonnull LocalDate to,
+                               @Nonnull String productId,
+                               @Nonnull Consumer<? super ProductAvailabilityWithRatesResponse> availabilityConsumer) {
+        return awaitResult(getAvailabilityAsync(pluginData, pluginConfiguration, from, to, productId, availabilityConsumer));
+    }
+
+    @Nonnull
+    public CompletableFuture<List<ProductAvailabilityWithRatesResponse>> getAvailabilityAsync(@Nonnull PluginData pluginData,
+                                                                                              @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                                                              @Nonnull LocalDate from,
+                                                                                              @Nonnull LocalDate to,
+                                                                                              @Nonnull String productId) {
+        List<ProductAvailabilityWithRatesResponse> result = new ArrayList<>();
+        return getAvailabilityAsync(pluginData, pluginConfiguration, from, to, productId, result::add)
+                .thenApply(count -> result);
+    }
+
+    /**
+     * Asynchronous version of {@link #getAvailability(PluginData, Collection, LocalDate, LocalDate, String, Consumer)};
+     * availabilities are passed to the consumer on gRPC executor thread.
+     */
+    @Nonnull
+    public CompletableFuture<Integer> getAvailabilityAsync(@Nonnull PluginData pluginData,
+                                                           @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                           @Nonnull LocalDate from,
+                                                           @Nonnull LocalDate to,
+                                                           @Nonnull String productId,
+                                                           @Nonnull Consumer<? super ProductAvailabilityWithRatesResponse> availabilityConsumer) {
         ProductAvailabilityRequest availabilityRequest = ProductAvailabilityRequest.newBuilder()
                 .addAllParameters(pluginConfiguration)
                 .setRange(
@@ -49,32 +90,16 @@ public class GrpcDeepAvailabilityAction implements Action {
                 .setProductId(productId)
                 .build();
 
-        List<ProductAvailabilityWithRatesResponse> result = new ArrayList<>();
-        withPluginStub(
+        return GrpcUtil.<ProductAvailabilityWithRatesResponse>streamFromPlugin(
                 pluginData,
-                stub -> doWithLatch(
-                        latch -> stub.getProductAvailability(
-                                availabilityRequest,
-                                new StreamObserver<ProductAvailabilityWithRatesResponse>() {
-                                    @Override
-                                    public void onNext(ProductAvailabilityWithRatesResponse response) {
-                                        result.add(response);
-                                    }
-
-                                    @Override
-                                    public void onError(Throwable throwable) {
-                                        log.error("Plugin erred on deep avail check", throwable);
-                                        latch.countDown();
-                                    }
-
-                                    @Override
-                                    public void onCompleted() {
-                                        latch.countDown();
-                                    }
-                                })
-                )
+                ActionType.DEEP_AVAILABILITY,
+                productId,
+                (stub, observer) -> stub.getProductAvailability(availabilityRequest, observer),
+                response -> {
+                    validateOrThrow(response, responseValidator);
+                    availabilityConsumer.accept(response);
+                },
+                count -> { }
         );
-        result.forEach(response -> validateOrThrow(response, responseValidator));
-        return result;
     }
 }
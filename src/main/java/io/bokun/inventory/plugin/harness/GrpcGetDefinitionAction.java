@@ -1,12 +1,13 @@
 package io.bokun.inventory.plugin.harness;
 
+import java.util.concurrent.*;
+
 import javax.annotation.*;
 
 import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -30,41 +31,26 @@ public class GrpcGetDefinitionAction implements Action {
 
     @Nonnull
     public PluginDefinition getDefinition(PluginData pluginData) {
-        PluginDefinition[] result = new PluginDefinition[1];
-        withPluginStub(
-                pluginData,
-                stub -> {
-                    log.info("Calling ::getDefinition@{}", pluginData.url);
-                    doWithLatch(
-                            latch -> stub.getDefinition(
-                                    Empty.getDefaultInstance(),
-                                    new StreamObserver<PluginDefinition>() {
-                                        @Override
-                                        public void onNext(PluginDefinition pluginDefinition) {
-                                            if (result[0] != null) {
-                                                log.error("Plugin can only send one definition only");
-                                                throw new IllegalStateException("Plugin can only send one definition only");
-                                            }
-                                            result[0] = pluginDefinition;
-                                        }
-
-                                        @Override
-                                        public void onError(Throwable throwable) {
-                                            log.error("Plugin erred on returning definition", throwable);
-                                            latch.countDown();
-                                        }
+        return awaitResult(getDefinitionAsync(pluginData));
+    }
 
-                                        @Override
-                                        public void onCompleted() {
-                                            latch.countDown();
-                                        }
-                                    }
-                            )
-                    );
+    @Nonnull
+    public CompletableFuture<PluginDefinition> getDefinitionAsync(PluginData pluginData) {
+        log.info("Calling ::getDefinition@{}", pluginData.url);
+        return GrpcUtil.<PluginDefinition>callPlugin(
+                pluginData,
+                ActionType.GET_DEFINITION,
+                (stub, observer) -> stub.getDefinition(Empty.getDefaultInstance(), observer),
+                result -> {
+                    if (result.size() != 1) {
+                        log.error("Plugin can only send one definition only");
+                        throw new IllegalStateException("Plugin can only send one definition only");
+                    }
+                    validateOrThrow(result.get(0), pluginDefinitionValidator);
                 }
-        );
-        validateOrThrow(result[0], pluginDefinitionValidator);
-        log.info("Success for ::getDefinition@{}", pluginData.url);
-        return result[0];
+        ).thenApply(result -> {
+            log.info("Success for ::getDefinition@{}", pluginData.url);
+            return result.get(0);
+        });
     }
 }
@@ -1,6 +1,7 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
@@ -8,7 +9,6 @@ import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -34,6 +34,13 @@ public class GrpcGetProductByIdAction implements Action {
     public ProductDescription getProductById(@Nonnull PluginData pluginData,
                                              @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
                                              String productId) {
+        return awaitResult(getProductByIdAsync(pluginData, pluginConfiguration, productId));
+    }
+
+    @Nonnull
+    public CompletableFuture<ProductDescription> getProductByIdAsync(@Nonnull PluginData pluginData,
+                                                                     @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                                     String productId) {
         log.info("Searching for inventory products in plugin {}", pluginData.url);
 
         GetProductByIdRequest getRequest = GetProductByIdRequest.newBuilder()
@@ -41,39 +48,19 @@ public class GrpcGetProductByIdAction implements Action {
                 .setExternalId(productId)
                 .build();
 
-        Collection<ProductDescription> result = new ArrayList<>();
-        withPluginStub(
+        return GrpcUtil.<ProductDescription>callPlugin(
                 pluginData,
-                stub -> {
-                    doWithLatch(
-                            latch -> stub.getProductById(
-                                    getRequest,
-                                    new StreamObserver<ProductDescription>() {
-                                        @Override
-                                        public void onNext(ProductDescription productDescription) {
-                                            result.add(productDescription);
-                                        }
-
-                                        @Override
-                                        public void onError(Throwable throwable) {
-                                            log.error("Plugin erred on getProductById", throwable);
-                                            latch.countDown();
-                                        }
-
-                                        @Override
-                                        public void onCompleted() {
-                                            latch.countDown();
-                                        }
-                                    })
-                    );
+                ActionType.GET_PRODUCT_BY_ID,
+                productId,
+                (stub, observer) -> stub.getProductById(getRequest, observer),
+                result -> {
+                    if (result.size() != 1) {
+                        String error = "Too many or no products returned (" + result.size() + ")";
+                        log.error(error);
+                        throw new IllegalStateException(error);
+                    }
+                    validateOrThrow(result, productDescriptionValidator);
                 }
-        );
-        if (result.size() != 1) {
-            String error = "Too many or no products returned (" + result.size() + ")";
-            log.error(error);
-            throw new IllegalStateException(error);
-        }
-        validateOrThrow(result, productDescriptionValidator);
-        return result.iterator().next();
+        ).thenApply(result -> result.get(0));
     }
 }
@@ -2,8 +2,11 @@ package io.bokun.inventory.plugin.harness;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 
+import javax.annotation.*;
+
 import com.google.common.collect.*;
 import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
@@ -24,7 +27,7 @@ import static java.lang.Math.*;
  *
  * @author Mindaugas Žakšauskas
  */
-public class GrpcHarness {
+public class GrpcHarness implements Harness {
 
     private static final Logger log = LoggerFactory.getLogger(GrpcHarness.class);
 
@@ -41,6 +44,11 @@ public class GrpcHarness {
 
     private final Random prng = new Random(System.nanoTime());
 
+    /**
+     * How many products to check shallow availability for when preparing the workload.
+     */
+    private static final int WORKLOAD_AVAILABILITY_SAMPLE = 30;
+
     @Inject
     public GrpcHarness(GrpcGetDefinitionAction grpcGetDefinitionAction,
                        GrpcConfigurePluginAction grpcConfigurePluginAction,
@@ -204,27 +212,53 @@ public class GrpcHarness {
         return bookingSource.build();
     }
 
-    public void runEndToEnd(Main.Configuration configuration) {
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    @Override
+    public FunnelResult runEndToEnd(@Nonnull Main.Configuration configuration) {
+        FunnelResult.Tracker funnel = new FunnelResult.Tracker();
+        try {
+            return runEndToEnd(configuration, funnel);
+        } catch (RuntimeException e) {
+            log.error("Funnel has failed", e);
+            return funnel.failed(e);
+        }
+    }
+
+    @Nonnull
+    private FunnelResult runEndToEnd(Main.Configuration configuration, FunnelResult.Tracker funnel) {
         // step 1: get and validate plugin definition
-        PluginDefinition pluginDefinition = grpcGetDefinitionAction.getDefinition(configuration.pluginData);
+        PluginDefinition pluginDefinition = funnel.step(
+                ActionType.GET_DEFINITION,
+                () -> grpcGetDefinitionAction.getDefinition(configuration.pluginData)
+        );
         log.info("Received definition for plugin {}", pluginDefinition.getName());
         log.debug("Definition: {}", pluginDefinition);
 
         // step 2: not really calling the plugin, but instead transforming environment variables into a list of plugin configuration parameters
-        Collection<PluginConfigurationParameterValue> pluginConfiguration =
-                grpcConfigurePluginAction.getPluginConfigurationParameterValues(pluginDefinition);
+        Collection<PluginConfigurationParameterValue> pluginConfiguration = funnel.prepare(
+                "plugin configuration",
+                () -> grpcConfigurePluginAction.getPluginConfigurationParameterValues(configuration.pluginData, pluginDefinition)
+        );
         log.info("Received definition for plugin {}", pluginDefinition.getName());
 
         // step 3: searching for all products this plugin may provide. Supply configuration values built in the previous step.
-        List<BasicProductInfo> basicProducts = grpcSearchProductsAction.search(configuration.pluginData, pluginConfiguration);
-        log.info("Received total of {} products", basicProducts.size());
+        List<String> allProductIds = new ArrayList<>();
+        int productCount = funnel.step(
+                ActionType.SEARCH_PRODUCTS,
+                () -> grpcSearchProductsAction.search(
+                        configuration.pluginData,
+                        pluginConfiguration,
+                        basicProduct -> allProductIds.add(basicProduct.getId())
+                )
+        );
+        log.info("Received total of {} products", productCount);
 
         // step 4: make a shallow call for availabilities on a small range of products until we find availability
         LocalDate today = LocalDate.now();
         LocalDate monthLater = today.plusMonths(1L);
-        List<String> allProductIds = basicProducts.stream()
-                .map(BasicProductInfo::getId)
-                .collect(Collectors.toList());
         Set<String> availableProducts;
         do {
             Collection<String> randomThree = new ArrayList<>();
@@ -235,29 +269,38 @@ public class GrpcHarness {
             }
             if (randomThree.isEmpty()) {
                 log.error("Could not find products to check availability for.");
-                return;
+                return funnel.failed(ActionType.SHALLOW_AVAILABILITY, "No available products");
             }
 
-            availableProducts = grpcShallowAvailabilityAction.getAvailableProducts(configuration.pluginData, pluginConfiguration, today, monthLater, 1, randomThree);
+            availableProducts = funnel.step(
+                    ActionType.SHALLOW_AVAILABILITY,
+                    () -> grpcShallowAvailabilityAction.getAvailableProducts(configuration.pluginData, pluginConfiguration, today, monthLater, 1, randomThree)
+            );
         } while (availableProducts.isEmpty());
         String randomAvailableProductId = Iterables.get(availableProducts, prng.nextInt(availableProducts.size()));
         log.info("Will inquiry and make bookings for product id={}", randomAvailableProductId);
 
         // step 5: call getProductById on selected random product which has availability over next month and verify/inspect it
-        ProductDescription product = grpcGetProductByIdAction.getProductById(configuration.pluginData, pluginConfiguration, randomAvailableProductId);
+        ProductDescription product = funnel.step(
+                ActionType.GET_PRODUCT_BY_ID,
+                () -> grpcGetProductByIdAction.getProductById(configuration.pluginData, pluginConfiguration, randomAvailableProductId)
+        );
         log.info("Inquiry for product {} was successful: {}", randomAvailableProductId, product);
 
         // step 6: make deep availability call and get some pricing info.
-        List<ProductAvailabilityWithRatesResponse> deepAvailability = grpcDeepAvailabilityAction.getAvailability(
-                configuration.pluginData,
-                pluginConfiguration,
-                today,
-                monthLater,
-                product.getId()
+        List<ProductAvailabilityWithRatesResponse> deepAvailability = funnel.step(
+                ActionType.DEEP_AVAILABILITY,
+                () -> grpcDeepAvailabilityAction.getAvailability(
+                        configuration.pluginData,
+                        pluginConfiguration,
+                        today,
+                        monthLater,
+                        product.getId()
+                )
         );
         if (deepAvailability.isEmpty()) {
             log.error("No deep availability found even though shallow availability result was positive");
-            return;
+            return funnel.failed(ActionType.DEEP_AVAILABILITY, "No deep availability");
         }
         log.info("Found availabilities for product {}: {}", randomAvailableProductId, deepAvailability);
 
@@ -269,15 +312,19 @@ public class GrpcHarness {
                 .setTicketSupport(getRandomElement(product.getTicketSupportList()))
                 .build();
         ConfirmBookingResponse confirmBookingResponse;
+        ActionType confirmStep;
         if (pluginDefinition.getCapabilitiesList().contains(SUPPORTS_RESERVATIONS)) {
             ReservationRequest reservationRequest = ReservationRequest.newBuilder()
                     .setReservationData(reservationData)
                     .addAllParameters(pluginConfiguration)
                     .build();
-            ReservationResponse reservationResponse = grpcCreateReservationAction.createReservation(configuration.pluginData, reservationRequest);
+            ReservationResponse reservationResponse = funnel.step(
+                    ActionType.CREATE_RESERVATION,
+                    () -> grpcCreateReservationAction.createReservation(configuration.pluginData, reservationRequest)
+            );
             if (reservationResponse.getReservationResultCase() != SUCCESSFULRESERVATION) {
                 log.error("Could not make successful reservation");
-                return;
+                return funnel.failed(ActionType.CREATE_RESERVATION, "Reservation not successful");
             }
             log.info("Successfully reserved booking {}", reservationResponse);
             ConfirmBookingRequest confirmBookingRequest = ConfirmBookingRequest.newBuilder()
@@ -288,18 +335,26 @@ public class GrpcHarness {
                             confirmationData
                     )
                     .build();
-            confirmBookingResponse = grpcConfirmBookingAction.confirmBooking(configuration.pluginData, confirmBookingRequest);
+            confirmStep = ActionType.CONFIRM_BOOKING;
+            confirmBookingResponse = funnel.step(
+                    ActionType.CONFIRM_BOOKING,
+                    () -> grpcConfirmBookingAction.confirmBooking(configuration.pluginData, confirmBookingRequest)
+            );
         } else {
             CreateConfirmBookingRequest createConfirmRequest = CreateConfirmBookingRequest.newBuilder()
                     .addAllParameters(pluginConfiguration)
                     .setReservationData(reservationData)
                     .setConfirmationData(confirmationData)
                     .build();
-            confirmBookingResponse = grpcCreateAndConfirmBookingAction.createAndConfirmBooking(configuration.pluginData, createConfirmRequest);
+            confirmStep = ActionType.CREATE_AND_CONFIRM_BOOKING;
+            confirmBookingResponse = funnel.step(
+                    ActionType.CREATE_AND_CONFIRM_BOOKING,
+                    () -> grpcCreateAndConfirmBookingAction.createAndConfirmBooking(configuration.pluginData, createConfirmRequest)
+            );
         }
         if (confirmBookingResponse.getBookingResultCase() != SUCCESSFULBOOKING) {
             log.error("Could not successfully confirm booking");
-            return;
+            return funnel.failed(confirmStep, "Booking not successful");
         }
         log.info("Successfully confirmed booking {}", confirmBookingResponse);
 
@@ -308,12 +363,391 @@ public class GrpcHarness {
                 .addAllParameters(pluginConfiguration)
                 .setBookingConfirmationCode(confirmBookingResponse.getSuccessfulBooking().getBookingConfirmationCode())
                 .build();
-        CancelBookingResponse cancelBookingResponse = grpcCancelBookingAction.cancelBooking(configuration.pluginData, cancelBookingRequest);
+        CancelBookingResponse cancelBookingResponse = funnel.step(
+                ActionType.CANCEL_BOOKING,
+                () -> grpcCancelBookingAction.cancelBooking(configuration.pluginData, cancelBookingRequest)
+        );
         if (cancelBookingResponse.getCancellationResultCase() != SUCCESSFULCANCELLATION) {
             log.error("Could not successfully cancel booking");
-            return;
+            return funnel.failed(ActionType.CANCEL_BOOKING, "Cancellation not successful");
         }
         log.info("Successfully cancelled booking {}", cancelBookingResponse);
         log.info("Exiting...");
+        return funnel.succeeded();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    @Override
+    public Workload prepareWorkload(@Nonnull Main.Configuration configuration) {
+        PluginDefinition pluginDefinition = grpcGetDefinitionAction.getDefinition(configuration.pluginData);
+        Collection<PluginConfigurationParameterValue> pluginConfiguration =
+                grpcConfigurePluginAction.getPluginConfigurationParameterValues(configuration.pluginData, pluginDefinition);
+        List<String> allProductIds = new ArrayList<>();
+        grpcSearchProductsAction.search(
+                configuration.pluginData,
+                pluginConfiguration,
+                product -> allProductIds.add(product.getId())
+        );
+
+        // deep availability is best called for products having some; fall back to all products if none found in the sample
+        LocalDate today = LocalDate.now();
+        LocalDate monthLater = today.plusMonths(1L);
+        List<String> sample = new ArrayList<>(allProductIds);
+        Collections.shuffle(sample, prng);
+        Set<String> availableProducts = grpcShallowAvailabilityAction.getAvailableProducts(
+                configuration.pluginData,
+                pluginConfiguration,
+                today,
+                monthLater,
+                1,
+                sample.subList(0, min(WORKLOAD_AVAILABILITY_SAMPLE, sample.size()))
+        );
+        log.info("Prepared workload of {} products, {} of them available", allProductIds.size(), availableProducts.size());
+
+        // bookings are all made for the same product, on the dates it is available
+        ProductDescription bookableProduct = null;
+        List<ProductAvailabilityWithRatesResponse> bookableAvailability = Collections.emptyList();
+        if (!availableProducts.isEmpty()) {
+            bookableProduct = grpcGetProductByIdAction.getProductById(
+                    configuration.pluginData,
+                    pluginConfiguration,
+                    getRandomElement(availableProducts)
+            );
+            bookableAvailability = grpcDeepAvailabilityAction.getAvailability(
+                    configuration.pluginData,
+                    pluginConfiguration,
+                    today,
+                    monthLater,
+                    bookableProduct.getId()
+            );
+        }
+        if (bookableAvailability.isEmpty()) {
+            log.warn("No bookable product found, workload will not make bookings");
+        }
+        return new GrpcWorkload(
+                configuration.pluginData,
+                pluginConfiguration,
+                pluginDefinition.getCapabilitiesList().contains(SUPPORTS_RESERVATIONS),
+                allProductIds,
+                availableProducts.isEmpty() ? allProductIds : new ArrayList<>(availableProducts),
+                bookableProduct,
+                bookableAvailability,
+                false
+        );
+    }
+
+    /**
+     * Calls plugin actions on randomly picked products, over the next month. Reservations made are kept to be
+     * confirmed, and bookings made are kept to be cancelled by subsequent calls; if there are none, confirmation or
+     * cancellation is skipped rather than made on a reservation or booking made for it, which would be timed as part of
+     * it.
+     *
+     * <p>Bookings are made for the product found bookable when preparing the workload, on a random date it's available.
+     * Sessions instead follow a single product the way {@link #runEndToEnd(Main.Configuration)} does: the one picked
+     * out of shallow availability results is looked at, has its deep availability checked, and is booked on a date
+     * picked out of that. If there's no product to follow, session steps are skipped; if no date was found, booking
+     * is.</p>
+     */
+    private final class GrpcWorkload implements Workload {
+
+        private final PluginData pluginData;
+        private final Collection<PluginConfigurationParameterValue> pluginConfiguration;
+        private final boolean supportsReservations;
+        private final List<String> productIds;
+        private final List<String> availableProductIds;
+
+        @Nullable
+        private final ProductDescription bookableProduct;
+        private final List<ProductAvailabilityWithRatesResponse> bookableAvailability;
+
+        /**
+         * Whether this is a session, following a single product from availability to booking.
+         */
+        private final boolean session;
+
+        // picked by session steps, which complete on callback threads
+        @Nullable
+        private volatile String sessionProductId;
+        @Nullable
+        private volatile ProductDescription sessionProduct;
+        @Nullable
+        private volatile ProductAvailabilityWithRatesResponse sessionAvailability;
+
+        private final Set<ActionType> supportedActions;
+        private final Queue<ConfirmBookingRequest> pendingReservations = new ConcurrentLinkedQueue<>();
+        private final Queue<CancelBookingRequest> confirmedBookings = new ConcurrentLinkedQueue<>();
+
+        private GrpcWorkload(PluginData pluginData,
+                             Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                             boolean supportsReservations,
+                             List<String> productIds,
+                             List<String> availableProductIds,
+                             @Nullable ProductDescription bookableProduct,
+                             List<ProductAvailabilityWithRatesResponse> bookableAvailability,
+                             boolean session) {
+            this.pluginData = pluginData;
+            this.pluginConfiguration = pluginConfiguration;
+            this.supportsReservations = supportsReservations;
+            this.productIds = productIds;
+            this.availableProductIds = availableProductIds;
+            this.bookableProduct = bookableProduct;
+            this.bookableAvailability = bookableAvailability;
+            this.session = session;
+
+            Set<ActionType> supportedActions = EnumSet.of(
+                    ActionType.GET_DEFINITION,
+                    ActionType.SEARCH_PRODUCTS,
+                    ActionType.GET_PRODUCT_BY_ID,
+                    ActionType.SHALLOW_AVAILABILITY,
+                    ActionType.DEEP_AVAILABILITY
+            );
+            if (!bookableAvailability.isEmpty()) {
+                if (supportsReservations) {
+                    supportedActions.add(ActionType.CREATE_RESERVATION);
+                    supportedActions.add(ActionType.CONFIRM_BOOKING);
+                } else {
+                    supportedActions.add(ActionType.CREATE_AND_CONFIRM_BOOKING);
+                }
+                supportedActions.add(ActionType.CANCEL_BOOKING);
+            }
+            this.supportedActions = Sets.immutableEnumSet(supportedActions);
+        }
+
+        @Nonnull
+        @Override
+        public Set<ActionType> getSupportedActions() {
+            return supportedActions;
+        }
+
+        @Nullable
+        @Override
+        public CompletableFuture<?> start(@Nonnull ActionType actionType) {
+            if (!supportedActions.contains(actionType)) {
+                throw new UnsupportedOperationException("Workload does not support " + actionType);
+            }
+            LocalDate today = LocalDate.now();
+            switch (actionType) {
+                case GET_DEFINITION:
+                    return grpcGetDefinitionAction.getDefinitionAsync(pluginData);
+                case SEARCH_PRODUCTS:
+                    return grpcSearchProductsAction.searchAsync(pluginData, pluginConfiguration, product -> { });
+                case GET_PRODUCT_BY_ID:
+                    if (session) {
+                        String productId = sessionProductId;
+                        if (productId == null) {
+                            return null;
+                        }
+                        return grpcGetProductByIdAction.getProductByIdAsync(pluginData, pluginConfiguration, productId)
+                                .thenAccept(product -> sessionProduct = product);
+                    }
+                    return grpcGetProductByIdAction.getProductByIdAsync(pluginData, pluginConfiguration, getRandomElement(productIds));
+                case SHALLOW_AVAILABILITY: {
+                    CompletableFuture<Set<String>> availableProducts = grpcShallowAvailabilityAction.getAvailableProductsAsync(
+                            pluginData,
+                            pluginConfiguration,
+                            today,
+                            today.plusMonths(1L),
+                            1,
+                            ImmutableList.of(getRandomElement(productIds), getRandomElement(productIds), getRandomElement(productIds))
+                    );
+                    if (session) {
+                        return availableProducts.thenAccept(found -> sessionProductId = pickSessionProduct(found));
+                    }
+                    return availableProducts;
+                }
+                case DEEP_AVAILABILITY:
+                    if (session) {
+                        String productId = sessionProductId;
+                        if (productId == null) {
+                            return null;
+                        }
+                        return grpcDeepAvailabilityAction.getAvailabilityAsync(
+                                pluginData,
+                                pluginConfiguration,
+                                today,
+                                today.plusMonths(1L),
+                                productId
+                        ).thenAccept(availability -> sessionAvailability = availability.isEmpty() ? null : getRandomElement(availability));
+                    }
+                    return grpcDeepAvailabilityAction.getAvailabilityAsync(
+                            pluginData,
+                            pluginConfiguration,
+                            today,
+                            today.plusMonths(1L),
+                            getRandomElement(availableProductIds),
+                            availability -> { }
+                    );
+                case CREATE_RESERVATION: {
+                    ProductDescription product = getBookingProduct();
+                    ProductAvailabilityWithRatesResponse availability = getBookingAvailability();
+                    if ((product == null) || (availability == null)) {
+                        return null;
+                    }
+                    return reserve(product, availability)
+                            .thenAccept(pendingReservations::add);
+                }
+                case CONFIRM_BOOKING: {
+                    ConfirmBookingRequest pendingReservation = pendingReservations.poll();
+                    if (pendingReservation == null) {
+                        return null;
+                    }
+                    return confirm(pendingReservation)
+                            .thenAccept(confirmedBookings::add);
+                }
+                case CREATE_AND_CONFIRM_BOOKING: {
+                    ProductDescription product = getBookingProduct();
+                    ProductAvailabilityWithRatesResponse availability = getBookingAvailability();
+                    if ((product == null) || (availability == null)) {
+                        return null;
+                    }
+                    return createAndConfirm(product, availability)
+                            .thenAccept(confirmedBookings::add);
+                }
+                case CANCEL_BOOKING: {
+                    CancelBookingRequest confirmedBooking = confirmedBookings.poll();
+                    if (confirmedBooking == null) {
+                        return null;
+                    }
+                    return cancel(confirmedBooking);
+                }
+                default:
+                    throw new UnsupportedOperationException("Workload does not support " + actionType);
+            }
+        }
+
+        @Nonnull
+        @Override
+        public Workload newSession() {
+            return new GrpcWorkload(
+                    pluginData,
+                    pluginConfiguration,
+                    supportsReservations,
+                    productIds,
+                    availableProductIds,
+                    bookableProduct,
+                    bookableAvailability,
+                    true
+            );
+        }
+
+        @Override
+        public void cleanUp() {
+            int abandonedReservations = pendingReservations.size();
+            pendingReservations.clear();
+            if (abandonedReservations > 0) {
+                log.info("{} reservations left unconfirmed by workload, leaving them to expire", abandonedReservations);
+            }
+            List<CompletableFuture<?>> cancellations = new ArrayList<>();
+            for (CancelBookingRequest confirmedBooking; (confirmedBooking = confirmedBookings.poll()) != null; ) {
+                cancellations.add(cancel(confirmedBooking));
+            }
+            if (!cancellations.isEmpty()) {
+                log.info("Cancelling {} bookings left by workload", cancellations.size());
+                CompletableFuture.allOf(cancellations.toArray(new CompletableFuture[0]))
+                        .exceptionally(t -> null)
+                        .join();
+            }
+        }
+
+        /**
+         * @return product for the session to follow: one of those found available or, if none of the products checked
+         * is, one known to be, so that session goes on; {@code null} if there's no product to follow.
+         */
+        @Nullable
+        private String pickSessionProduct(Set<String> found) {
+            if (!found.isEmpty()) {
+                return getRandomElement(found);
+            }
+            return availableProductIds.isEmpty() ? null : getRandomElement(availableProductIds);
+        }
+
+        /**
+         * @return product to book, or {@code null} if session hasn't looked at one.
+         */
+        @Nullable
+        private ProductDescription getBookingProduct() {
+            return session ? sessionProduct : bookableProduct;
+        }
+
+        /**
+         * @return date and rates to book, or {@code null} if session has found none.
+         */
+        @Nullable
+        private ProductAvailabilityWithRatesResponse getBookingAvailability() {
+            return session ? sessionAvailability : getRandomElement(bookableAvailability);
+        }
+
+        /**
+         * @return request confirming the reservation made.
+         */
+        private CompletableFuture<ConfirmBookingRequest> reserve(ProductDescription product, ProductAvailabilityWithRatesResponse availability) {
+            ReservationData reservationData = prepareReservationData(product, availability);
+            ReservationRequest reservationRequest = ReservationRequest.newBuilder()
+                    .setReservationData(reservationData)
+                    .addAllParameters(pluginConfiguration)
+                    .build();
+            return grpcCreateReservationAction.createReservationAsync(pluginData, reservationRequest)
+                    .thenApply(reservationResponse -> {
+                        if (reservationResponse.getReservationResultCase() != SUCCESSFULRESERVATION) {
+                            throw new IllegalStateException("Reservation not successful");
+                        }
+                        return ConfirmBookingRequest.newBuilder()
+                                .addAllParameters(pluginConfiguration)
+                                .setReservationConfirmationCode(reservationResponse.getSuccessfulReservation().getReservationConfirmationCode())
+                                .setReservationData(reservationData)
+                                .setConfirmationData(prepareConfirmationData(product))
+                                .build();
+                    });
+        }
+
+        /**
+         * @return request cancelling the booking made.
+         */
+        private CompletableFuture<CancelBookingRequest> confirm(ConfirmBookingRequest confirmBookingRequest) {
+            return grpcConfirmBookingAction.confirmBookingAsync(pluginData, confirmBookingRequest)
+                    .thenApply(this::toCancelBookingRequest);
+        }
+
+        /**
+         * @return request cancelling the booking made.
+         */
+        private CompletableFuture<CancelBookingRequest> createAndConfirm(ProductDescription product, ProductAvailabilityWithRatesResponse availability) {
+            CreateConfirmBookingRequest createConfirmRequest = CreateConfirmBookingRequest.newBuilder()
+                    .addAllParameters(pluginConfiguration)
+                    .setReservationData(prepareReservationData(product, availability))
+                    .setConfirmationData(prepareConfirmationData(product))
+                    .build();
+            return grpcCreateAndConfirmBookingAction.createAndConfirmBookingAsync(pluginData, createConfirmRequest)
+                    .thenApply(this::toCancelBookingRequest);
+        }
+
+        private CompletableFuture<CancelBookingResponse> cancel(CancelBookingRequest cancelBookingRequest) {
+            return grpcCancelBookingAction.cancelBookingAsync(pluginData, cancelBookingRequest)
+                    .thenApply(cancelBookingResponse -> {
+                        if (cancelBookingResponse.getCancellationResultCase() != SUCCESSFULCANCELLATION) {
+                            throw new IllegalStateException("Cancellation not successful");
+                        }
+                        return cancelBookingResponse;
+                    });
+        }
+
+        private ConfirmationData prepareConfirmationData(ProductDescription product) {
+            return ConfirmationData.newBuilder()
+                    .setTicketSupport(getRandomElement(product.getTicketSupportList()))
+                    .build();
+        }
+
+        private CancelBookingRequest toCancelBookingRequest(ConfirmBookingResponse confirmBookingResponse) {
+            if (confirmBookingResponse.getBookingResultCase() != SUCCESSFULBOOKING) {
+                throw new IllegalStateException("Booking not successful");
+            }
+            return CancelBookingRequest.newBuilder()
+                    .addAllParameters(pluginConfiguration)
+                    .setBookingConfirmationCode(confirmBookingResponse.getSuccessfulBooking().getBookingConfirmationCode())
+                    .build();
+        }
     }
 }
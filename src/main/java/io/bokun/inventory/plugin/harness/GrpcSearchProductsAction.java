@@ -1,6 +1,8 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import javax.annotation.*;
 
@@ -8,7 +10,6 @@ import com.google.inject.*;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.bokun.inventory.plugin.harness.validation.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -32,43 +33,58 @@ public class GrpcSearchProductsAction implements Action {
 
     public List<BasicProductInfo> search(@Nonnull PluginData pluginData,
                                          @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration) {
+        return awaitResult(searchAsync(pluginData, pluginConfiguration));
+    }
+
+    /**
+     * Same as {@link #search(PluginData, Collection)}, but streams the products: each of them is validated and passed to
+     * the consumer as soon as it is received, so the caller doesn't have to keep all of them in memory.
+     *
+     * @return number of products returned by plugin.
+     */
+    public int search(@Nonnull PluginData pluginData,
+                      @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                      @Nonnull Consumer<? super BasicProductInfo> productConsumer) {
+        return awaitResult(searchAsync(pluginData, pluginConfiguration, productConsumer));
+    }
+
+    @Nonnull
+    public CompletableFuture<List<BasicProductInfo>> searchAsync(@Nonnull PluginData pluginData,
+                                                                 @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration) {
+        List<BasicProductInfo> products = new ArrayList<>();
+        return searchAsync(pluginData, pluginConfiguration, products::add)
+                .thenApply(count -> products);
+    }
+
+    /**
+     * Asynchronous version of {@link #search(PluginData, Collection, Consumer)}; products are passed to the consumer on
+     * gRPC executor thread.
+     */
+    @Nonnull
+    public CompletableFuture<Integer> searchAsync(@Nonnull PluginData pluginData,
+                                                  @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                  @Nonnull Consumer<? super BasicProductInfo> productConsumer) {
         log.info("Searching for inventory products in plugin {}", pluginData.url);
 
         SearchProductsRequest pluginSearchRequest = SearchProductsRequest.newBuilder()
                 .addAllParameters(pluginConfiguration)
                 .build();
 
-        List<BasicProductInfo> result = Collections.synchronizedList(new ArrayList<>());
-        withPluginStub(
+        return GrpcUtil.<BasicProductInfo>streamFromPlugin(
                 pluginData,
-                stub -> doWithLatch(
-                        latch -> stub.searchProducts(
-                                pluginSearchRequest,
-                                new StreamObserver<BasicProductInfo>() {
-                                    @Override
-                                    public void onNext(BasicProductInfo basicProductInfo) {
-                                        result.add(basicProductInfo);
-                                    }
-
-                                    @Override
-                                    public void onError(Throwable throwable) {
-                                        log.error("Plugin erred on Search", throwable);
-                                        latch.countDown();
-                                    }
-
-                                    @Override
-                                    public void onCompleted() {
-                                        latch.countDown();
-                                    }
-                                })
-                )
+                ActionType.SEARCH_PRODUCTS,
+                (stub, observer) -> stub.searchProducts(pluginSearchRequest, observer),
+                product -> {
+                    validateOrThrow(product, basicProductInfoValidator);
+                    productConsumer.accept(product);
+                },
+                count -> {
+                    if (count == 0) {
+                        String error = "No products returned";
+                        log.error(error);
+                        throw new IllegalStateException(error);
+                    }
+                }
         );
-        if (result.isEmpty()) {
-            String error = "No products returned";
-            log.error(error);
-            throw new IllegalStateException(error);
-        }
-        validateOrThrow(result, basicProductInfoValidator);
-        return result;
     }
 }
@@ -2,14 +2,13 @@ package io.bokun.inventory.plugin.harness;
 
 import java.time.*;
 import java.util.*;
-import java.util.stream.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
 import io.bokun.inventory.common.api.grpc.Date;
 import io.bokun.inventory.common.api.grpc.*;
 import io.bokun.inventory.plugin.api.grpc.*;
-import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.GrpcUtil.*;
@@ -30,6 +29,16 @@ public class GrpcShallowAvailabilityAction implements Action {
                                             LocalDate to,
                                             int requiredCapacity,
                                             Iterable<String> productIds) {
+        return awaitResult(getAvailableProductsAsync(pluginData, pluginConfiguration, from, to, requiredCapacity, productIds));
+    }
+
+    @Nonnull
+    public CompletableFuture<Set<String>> getAvailableProductsAsync(@Nonnull PluginData pluginData,
+                                                                    @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                                    LocalDate from,
+                                                                    LocalDate to,
+                                                                    int requiredCapacity,
+                                                                    Iterable<String> productIds) {
         ProductsAvailabilityRequest availabilityRequest = ProductsAvailabilityRequest.newBuilder()
                 .addAllParameters(pluginConfiguration)
                 .setRange(
@@ -42,34 +51,13 @@ public class GrpcShallowAvailabilityAction implements Action {
                 .addAllExternalProductIds(productIds)
                 .build();
 
-        Collection<ProductsAvailabilityResponse> result = new ArrayList<>();
-        withPluginStub(
+        Set<String> availableProductIds = new HashSet<>();
+        return GrpcUtil.<ProductsAvailabilityResponse>streamFromPlugin(
                 pluginData,
-                stub -> doWithLatch(
-                        latch -> stub.getAvailableProducts(
-                                availabilityRequest,
-                                new StreamObserver<ProductsAvailabilityResponse>() {
-                                    @Override
-                                    public void onNext(ProductsAvailabilityResponse productDescription) {
-                                        result.add(productDescription);
-                                    }
-
-                                    @Override
-                                    public void onError(Throwable throwable) {
-                                        log.error("Plugin erred on shallow avail check", throwable);
-                                        latch.countDown();
-                                    }
-
-                                    @Override
-                                    public void onCompleted() {
-                                        latch.countDown();
-                                    }
-                                }
-                        )
-                )
-        );
-        return result.stream()
-                .map(ProductsAvailabilityResponse::getProductId)
-                .collect(Collectors.toSet());
+                ActionType.SHALLOW_AVAILABILITY,
+                (stub, observer) -> stub.getAvailableProducts(availabilityRequest, observer),
+                response -> availableProductIds.add(response.getProductId()),
+                count -> { }
+        ).thenApply(count -> availableProductIds);
     }
 }
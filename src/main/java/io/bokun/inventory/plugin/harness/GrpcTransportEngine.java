@@ -0,0 +1,116 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.util.concurrent.*;
+import io.grpc.netty.*;
+import io.netty.channel.*;
+import io.netty.channel.epoll.*;
+import io.netty.channel.nio.*;
+import io.netty.channel.socket.nio.*;
+import org.slf4j.*;
+
+/**
+ * Netty machinery shared by all gRPC channels: one event loop group doing network I/O for every plugin connection, and
+ * the executor gRPC runs call callbacks (i.e. response observers) on. Uses native epoll transport when available.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class GrpcTransportEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(GrpcTransportEngine.class);
+
+    /**
+     * Where gRPC runs call callbacks.
+     */
+    public enum CallbackExecutor {
+
+        /**
+         * gRPC default: a shared, unbounded cached thread pool.
+         */
+        DEFAULT,
+
+        /**
+         * Callbacks run on event loop threads. Saves thread hand-offs, but a slow callback stalls I/O of all the calls
+         * sharing the event loop.
+         */
+        DIRECT,
+
+        /**
+         * A fixed number of threads, shared by all channels.
+         */
+        BOUNDED
+    }
+
+    private final EventLoopGroup eventLoopGroup;
+    private final Class<? extends Channel> channelType;
+    private final CallbackExecutor callbackExecutor;
+
+    @Nullable
+    private final ExecutorService boundedExecutor;
+
+    /**
+     * @param eventLoopThreads number of event loop threads; 0 means Netty default (twice the number of cores).
+     * @param nativeTransport whether to use epoll transport if it's available on this platform.
+     * @param callbackExecutor where to run call callbacks.
+     * @param callbackThreads number of threads for {@link CallbackExecutor#BOUNDED} executor, ignored otherwise.
+     */
+    public GrpcTransportEngine(int eventLoopThreads,
+                               boolean nativeTransport,
+                               @Nonnull CallbackExecutor callbackExecutor,
+                               int callbackThreads) {
+        ThreadFactory eventLoopThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("grpc-event-loop-%d")
+                .setDaemon(true)
+                .build();
+        if (nativeTransport && Epoll.isAvailable()) {
+            this.eventLoopGroup = new EpollEventLoopGroup(eventLoopThreads, eventLoopThreadFactory);
+            this.channelType = EpollSocketChannel.class;
+        } else {
+            if (nativeTransport) {
+                log.warn("Native transport is not available, falling back to NIO", Epoll.unavailabilityCause());
+            }
+            this.eventLoopGroup = new NioEventLoopGroup(eventLoopThreads, eventLoopThreadFactory);
+            this.channelType = NioSocketChannel.class;
+        }
+        this.callbackExecutor = callbackExecutor;
+        this.boundedExecutor = (callbackExecutor == CallbackExecutor.BOUNDED)
+                ? Executors.newFixedThreadPool(
+                        callbackThreads,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("grpc-callback-%d")
+                                .setDaemon(true)
+                                .build()
+                )
+                : null;
+        log.debug("Using {} with {} callback executor", channelType.getSimpleName(), callbackExecutor);
+    }
+
+    /**
+     * Makes the channel being built use this engine.
+     */
+    @Nonnull
+    public NettyChannelBuilder configure(@Nonnull NettyChannelBuilder channelBuilder) {
+        channelBuilder
+                .eventLoopGroup(eventLoopGroup)
+                .channelType(channelType);
+        switch (callbackExecutor) {
+            case DIRECT: return channelBuilder.directExecutor();
+            case BOUNDED: return channelBuilder.executor(boundedExecutor);
+            case DEFAULT:
+            default: return channelBuilder;
+        }
+    }
+
+    /**
+     * Stops event loop and callback threads. Must be called only after all channels using this engine are terminated.
+     */
+    public void shutdown() {
+        eventLoopGroup.shutdownGracefully(0L, 0L, TimeUnit.SECONDS);
+        if (boundedExecutor != null) {
+            boundedExecutor.shutdown();
+        }
+    }
+}
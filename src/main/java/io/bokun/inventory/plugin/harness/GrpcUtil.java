@@ -1,26 +1,21 @@
 package io.bokun.inventory.plugin.harness;
 
-import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.*;
+import java.util.function.Function;
 
 import javax.annotation.*;
-import javax.net.ssl.*;
 
 import com.google.common.base.*;
 import io.bokun.inventory.plugin.api.grpc.*;
 import io.grpc.*;
-import io.grpc.netty.*;
-import io.netty.handler.ssl.*;
+import io.grpc.stub.*;
 import org.slf4j.*;
 
 import static com.google.common.base.Strings.*;
 import static io.grpc.Metadata.*;
 import static io.grpc.Status.*;
-import static io.grpc.netty.NegotiationType.*;
-import static io.netty.handler.ssl.ClientAuth.*;
-import static io.netty.handler.ssl.SslProvider.*;
 
 /**
  * Various static helpers for operating with gRPC data types.
@@ -34,55 +29,36 @@ public class GrpcUtil {
     public static final String SHARED_SECRET_HEADER = "sharedSecret";
     public static final Metadata.Key<String> SHARED_SECRET_METADATA_KEY = Metadata.Key.of(SHARED_SECRET_HEADER, ASCII_STRING_MARSHALLER);
 
-    private static final Splitter COLON_SPLITTER = Splitter.on(":");
-
     /**
-     * Block with latch for at max X seconds so we don't leak resources.
+     * Block for at max X seconds while waiting for plugin to respond so we don't leak resources.
      */
     private static final long MAX_WAIT_TIME_S = 600L;
 
     /**
-     * Wraps opening/closing of the channel towards a plugin. Adds SSL/TLS and/or shared secret if required. Also forwards request ID logging.
+     * How many streamed responses are requested from the plugin ahead of consuming them. Inbound flow control is manual,
+     * so at most this many decoded messages are held per call, regardless of how much the plugin streams; anything
+     * beyond that stays in HTTP/2 flow control window and eventually pushes back on the plugin.
+     */
+    private static final int STREAM_PREFETCH = 32;
+
+    /**
+     * Created by {@link #configure(Main.Configuration)}, or with default transport engine on first use if harness is
+     * run without configuring it; either way, event loop threads are only started when needed.
+     */
+    @Nullable
+    private static volatile GrpcChannelRegistry channelRegistry;
+
+    private static volatile Map<ActionType, Long> deadlinesS = Main.Configuration.DEFAULT_GRPC_DEADLINES_S;
+
+    /**
+     * Gives access to a stub on top of the shared channel towards a plugin. Adds SSL/TLS and/or shared secret if required.
+     * Also forwards request ID logging.
      *
      * @param pluginData plugin config info for shaping the channel.
      * @param stubConsumer gives access to the stub.
      */
     public static void withPluginStub(@Nonnull PluginData pluginData, @Nonnull Consumer<PluginApiGrpc.PluginApiStub> stubConsumer) {
-        ManagedChannel channel;
-
-        if (pluginData.tls) {
-            SslContextBuilder sslContextBuilder = GrpcSslContexts.configure(SslContextBuilder.forClient(), OPENSSL);
-            if (!isNullOrEmpty(pluginData.cert)) {
-                // Some certs (such as GoDaddy), albeit valid, don't work with Java out of the box.
-                // Here we can add such certs to the trusted chain so this wouldn't cause us trouble. It also enables to use self-signed certs too
-                sslContextBuilder.trustManager(new ByteArrayInputStream(pluginData.cert.getBytes()));
-            }
-            SslContext sslContext;
-            try {
-                sslContext = sslContextBuilder          // if tls is enabled, decorate with SSL
-                        .sslProvider(OPENSSL)
-                        .clientAuth(OPTIONAL)
-                        .build();
-            } catch (SSLException ssle) {
-                log.error("Could not build SSL context", ssle);
-                throw new RuntimeException(ssle);
-            }
-
-            Iterator<String> urlWithPort = COLON_SPLITTER.split(pluginData.url).iterator();
-            String hostname = urlWithPort.next();
-            int port = Integer.parseInt(urlWithPort.next());
-
-            channel = NettyChannelBuilder.forAddress(hostname, port)
-                    .usePlaintext(false)
-                    .sslContext(sslContext)
-                    .negotiationType(TLS)
-                    .build();
-        } else {
-            channel = ManagedChannelBuilder.forTarget(pluginData.url)
-                    .usePlaintext(true)
-                    .build();
-        }
-
+        ManagedChannel channel = getChannelRegistry().getChannel(pluginData);
         PluginApiGrpc.PluginApiStub stub = PluginApiGrpc.newStub(channel);
 
         // if shared secret is set, add it to the headers/metadata
@@ -109,35 +85,337 @@ public class GrpcUtil {
                         }
                     });
         }
-        try {
-            stubConsumer.accept(stub);
-        } finally {
-            channel.shutdown();
+        stubConsumer.accept(stub);
+    }
+
+    /**
+     * Replaces transport engine and per-action call deadlines with the ones from configuration. Engine is only used by
+     * channels created afterwards, hence this should be called before running the harness.
+     */
+    public static void configure(@Nonnull Main.Configuration configuration) {
+        GrpcChannelRegistry previous;
+        synchronized (GrpcUtil.class) {
+            previous = channelRegistry;
+            channelRegistry = new GrpcChannelRegistry(
+                    new GrpcTransportEngine(
+                            configuration.grpcEventLoopThreads,
+                            configuration.grpcNativeTransport,
+                            configuration.grpcCallbackExecutor,
+                            configuration.grpcCallbackThreads
+                    )
+            );
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+        deadlinesS = configuration.grpcDeadlinesS;
+    }
+
+    /**
+     * Closes all channels opened towards plugins. Should be called once the harness is done.
+     */
+    public static void shutdownChannels() {
+        GrpcChannelRegistry registry = channelRegistry;
+        if (registry != null) {
+            registry.shutdown();
+        }
+    }
+
+    @Nonnull
+    private static GrpcChannelRegistry getChannelRegistry() {
+        GrpcChannelRegistry registry = channelRegistry;
+        if (registry != null) {
+            return registry;
+        }
+        synchronized (GrpcUtil.class) {
+            if (channelRegistry == null) {
+                channelRegistry = new GrpcChannelRegistry(
+                        new GrpcTransportEngine(
+                                Main.Configuration.DEFAULT_GRPC_EVENT_LOOP_THREADS,
+                                Main.Configuration.DEFAULT_GRPC_NATIVE_TRANSPORT,
+                                Main.Configuration.DEFAULT_GRPC_CALLBACK_EXECUTOR,
+                                Main.Configuration.DEFAULT_GRPC_CALLBACK_THREADS
+                        )
+                );
+            }
+            return channelRegistry;
         }
     }
     
     /**
-     * Create a {@link CountDownLatch} and executes some code block which uses this latch and counts it down at some point.
-     * This method blocks until the latch is exhausted or max wait time elapses.
+     * Calls plugin method asynchronously and collects all responses it streams back. Errors reported by the plugin fail
+     * the returned future.
      *
-     * @param count initial latch capacity to use.
-     * @param latchConsumer code which, apart other useful things, runs down the latch.
+     * @param pluginData plugin to call.
+     * @param actionType type of the call, defines its deadline.
+     * @param call invokes the method on given stub, passing given observer for responses.
+     * @param check checks all the responses once plugin completes the call, throwing if they aren't valid; runs before
+     *              outcome of the call is recorded, hence invalid responses are recorded as {@link CallOutcome#ERROR}.
+     * @return future completed with all the responses once plugin completes the call and they pass the check.
      */
-    public static void doWithLatch(int count, @Nonnull Consumer<CountDownLatch> latchConsumer) {
-        CountDownLatch latch = new CountDownLatch(count);
-        log.trace("Latch enter");
-        latchConsumer.accept(latch);
+    @Nonnull
+    public static <T> CompletableFuture<List<T>> callPlugin(@Nonnull PluginData pluginData,
+                                                            @Nonnull ActionType actionType,
+                                                            @Nonnull BiConsumer<PluginApiGrpc.PluginApiStub, StreamObserver<T>> call,
+                                                            @Nonnull Consumer<? super List<T>> check) {
+        return callPlugin(pluginData, actionType, null, call, check);
+    }
+
+    /**
+     * Same as {@link #callPlugin(PluginData, ActionType, BiConsumer, Consumer)}, for a call about a single product.
+     *
+     * @param productId product the call is about; only used to describe the call in flight recordings.
+     */
+    @Nonnull
+    public static <T> CompletableFuture<List<T>> callPlugin(@Nonnull PluginData pluginData,
+                                                            @Nonnull ActionType actionType,
+                                                            @Nullable String productId,
+                                                            @Nonnull BiConsumer<PluginApiGrpc.PluginApiStub, StreamObserver<T>> call,
+                                                            @Nonnull Consumer<? super List<T>> check) {
+        // observer callbacks are never called concurrently and completion of the future publishes the list to its readers
+        List<T> responses = new ArrayList<>();
+        return call(pluginData, actionType, productId, call, responses::add, count -> {
+            check.accept(responses);
+            return responses;
+        });
+    }
+
+    /**
+     * Calls plugin method asynchronously and hands over the responses it streams back to the sink one by one. Responses
+     * are requested from the plugin in small batches only as fast as the sink consumes them, hence memory use is bounded
+     * by the sink rather than by the size of the stream.
+     *
+     * <p>Sink is called from gRPC executor threads, although never concurrently. If it throws, the call is cancelled and
+     * the returned future fails with the same exception.</p>
+     *
+     * <p>Plugin has to complete the call within the deadline configured for its action type; otherwise the call is
+     * cancelled and the future fails with {@link Status.Code#DEADLINE_EXCEEDED}. Outcome of every call is recorded in
+     * {@link RunStatistics}, latency of successful ones in {@link LatencyStatistics}; both, as well as bytes on the wire,
+     * are also counted in {@link PluginMetrics}. Every call is also a {@link PluginCall} event in flight recordings.
+     * Resources harness uses to make the call and to consume and check responses are accounted in
+     * {@link ResourceStatistics}.</p>
+     *
+     * @param pluginData plugin to call.
+     * @param actionType type of the call, defines its deadline.
+     * @param call invokes the method on given stub, passing given observer for responses.
+     * @param sink receives responses in the order plugin streams them.
+     * @param check checks number of responses received once plugin completes the call, throwing if it isn't valid; runs
+     *              before outcome of the call is recorded, hence the call is recorded as {@link CallOutcome#ERROR} then.
+     * @return future completed with number of responses received once plugin completes the call and it passes the check.
+     */
+    @Nonnull
+    public static <T> CompletableFuture<Integer> streamFromPlugin(@Nonnull PluginData pluginData,
+                                                                  @Nonnull ActionType actionType,
+                                                                  @Nonnull BiConsumer<PluginApiGrpc.PluginApiStub, StreamObserver<T>> call,
+                                                                  @Nonnull Consumer<? super T> sink,
+                                                                  @Nonnull IntConsumer check) {
+        return streamFromPlugin(pluginData, actionType, null, call, sink, check);
+    }
+
+    /**
+     * Same as {@link #streamFromPlugin(PluginData, ActionType, BiConsumer, Consumer, IntConsumer)}, for a call about a
+     * single product.
+     *
+     * @param productId product the call is about; only used to describe the call in flight recordings.
+     */
+    @Nonnull
+    public static <T> CompletableFuture<Integer> streamFromPlugin(@Nonnull PluginData pluginData,
+                                                                  @Nonnull ActionType actionType,
+                                                                  @Nullable String productId,
+                                                                  @Nonnull BiConsumer<PluginApiGrpc.PluginApiStub, StreamObserver<T>> call,
+                                                                  @Nonnull Consumer<? super T> sink,
+                                                                  @Nonnull IntConsumer check) {
+        return call(pluginData, actionType, productId, call, sink, count -> {
+            check.accept(count);
+            return count;
+        });
+    }
+
+    /**
+     * Makes the call as described by {@link #streamFromPlugin(PluginData, ActionType, BiConsumer, Consumer, IntConsumer)},
+     * turning the number of responses received into the result once plugin completes the call. The outcome is only
+     * recorded after that, so that the call fails, and is recorded as failed, if the finisher throws.
+     */
+    @Nonnull
+    private static <T, R> CompletableFuture<R> call(@Nonnull PluginData pluginData,
+                                                    @Nonnull ActionType actionType,
+                                                    @Nullable String productId,
+                                                    @Nonnull BiConsumer<PluginApiGrpc.PluginApiStub, StreamObserver<T>> call,
+                                                    @Nonnull Consumer<? super T> sink,
+                                                    @Nonnull Function<Integer, R> finisher) {
+        long deadlineS = deadlinesS.get(actionType);
+        PluginCall pluginCall = new PluginCall(PluginData.Transport.GRPC, actionType, productId);
+        CompletableFuture<Integer> received = new CompletableFuture<>();
+        ResourceStatistics.countCall(actionType);
+        ResourceStatistics.begin();
+        pluginCall.begin();
         try {
-            latch.await(MAX_WAIT_TIME_S, TimeUnit.SECONDS);
-        } catch (InterruptedException ignore) {
+            withPluginStub(
+                    pluginData,
+                    stub -> call.accept(
+                            stub.withDeadlineAfter(deadlineS, TimeUnit.SECONDS)
+                                    .withInterceptors(new ByteCountingInterceptor(pluginData.url, pluginCall)),
+                            new FlowControlledObserver<>(actionType, deadlineS, sink, received)
+                    )
+            );
+        } catch (RuntimeException e) {
+            received.completeExceptionally(e);
+        } finally {
+            ResourceStatistics.end(actionType);
         }
-        log.trace("Latch exit");
+        return received.thenApply(count -> {
+            ResourceStatistics.begin();
+            try {
+                return finisher.apply(count);
+            } finally {
+                ResourceStatistics.end(actionType);
+            }
+        }).whenComplete((value, throwable) -> {
+            CallOutcome outcome = toCallOutcome(throwable);
+            long nanos = pluginCall.end(pluginData.url, outcome, (throwable == null) ? received.join() : 0);
+            if (outcome == CallOutcome.SUCCESS) {
+                LatencyStatistics.record(PluginData.Transport.GRPC, actionType, nanos);
+            }
+            RunStatistics.record(actionType, outcome);
+            PluginMetrics.recordCall(PluginData.Transport.GRPC, pluginData.url, actionType, outcome, nanos);
+        });
+    }
+
+    @Nonnull
+    private static CallOutcome toCallOutcome(@Nullable Throwable throwable) {
+        if (throwable == null) {
+            return CallOutcome.SUCCESS;
+        }
+        return (Status.fromThrowable(throwable).getCode() == Status.Code.DEADLINE_EXCEEDED) ? CallOutcome.TIMEOUT : CallOutcome.ERROR;
     }
 
     /**
-     * Same as {@link #doWithLatch(int, Consumer)} but with count of 1.
+     * Counts bytes a call sends and receives on the wire into {@link PluginMetrics} and the call itself.
      */
-    public static void doWithLatch(@Nonnull Consumer<CountDownLatch> latchConsumer) {
-        doWithLatch(1, latchConsumer);
+    private static final class ByteCountingInterceptor extends ClientStreamTracer.Factory implements ClientInterceptor {
+
+        private final String plugin;
+        private final PluginCall pluginCall;
+
+        ByteCountingInterceptor(String plugin, PluginCall pluginCall) {
+            this.plugin = plugin;
+            this.pluginCall = pluginCall;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            return next.newCall(method, callOptions.withStreamTracerFactory(this));
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(CallOptions callOptions, Metadata headers) {
+            return new ClientStreamTracer() {
+                @Override
+                public void outboundWireSize(long bytes) {
+                    add(TransferStatistics.Direction.REQUEST, bytes);
+                }
+
+                @Override
+                public void inboundWireSize(long bytes) {
+                    add(TransferStatistics.Direction.RESPONSE, bytes);
+                }
+            };
+        }
+
+        private void add(TransferStatistics.Direction direction, long bytes) {
+            PluginMetrics.addBytes(PluginData.Transport.GRPC, plugin, pluginCall.actionType, direction, bytes);
+            pluginCall.addBytes(direction, bytes);
+        }
+    }
+
+    /**
+     * Feeds streamed responses to the sink, topping up the number of requested messages once half of them have been
+     * consumed.
+     */
+    private static final class FlowControlledObserver<T> implements ClientResponseObserver<Object, T> {
+
+        private final ActionType actionType;
+        private final long deadlineS;
+        private final Consumer<? super T> sink;
+        private final CompletableFuture<Integer> result;
+
+        private ClientCallStreamObserver<Object> requestStream;
+        private int received;
+        private int requested = 1;      // stub requests the first message itself when starting the call
+
+        FlowControlledObserver(ActionType actionType, long deadlineS, Consumer<? super T> sink, CompletableFuture<Integer> result) {
+            this.actionType = actionType;
+            this.deadlineS = deadlineS;
+            this.sink = sink;
+            this.result = result;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+            this.requestStream = requestStream;
+            requestStream.disableAutoInboundFlowControl();
+        }
+
+        @Override
+        public void onNext(T response) {
+            if (result.isDone()) {
+                return;         // sink has already failed, call is being cancelled
+            }
+            received++;
+            ResourceStatistics.begin();
+            try {
+                sink.accept(response);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                requestStream.cancel("Response rejected by harness", e);
+                return;
+            } finally {
+                ResourceStatistics.end(actionType);
+            }
+            int outstanding = requested - received;
+            if (outstanding <= STREAM_PREFETCH / 2) {
+                requestStream.request(STREAM_PREFETCH - outstanding);
+                requested += STREAM_PREFETCH - outstanding;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (result.isDone()) {
+                return;
+            }
+            if (Status.fromThrowable(throwable).getCode() == Status.Code.DEADLINE_EXCEEDED) {
+                log.error("Plugin did not complete {} within {}s, call cancelled", actionType.methodName, deadlineS);
+            } else {
+                log.error("Plugin erred on {}", actionType.methodName, throwable);
+            }
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            result.complete(received);
+        }
+    }
+
+    /**
+     * Blocks until given future completes or max wait time elapses.
+     *
+     * @param future result of asynchronous plugin call.
+     * @return result of the call.
+     * @throws RuntimeException whatever the call failed with, or {@link IllegalStateException} if it did not complete in time.
+     */
+    public static <T> T awaitResult(@Nonnull CompletableFuture<T> future) {
+        try {
+            return future.get(MAX_WAIT_TIME_S, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for plugin", ie);
+        } catch (TimeoutException te) {
+            throw new IllegalStateException("Plugin did not respond in " + MAX_WAIT_TIME_S + "s", te);
+        } catch (ExecutionException ee) {
+            Throwables.throwIfUnchecked(ee.getCause());
+            throw new RuntimeException(ee.getCause());
+        }
     }
 }
@@ -0,0 +1,55 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.io.*;
+
+import com.squareup.okhttp.*;
+import okio.*;
+
+/**
+ * Compresses request bodies with gzip and marks them with <tt>Content-Encoding</tt> header. Only to be used for plugins
+ * known to accept compressed requests.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class GzipRequestInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if ((request.body() == null) || (request.header("Content-Encoding") != null)) {
+            return chain.proceed(request);
+        }
+        Request compressedRequest = request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), gzip(request.body()))
+                .build();
+        return chain.proceed(compressedRequest);
+    }
+
+    private static RequestBody gzip(RequestBody body) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return -1L;         // not known until compressed
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                Sink notClosingSink = new ForwardingSink(sink) {
+                    @Override
+                    public void close() {
+                        // sink belongs to the caller
+                    }
+                };
+                BufferedSink gzipSink = Okio.buffer(new GzipSink(notClosingSink));
+                body.writeTo(gzipSink);
+                gzipSink.close();       // writes gzip trailer
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package io.bokun.inventory.plugin.harness;
+
+import javax.annotation.*;
+
+/**
+ * Runs the booking funnel against a plugin using one of the transports.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public interface Harness {
+
+    /**
+     * Runs through the whole booking funnel once: gets plugin definition, searches for products, checks their
+     * availability, books one of them and cancels the booking.
+     *
+     * @param configuration harness configuration, plugin to call in particular.
+     * @return how the funnel went. Exceptions thrown by plugin calls are not propagated but returned as the cause.
+     */
+    @Nonnull
+    FunnelResult runEndToEnd(@Nonnull Main.Configuration configuration);
+
+    /**
+     * Gets plugin definition and searches for products, so that individual actions could be called on them at will.
+     *
+     * @param configuration harness configuration, plugin to call in particular.
+     * @return workload calling the plugin of given configuration.
+     */
+    @Nonnull
+    Workload prepareWorkload(@Nonnull Main.Configuration configuration);
+}
@@ -0,0 +1,165 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.util.concurrent.*;
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+/**
+ * Records latency of successful plugin calls made during the run, per transport and action type, in microseconds.
+ * Recording is lock free and, once the histogram has grown to fit the values seen, doesn't allocate, so it's cheap
+ * enough to be done on every call by every mode of the harness. Safe to use from any thread.
+ *
+ * <p>Optionally, latencies recorded in each interval are also appended to a histogram log, which can be merged and
+ * plotted offline with HdrHistogram tools (e.g. <tt>HistogramLogProcessor</tt>). Each histogram in the log is tagged
+ * with transport and method name, e.g. <tt>GRPC/getAvailableProducts</tt>.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class LatencyStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(LatencyStatistics.class);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /**
+     * Latency of a single transport and action; interval histograms are drained from the recorder into the total.
+     */
+    private static final class Latency {
+
+        private final String tag;
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);   // guarded by LatencyStatistics.class
+
+        @Nullable
+        private Histogram interval;                                         // guarded by LatencyStatistics.class, recycled
+
+        private Latency(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final ConcurrentMap<PluginData.Transport, Map<ActionType, Latency>> latencies = new ConcurrentHashMap<>();
+
+    @Nullable
+    private static ScheduledExecutorService logWriterExecutor;              // guarded by LatencyStatistics.class
+
+    @Nullable
+    private static HistogramLogWriter logWriter;                            // guarded by LatencyStatistics.class
+
+    private LatencyStatistics() {
+    }
+
+    private static Map<ActionType, Latency> newLatencies(PluginData.Transport transport) {
+        Map<ActionType, Latency> result = new EnumMap<>(ActionType.class);
+        for (ActionType actionType : ActionType.values()) {
+            result.put(actionType, new Latency(transport + "/" + actionType.methodName));
+        }
+        return result;
+    }
+
+    /**
+     * Records that a call of given type over given transport has succeeded after given time.
+     */
+    public static void record(@Nonnull PluginData.Transport transport, @Nonnull ActionType actionType, long nanos) {
+        latencies.computeIfAbsent(transport, LatencyStatistics::newLatencies)
+                .get(actionType)
+                .recorder
+                .recordValue(Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * Starts appending latencies recorded in each interval to given file, if configured to.
+     */
+    public static synchronized void configure(@Nonnull Main.Configuration configuration) {
+        if (configuration.latencyHistogramLog == null) {
+            return;
+        }
+        try {
+            logWriter = new HistogramLogWriter(new File(configuration.latencyHistogramLog));
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Could not open histogram log " + configuration.latencyHistogramLog, e);
+        }
+        long now = System.currentTimeMillis();
+        logWriter.setBaseTime(now);
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(now);
+        logWriter.outputLegend();
+        logWriterExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("latency-log")
+                        .setDaemon(true)
+                        .build()
+        );
+        long intervalS = configuration.latencyHistogramLogIntervalS;
+        logWriterExecutor.scheduleAtFixedRate(LatencyStatistics::collect, intervalS, intervalS, TimeUnit.SECONDS);
+        log.info("Writing latency histograms to {} every {}s", configuration.latencyHistogramLog, intervalS);
+    }
+
+    /**
+     * Adds latencies recorded since the last time to the totals, writing them to the histogram log if it's open.
+     */
+    private static synchronized void collect() {
+        for (Map<ActionType, Latency> transportLatencies : latencies.values()) {
+            for (Latency latency : transportLatencies.values()) {
+                latency.interval = latency.recorder.getIntervalHistogram(latency.interval);
+                if (latency.interval.getTotalCount() == 0L) {
+                    continue;
+                }
+                latency.total.add(latency.interval);
+                if (logWriter != null) {
+                    latency.interval.setTag(latency.tag);
+                    logWriter.outputIntervalHistogram(latency.interval);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out the last interval and closes the histogram log, if open, then logs latency percentiles of every
+     * transport and action called so far.
+     */
+    public static synchronized void logSummary() {
+        if (logWriterExecutor != null) {
+            logWriterExecutor.shutdownNow();
+            logWriterExecutor = null;
+        }
+        collect();
+        if (logWriter != null) {
+            logWriter.close();
+            logWriter = null;
+        }
+        for (PluginData.Transport transport : PluginData.Transport.values()) {
+            Map<ActionType, Latency> transportLatencies = latencies.get(transport);
+            if (transportLatencies == null) {
+                continue;
+            }
+            for (ActionType actionType : ActionType.values()) {
+                Histogram total = transportLatencies.get(actionType).total;
+                if (total.getTotalCount() == 0L) {
+                    continue;
+                }
+                log.info(
+                        "{} {}: {} calls, latency ms p50={} p90={} p99={} p99.9={} max={}",
+                        transport,
+                        actionType.methodName,
+                        total.getTotalCount(),
+                        toMillis(total.getValueAtPercentile(50.0d)),
+                        toMillis(total.getValueAtPercentile(90.0d)),
+                        toMillis(total.getValueAtPercentile(99.0d)),
+                        toMillis(total.getValueAtPercentile(99.9d)),
+                        toMillis(total.getMaxValue())
+                );
+            }
+        }
+    }
+
+    private static String toMillis(long micros) {
+        return String.format("%.1f", micros / 1000.0d);
+    }
+}
@@ -2,10 +2,18 @@ package io.bokun.inventory.plugin.harness;
 
 import java.io.*;
 import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import javax.annotation.*;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.*;
 import com.google.inject.*;
+import io.bokun.inventory.plugin.harness.fleet.*;
+import io.bokun.inventory.plugin.harness.load.*;
+import org.slf4j.*;
 
 import static com.google.common.base.Charsets.*;
 import static com.google.common.base.Strings.*;
@@ -20,28 +28,323 @@ import static com.google.common.base.Strings.*;
  * </ul>
  * </p>
  *
+ * <p>When running <tt>-fleet</tt> mode, plugins are read from a file instead, see {@link FleetFile}:<ul>
+ *     <li><tt>FLEET_FILE</tt> - path to JSON file listing plugins to test; <tt>PLUGIN_URL</tt> and the rest of plugin
+ *     access variables above are not needed then</li>
+ *     <li><tt>FLEET_PARALLELISM</tt> - how many plugins to test at a time</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Latency of every successful plugin call is recorded per transport and action, and its percentiles are logged on
+ * exit. The following environment variables are optional and make recorded latencies also written to a file, for
+ * merging and plotting with HdrHistogram tools:<ul>
+ *     <li><tt>LATENCY_HISTOGRAM_LOG</tt> - path of HdrHistogram log file to write</li>
+ *     <li><tt>LATENCY_HISTOGRAM_LOG_INTERVAL_S</tt> - how often (in seconds) to write out latencies recorded since the
+ *     previous time</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Calls, their outcomes, bytes transferred and latency are also counted per transport, plugin and action, and can
+ * be scraped in Prometheus text format while the harness runs:<ul>
+ *     <li><tt>METRICS_PORT</tt> - if set, port on loopback interface to serve metrics on, at <tt>/metrics</tt></li>
+ * </ul>
+ * </p>
+ *
+ * <p>When running over RESTful transport, time spent on every call is also split into serializing the request, network,
+ * parsing, mapping and validating the response, and mean time of each phase is logged on exit, see
+ * {@link RestPhaseStatistics}.</p>
+ *
+ * <p>CPU time and allocations of the harness itself can be accounted per action, to tell whether it's the harness or
+ * plugin that limits the load; see {@link ResourceStatistics}:<ul>
+ *     <li><tt>RESOURCE_ACCOUNTING</tt> - if <tt>true</tt>, CPU time used and bytes allocated per call of each action
+ *     are logged on exit. Work done on virtual threads, e.g. by load workers when <tt>LOAD_THREADS=VIRTUAL</tt>,
+ *     isn't accounted</li>
+ * </ul>
+ * </p>
+ *
+ * <p>When run with Java Flight Recorder, e.g. <tt>-XX:StartFlightRecording=filename=harness.jfr</tt>, every plugin call
+ * is recorded as <tt>io.bokun.inventory.plugin.harness.PluginCall</tt> event, see {@link PluginCall}.</p>
+ *
+ * <p>The following environment variables are optional and tune RESTful transport:<ul>
+ *     <li><tt>REST_MAX_IDLE_CONNECTIONS</tt> - how many idle connections to keep open towards the plugin</li>
+ *     <li><tt>REST_KEEP_ALIVE_DURATION_S</tt> - how long (in seconds) an idle connection is kept open</li>
+ *     <li><tt>REST_MAX_REQUESTS</tt> - max number of concurrent asynchronous requests; defaults to the larger of 256 and
+ *     <tt>LOAD_MAX_IN_FLIGHT</tt></li>
+ *     <li><tt>REST_MAX_REQUESTS_PER_HOST</tt> - max number of concurrent asynchronous requests per plugin host; defaults
+ *     to the larger of 256 and <tt>LOAD_MAX_IN_FLIGHT</tt></li>
+ *     <li><tt>REST_GZIP_REQUESTS</tt> - whether to gzip request bodies; only set to <tt>true</tt> if plugin accepts
+ *     <tt>Content-Encoding: gzip</tt></li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and tune gRPC transport:<ul>
+ *     <li><tt>GRPC_EVENT_LOOP_THREADS</tt> - number of network I/O threads shared by all channels; defaults to twice the
+ *     number of cores</li>
+ *     <li><tt>GRPC_NATIVE_TRANSPORT</tt> - whether to use native epoll transport where available (default <tt>true</tt>)</li>
+ *     <li><tt>GRPC_CALLBACK_EXECUTOR</tt> - where to run response callbacks: <tt>DEFAULT</tt> (gRPC's cached thread
+ *     pool), <tt>DIRECT</tt> (network I/O threads) or <tt>BOUNDED</tt> (fixed thread pool)</li>
+ *     <li><tt>GRPC_CALLBACK_THREADS</tt> - size of <tt>BOUNDED</tt> callback thread pool</li>
+ *     <li><tt>GRPC_DEADLINE_S_$ACTION</tt>, e.g.: <tt>GRPC_DEADLINE_S_SEARCH_PRODUCTS</tt> - how long (in seconds) plugin
+ *     is given to complete a call of given {@link ActionType}, before it's cancelled and counted as timeout</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and shape <tt>-load</tt> mode:<ul>
+ *     <li><tt>LOAD_WORKERS</tt> - number of concurrent workers, each running the booking funnel over and over</li>
+ *     <li><tt>LOAD_THREADS</tt> - what threads workers run on: <tt>PLATFORM</tt> (default) or <tt>VIRTUAL</tt>; the
+ *     latter needs JDK 21+ and allows for tens of thousands of workers</li>
+ *     <li><tt>LOAD_DURATION_S</tt> - how long (in seconds) to keep running; 0 means until iterations are exhausted</li>
+ *     <li><tt>LOAD_ITERATIONS</tt> - total number of funnel passes across all workers; 0 means unlimited</li>
+ *     <li><tt>LOAD_RATE</tt> - if set, instead of running the funnel, calls <tt>LOAD_ACTION</tt> this many times per
+ *     second for <tt>LOAD_DURATION_S</tt>, regardless of how fast plugin responds</li>
+ *     <li><tt>LOAD_ACTION</tt> - {@link ActionType} to call at <tt>LOAD_RATE</tt>: <tt>SHALLOW_AVAILABILITY</tt>
+ *     (default), <tt>DEEP_AVAILABILITY</tt>, <tt>GET_PRODUCT_BY_ID</tt>, <tt>SEARCH_PRODUCTS</tt> or
+ *     <tt>GET_DEFINITION</tt></li>
+ *     <li><tt>LOAD_MIX</tt> - relative weights of actions to call at <tt>LOAD_RATE</tt> instead of a single
+ *     <tt>LOAD_ACTION</tt>, e.g. <tt>SHALLOW_AVAILABILITY=60,DEEP_AVAILABILITY=30,GET_PRODUCT_BY_ID=5,CREATE_RESERVATION=2,CONFIRM_BOOKING=2,CANCEL_BOOKING=1</tt>;
+ *     confirmations and cancellations due when no reservation or booking is pending are skipped, bookings left
+ *     uncancelled are cancelled at the end</li>
+ *     <li><tt>LOAD_MAX_IN_FLIGHT</tt> - max number of calls in flight at <tt>LOAD_RATE</tt>; calls due above this are
+ *     dropped. Over REST, it's further bounded by <tt>REST_MAX_REQUESTS</tt> and <tt>REST_MAX_REQUESTS_PER_HOST</tt>:
+ *     requests above those would wait in HTTP client's queue, and the wait would count as plugin's response time</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and shape distributed load, where <tt>-coordinate</tt> splits
+ * <tt>LOAD_RATE</tt> of <tt>LOAD_ACTION</tt> or <tt>LOAD_MIX</tt> among processes started with <tt>-worker</tt>. Only
+ * workers call the plugin, hence <tt>PLUGIN_URL</tt> and the rest of plugin access variables are not needed by
+ * coordinator:<ul>
+ *     <li><tt>LOAD_WORKER_PORT</tt> - port worker listens on for coordinator</li>
+ *     <li><tt>LOAD_WORKER_ADDRESSES</tt> - comma separated <tt>host:port</tt> of workers coordinator is to use</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and shape <tt>-soak</tt> mode, which runs the booking funnel
+ * on <tt>LOAD_WORKERS</tt> for <tt>LOAD_DURATION_S</tt> and reports latency and error drift:<ul>
+ *     <li><tt>LOAD_SOAK_WINDOW_S</tt> - length (in seconds) of a window statistics are collected and reported in</li>
+ *     <li><tt>LOAD_SOAK_COMPARED_WINDOWS</tt> - how many earliest windows to compare to as many latest ones</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and shape <tt>-sessions</tt> mode, which runs <tt>LOAD_WORKERS</tt>
+ * virtual users for <tt>LOAD_DURATION_S</tt>, each thinking between funnel steps and possibly leaving before them:<ul>
+ *     <li><tt>LOAD_SESSION_THINK_MS</tt> - mean time (in milliseconds) users think before each step</li>
+ *     <li><tt>LOAD_SESSION_THINK_TIME</tt> - distribution of think time: <tt>CONSTANT</tt>, <tt>UNIFORM</tt>,
+ *     <tt>EXPONENTIAL</tt> (default) or <tt>LOG_NORMAL</tt></li>
+ *     <li><tt>LOAD_SESSION_ABANDONMENT</tt> - probability (in percent) of user leaving before each step, e.g.
+ *     <tt>GET_PRODUCT_BY_ID=40,DEEP_AVAILABILITY=30,CREATE_RESERVATION=80,CONFIRM_BOOKING=40,CANCEL_BOOKING=95</tt>;
+ *     reservations of users leaving before confirmation are left to expire</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and shape <tt>-spike</tt> mode, which calls <tt>LOAD_ACTION</tt>
+ * or <tt>LOAD_MIX</tt> at a baseline rate interrupted by bursts, and reports how plugin copes with each of them:<ul>
+ *     <li><tt>LOAD_SPIKE_BASELINE_RATE</tt> - calls per second between bursts</li>
+ *     <li><tt>LOAD_SPIKE_BURST_RATE</tt> - calls per second during a burst</li>
+ *     <li><tt>LOAD_SPIKE_BURST_S</tt> - how long (in seconds) each burst lasts</li>
+ *     <li><tt>LOAD_SPIKE_INTERVAL_S</tt> - how long (in seconds) baseline lasts before, between and after bursts</li>
+ *     <li><tt>LOAD_SPIKE_COUNT</tt> - number of bursts</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The following environment variables are optional and shape <tt>-saturate</tt> mode, which calls each action at
+ * a rate growing in steps until latency grows faster than throughput:<ul>
+ *     <li><tt>LOAD_SATURATION_ACTIONS</tt> - comma separated {@link ActionType}s to find saturation point of</li>
+ *     <li><tt>LOAD_SATURATION_START_RATE</tt> - calls per second of the first step</li>
+ *     <li><tt>LOAD_SATURATION_STEP_PERCENT</tt> - by how much (in percent) each step increases the rate</li>
+ *     <li><tt>LOAD_SATURATION_MAX_RATE</tt> - calls per second not to go above</li>
+ *     <li><tt>LOAD_SATURATION_STEP_S</tt> - how long (in seconds) each step lasts</li>
+ * </ul>
+ * </p>
+ *
  * @author Mindaugas Žakšauskas
  */
 public class Main {
 
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
     public static void main(String[] args) {
         boolean isRest = (args.length == 1) && "-rest".equals(args[0]);
         boolean isGrpc = (args.length == 1) && "-grpc".equals(args[0]);
+        boolean isLoad = (args.length == 1) && "-load".equals(args[0]);
+        boolean isSaturate = (args.length == 1) && "-saturate".equals(args[0]);
+        boolean isSoak = (args.length == 1) && "-soak".equals(args[0]);
+        boolean isWorker = (args.length == 1) && "-worker".equals(args[0]);
+        boolean isCoordinator = (args.length == 1) && "-coordinate".equals(args[0]);
+        boolean isFleet = (args.length == 1) && "-fleet".equals(args[0]);
+        boolean isSessions = (args.length == 1) && "-sessions".equals(args[0]);
+        boolean isSpike = (args.length == 1) && "-spike".equals(args[0]);
 
-        if (!isRest && !isGrpc) {
+        if (!isRest && !isGrpc && !isLoad && !isSaturate && !isSoak && !isWorker && !isCoordinator && !isFleet && !isSessions && !isSpike) {
             System.err.println("Usage: Main [OPTION]");
             System.err.println("  -rest Runs sample RESTful service");
             System.err.println("  -grpc Runs sample gRPC service");
+            System.err.println("  -load Runs booking funnel concurrently over TRANSPORT, see LOAD_* variables");
+            System.err.println("  -soak Runs booking funnel over TRANSPORT for a long time and reports drift, see LOAD_SOAK_* variables");
+            System.err.println("  -sessions Runs virtual users with think time and abandonment over TRANSPORT, see LOAD_SESSION_* variables");
+            System.err.println("  -spike Runs bursts of load on top of a baseline over TRANSPORT, see LOAD_SPIKE_* variables");
+            System.err.println("  -fleet Runs booking funnel against all plugins in FLEET_FILE");
+            System.err.println("  -worker Waits for coordinator and generates its share of load over TRANSPORT");
+            System.err.println("  -coordinate Splits LOAD_RATE among LOAD_WORKER_ADDRESSES and merges their results");
+            System.err.println("  -saturate Finds max sustainable rate of actions over TRANSPORT, see LOAD_SATURATION_* variables");
             System.exit(1);
         }
 
         Injector injector = Guice.createInjector();
         Configuration configuration = injector.getInstance(Configuration.class);
-        if (isGrpc) {
-            injector.getInstance(GrpcHarness.class).runEndToEnd(configuration);
+        if (isFleet && configuration.fleet.isEmpty()) {
+            throw new IllegalArgumentException(Configuration.FLEET_FILE + " environment variable missing");
+        }
+        // coordinator never calls a plugin itself, workers do
+        if (!isFleet && !isCoordinator && (configuration.pluginData == null)) {
+            throw new IllegalArgumentException(Configuration.PLUGIN_URL + " environment variable missing");
+        }
+        LatencyStatistics.configure(configuration);
+        ResourceStatistics.configure(configuration);
+        MetricsServer metricsServer = (configuration.metricsPort > 0) ? new MetricsServer(configuration.metricsPort) : null;
+        try {
+            if (isGrpc) {
+                runOnGrpc(configuration, () -> runOnce(injector.getInstance(GrpcHarness.class), configuration));
+            }
+            if (isRest) {
+                runOnRest(configuration, () -> runOnce(injector.getInstance(RestHarness.class), configuration));
+            }
+            if (isLoad) {
+                runOnConfiguredTransport(injector, configuration, harness -> runLoad(harness, configuration));
+            }
+            if (isSoak) {
+                runOnConfiguredTransport(injector, configuration, harness -> new SoakTest(harness, configuration).run());
+            }
+            if (isSessions) {
+                runOnConfiguredTransport(injector, configuration, harness -> runSessions(harness, configuration));
+            }
+            if (isSpike) {
+                runOnConfiguredTransport(injector, configuration, harness -> runSpikes(harness, configuration));
+            }
+            if (isWorker) {
+                runOnConfiguredTransport(injector, configuration, harness -> new LoadWorkerServer(harness, configuration).serve());
+            }
+            if (isFleet) {
+                runOnGrpc(
+                        configuration,
+                        () -> runOnRest(
+                                configuration,
+                                () -> new FleetRun(injector.getInstance(GrpcHarness.class), injector.getInstance(RestHarness.class), configuration).run()
+                        )
+                );
+            }
+            if (isCoordinator) {
+                new LoadCoordinator(configuration).run();
+            }
+            if (isSaturate) {
+                runOnConfiguredTransport(injector, configuration, harness -> runSaturation(harness, configuration));
+            }
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+            LatencyStatistics.logSummary();
+            ResourceStatistics.logSummary();
+        }
+    }
+
+    private static void runLoad(@Nonnull Harness harness, @Nonnull Configuration configuration) {
+        if (configuration.loadRate <= 0L) {
+            new LoadTest(harness, configuration).run();
+            return;
+        }
+        Workload workload = harness.prepareWorkload(configuration);
+        try {
+            new OpenLoopScheduler(
+                    workload,
+                    getNextAction(workload, configuration),
+                    configuration.loadRate,
+                    TimeUnit.SECONDS.toNanos(configuration.loadDurationS),
+                    configuration.boundInFlight(configuration.loadMaxInFlight)
+            ).run().logReport();
+        } finally {
+            workload.cleanUp();
+        }
+    }
+
+    private static void runSpikes(@Nonnull Harness harness, @Nonnull Configuration configuration) {
+        Workload workload = harness.prepareWorkload(configuration);
+        try {
+            new SpikeTest(workload, getNextAction(workload, configuration), configuration).run();
+        } finally {
+            workload.cleanUp();
+        }
+    }
+
+    @Nonnull
+    private static Supplier<ActionType> getNextAction(@Nonnull Workload workload, @Nonnull Configuration configuration) {
+        return (configuration.loadMix != null)
+                ? WorkloadMix.parse(configuration.loadMix).supportedBy(workload)
+                : () -> configuration.loadAction;
+    }
+
+    private static void runSessions(@Nonnull Harness harness, @Nonnull Configuration configuration) {
+        Workload workload = harness.prepareWorkload(configuration);
+        try {
+            new VirtualUsers(workload, configuration).run();
+        } finally {
+            workload.cleanUp();
         }
-        if (isRest) {
-            injector.getInstance(RestHarness.class).runEndToEnd(configuration);
+    }
+
+    private static void runSaturation(@Nonnull Harness harness, @Nonnull Configuration configuration) {
+        Workload workload = harness.prepareWorkload(configuration);
+        try {
+            SaturationFinder saturationFinder = new SaturationFinder(workload, configuration);
+            List<SaturationFinder.Result> results = new ArrayList<>();
+            for (ActionType actionType : configuration.loadSaturationActions) {
+                if (!workload.getSupportedActions().contains(actionType)) {
+                    log.warn("Plugin does not support {}, skipping it", actionType);
+                    continue;
+                }
+                results.add(saturationFinder.find(actionType));
+            }
+            SaturationFinder.logReport(results);
+        } finally {
+            workload.cleanUp();
+        }
+    }
+
+    private static void runOnce(@Nonnull Harness harness, @Nonnull Configuration configuration) {
+        FunnelResult result = harness.runEndToEnd(configuration);
+        if (result.getCause() != null) {
+            throw result.getCause();
+        }
+    }
+
+    private static void runOnConfiguredTransport(@Nonnull Injector injector,
+                                                 @Nonnull Configuration configuration,
+                                                 @Nonnull Consumer<Harness> run) {
+        if (configuration.pluginData.transport == PluginData.Transport.GRPC) {
+            runOnGrpc(configuration, () -> run.accept(injector.getInstance(GrpcHarness.class)));
+        } else {
+            runOnRest(configuration, () -> run.accept(injector.getInstance(RestHarness.class)));
+        }
+    }
+
+    private static void runOnGrpc(@Nonnull Configuration configuration, @Nonnull Runnable run) {
+        GrpcUtil.configure(configuration);
+        try {
+            run.run();
+        } finally {
+            GrpcUtil.shutdownChannels();
+            RunStatistics.logSummary();
+        }
+    }
+
+    private static void runOnRest(@Nonnull Configuration configuration, @Nonnull Runnable run) {
+        RestUtil.configureHttpClients(configuration);
+        try {
+            run.run();
+        } finally {
+            RestUtil.shutdownHttpClients();
+            TransferStatistics.logSummary();
+            RestPhaseStatistics.logSummary();
         }
     }
 
@@ -53,17 +356,132 @@ public class Main {
         public static final String TRANSPORT = "TRANSPORT";
         public static final String REST_BASIC_AUTH_USERNAME = "REST_BASIC_AUTH_USERNAME";
         public static final String REST_BASIC_AUTH_PASSWORD = "REST_BASIC_AUTH_PASSWORD";
+        public static final String FLEET_FILE = "FLEET_FILE";
+        public static final String FLEET_PARALLELISM = "FLEET_PARALLELISM";
+        public static final String LATENCY_HISTOGRAM_LOG = "LATENCY_HISTOGRAM_LOG";
+        public static final String LATENCY_HISTOGRAM_LOG_INTERVAL_S = "LATENCY_HISTOGRAM_LOG_INTERVAL_S";
+        public static final String METRICS_PORT = "METRICS_PORT";
+        public static final String RESOURCE_ACCOUNTING = "RESOURCE_ACCOUNTING";
+        public static final String REST_MAX_IDLE_CONNECTIONS = "REST_MAX_IDLE_CONNECTIONS";
+        public static final String REST_KEEP_ALIVE_DURATION_S = "REST_KEEP_ALIVE_DURATION_S";
+        public static final String REST_MAX_REQUESTS = "REST_MAX_REQUESTS";
+        public static final String REST_MAX_REQUESTS_PER_HOST = "REST_MAX_REQUESTS_PER_HOST";
+        public static final String REST_GZIP_REQUESTS = "REST_GZIP_REQUESTS";
+        public static final String GRPC_DEADLINE_S_PREFIX = "GRPC_DEADLINE_S_";
+        public static final String GRPC_EVENT_LOOP_THREADS = "GRPC_EVENT_LOOP_THREADS";
+        public static final String GRPC_NATIVE_TRANSPORT = "GRPC_NATIVE_TRANSPORT";
+        public static final String GRPC_CALLBACK_EXECUTOR = "GRPC_CALLBACK_EXECUTOR";
+        public static final String GRPC_CALLBACK_THREADS = "GRPC_CALLBACK_THREADS";
+        public static final String LOAD_WORKERS = "LOAD_WORKERS";
+        public static final String LOAD_THREADS = "LOAD_THREADS";
+        public static final String LOAD_DURATION_S = "LOAD_DURATION_S";
+        public static final String LOAD_ITERATIONS = "LOAD_ITERATIONS";
+        public static final String LOAD_RATE = "LOAD_RATE";
+        public static final String LOAD_ACTION = "LOAD_ACTION";
+        public static final String LOAD_MIX = "LOAD_MIX";
+        public static final String LOAD_MAX_IN_FLIGHT = "LOAD_MAX_IN_FLIGHT";
+        public static final String LOAD_WORKER_PORT = "LOAD_WORKER_PORT";
+        public static final String LOAD_WORKER_ADDRESSES = "LOAD_WORKER_ADDRESSES";
+        public static final String LOAD_SOAK_WINDOW_S = "LOAD_SOAK_WINDOW_S";
+        public static final String LOAD_SOAK_COMPARED_WINDOWS = "LOAD_SOAK_COMPARED_WINDOWS";
+        public static final String LOAD_SESSION_THINK_MS = "LOAD_SESSION_THINK_MS";
+        public static final String LOAD_SESSION_THINK_TIME = "LOAD_SESSION_THINK_TIME";
+        public static final String LOAD_SESSION_ABANDONMENT = "LOAD_SESSION_ABANDONMENT";
+        public static final String LOAD_SPIKE_BASELINE_RATE = "LOAD_SPIKE_BASELINE_RATE";
+        public static final String LOAD_SPIKE_BURST_RATE = "LOAD_SPIKE_BURST_RATE";
+        public static final String LOAD_SPIKE_BURST_S = "LOAD_SPIKE_BURST_S";
+        public static final String LOAD_SPIKE_INTERVAL_S = "LOAD_SPIKE_INTERVAL_S";
+        public static final String LOAD_SPIKE_COUNT = "LOAD_SPIKE_COUNT";
+        public static final String LOAD_SATURATION_ACTIONS = "LOAD_SATURATION_ACTIONS";
+        public static final String LOAD_SATURATION_START_RATE = "LOAD_SATURATION_START_RATE";
+        public static final String LOAD_SATURATION_STEP_PERCENT = "LOAD_SATURATION_STEP_PERCENT";
+        public static final String LOAD_SATURATION_MAX_RATE = "LOAD_SATURATION_MAX_RATE";
+        public static final String LOAD_SATURATION_STEP_S = "LOAD_SATURATION_STEP_S";
+
+        public static final int DEFAULT_FLEET_PARALLELISM = 8;
+        public static final long DEFAULT_LATENCY_HISTOGRAM_LOG_INTERVAL_S = 10L;
+        public static final int DEFAULT_REST_MAX_IDLE_CONNECTIONS = 32;
+        public static final long DEFAULT_REST_KEEP_ALIVE_DURATION_S = 300L;
+        public static final int DEFAULT_REST_MAX_REQUESTS = 256;
+        public static final int DEFAULT_REST_MAX_REQUESTS_PER_HOST = 256;      // all requests go to the same plugin host
+        public static final boolean DEFAULT_REST_GZIP_REQUESTS = false;
+        public static final Map<ActionType, Long> DEFAULT_GRPC_DEADLINES_S = getGrpcDeadlines(actionType -> actionType.defaultDeadlineS);
+        public static final int DEFAULT_GRPC_EVENT_LOOP_THREADS = 0;       // Netty default
+        public static final boolean DEFAULT_GRPC_NATIVE_TRANSPORT = true;
+        public static final GrpcTransportEngine.CallbackExecutor DEFAULT_GRPC_CALLBACK_EXECUTOR = GrpcTransportEngine.CallbackExecutor.DEFAULT;
+        public static final int DEFAULT_GRPC_CALLBACK_THREADS = Runtime.getRuntime().availableProcessors();
+        public static final int DEFAULT_LOAD_WORKERS = 8;
+        public static final WorkerThreads.Kind DEFAULT_LOAD_THREADS = WorkerThreads.Kind.PLATFORM;
+        public static final long DEFAULT_LOAD_DURATION_S = 60L;
+        public static final long DEFAULT_LOAD_ITERATIONS = 0L;     // unlimited
+        public static final long DEFAULT_LOAD_RATE = 0L;           // run funnel on workers instead
+        public static final ActionType DEFAULT_LOAD_ACTION = ActionType.SHALLOW_AVAILABILITY;
+        public static final int DEFAULT_LOAD_MAX_IN_FLIGHT = 1024;
+        public static final int DEFAULT_LOAD_WORKER_PORT = 7070;
+        public static final long DEFAULT_LOAD_SOAK_WINDOW_S = 600L;
+        public static final int DEFAULT_LOAD_SOAK_COMPARED_WINDOWS = 3;
+        public static final long DEFAULT_LOAD_SESSION_THINK_MS = 5_000L;
+        public static final VirtualUsers.ThinkTime DEFAULT_LOAD_SESSION_THINK_TIME = VirtualUsers.ThinkTime.EXPONENTIAL;
+        public static final String DEFAULT_LOAD_SESSION_ABANDONMENT =
+                "GET_PRODUCT_BY_ID=40,DEEP_AVAILABILITY=30,CREATE_RESERVATION=80,CONFIRM_BOOKING=40,CREATE_AND_CONFIRM_BOOKING=85,CANCEL_BOOKING=95";
+        public static final long DEFAULT_LOAD_SPIKE_BASELINE_RATE = 10L;
+        public static final long DEFAULT_LOAD_SPIKE_BURST_RATE = 200L;
+        public static final long DEFAULT_LOAD_SPIKE_BURST_S = 10L;
+        public static final long DEFAULT_LOAD_SPIKE_INTERVAL_S = 60L;
+        public static final int DEFAULT_LOAD_SPIKE_COUNT = 3;
+        public static final String DEFAULT_LOAD_SATURATION_ACTIONS = "GET_PRODUCT_BY_ID,SHALLOW_AVAILABILITY,DEEP_AVAILABILITY";
+        public static final long DEFAULT_LOAD_SATURATION_START_RATE = 10L;
+        public static final long DEFAULT_LOAD_SATURATION_STEP_PERCENT = 50L;
+        public static final long DEFAULT_LOAD_SATURATION_MAX_RATE = 10_000L;
+        public static final long DEFAULT_LOAD_SATURATION_STEP_S = 30L;
 
+        // plugin to test; in fleet mode, the first plugin of the fleet; null if neither PLUGIN_URL nor FLEET_FILE is set
+        @Nullable
         public final PluginData pluginData;
+        public final List<PluginData> fleet;
+        public final int fleetParallelism;
+        @Nullable
+        public final String latencyHistogramLog;
+        public final long latencyHistogramLogIntervalS;
+        public final int metricsPort;
+        public final boolean resourceAccounting;
 
-        @Nonnull
-        private static String getMandatoryString(String key) {
-            String result = System.getenv().get(key);
-            if (isNullOrEmpty(result)) {
-                throw new IllegalArgumentException(key + " environment variable missing");
-            }
-            return result;
-        }
+        public final int restMaxIdleConnections;
+        public final long restKeepAliveDurationS;
+        public final int restMaxRequests;
+        public final int restMaxRequestsPerHost;
+        public final boolean restGzipRequests;
+        public final Map<ActionType, Long> grpcDeadlinesS;
+        public final int grpcEventLoopThreads;
+        public final boolean grpcNativeTransport;
+        public final GrpcTransportEngine.CallbackExecutor grpcCallbackExecutor;
+        public final int grpcCallbackThreads;
+        public final int loadWorkers;
+        public final WorkerThreads.Kind loadThreads;
+        public final long loadDurationS;
+        public final long loadIterations;
+        public final long loadRate;
+        public final ActionType loadAction;
+        @Nullable
+        public final String loadMix;
+        public final int loadMaxInFlight;
+        public final int loadWorkerPort;
+        public final String loadWorkerAddresses;
+        public final long loadSoakWindowS;
+        public final int loadSoakComparedWindows;
+        public final long loadSessionThinkMs;
+        public final VirtualUsers.ThinkTime loadSessionThinkTime;
+        public final String loadSessionAbandonment;
+        public final long loadSpikeBaselineRate;
+        public final long loadSpikeBurstRate;
+        public final long loadSpikeBurstS;
+        public final long loadSpikeIntervalS;
+        public final int loadSpikeCount;
+        public final List<ActionType> loadSaturationActions;
+        public final long loadSaturationStartRate;
+        public final long loadSaturationStepPercent;
+        public final long loadSaturationMaxRate;
+        public final long loadSaturationStepS;
 
         @Nullable
         private static String getOptionalString(String key, String defaultTo) {
@@ -82,6 +500,40 @@ public class Main {
             return defaultTo;
         }
 
+        private static long getOptionalLong(String key, long defaultTo) {
+            String value = System.getenv().get(key);
+            if (isNullOrEmpty(value)) {
+                return defaultTo;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException(key + " environment variable is not a number: " + value);
+            }
+        }
+
+        private static int getOptionalInt(String key, int defaultTo) {
+            return Math.toIntExact(getOptionalLong(key, defaultTo));
+        }
+
+        @Nonnull
+        private static Map<ActionType, Long> getGrpcDeadlines(ToLongFunction<ActionType> deadlineS) {
+            Map<ActionType, Long> result = new EnumMap<>(ActionType.class);
+            for (ActionType actionType : ActionType.values()) {
+                result.put(actionType, deadlineS.applyAsLong(actionType));
+            }
+            return Maps.immutableEnumMap(result);
+        }
+
+        @Nonnull
+        private static List<ActionType> getActionTypes(String key, String defaultTo) {
+            List<ActionType> result = new ArrayList<>();
+            for (String actionType : Splitter.on(',').trimResults().omitEmptyStrings().split(getOptionalString(key, defaultTo))) {
+                result.add(ActionType.valueOf(actionType));
+            }
+            return ImmutableList.copyOf(result);
+        }
+
         private static String getOptionalFile(String key, String defaultTo) {
             String value = System.getenv().get(key);
             if (value == null) {
@@ -99,15 +551,151 @@ public class Main {
         }
 
         public Configuration() {
-            this.pluginData = new PluginData(
-                    getMandatoryString(PLUGIN_URL),
-                    getOptionalBoolean(USE_TLS, false),
-                    getOptionalFile(SSL_CERT_FILE, null),
-                    getOptionalString(SHARED_SECRET, null),
-                    getOptionalString(TRANSPORT, "REST"),
-                    getOptionalString(REST_BASIC_AUTH_USERNAME, null),
-                    getOptionalString(REST_BASIC_AUTH_PASSWORD, null)
+            String fleetFile = getOptionalString(FLEET_FILE, null);
+            this.fleet = (fleetFile != null) ? ImmutableList.copyOf(FleetFile.read(Paths.get(fleetFile))) : ImmutableList.of();
+            this.fleetParallelism = getOptionalInt(FLEET_PARALLELISM, DEFAULT_FLEET_PARALLELISM);
+            this.latencyHistogramLog = getOptionalString(LATENCY_HISTOGRAM_LOG, null);
+            this.latencyHistogramLogIntervalS = getOptionalLong(LATENCY_HISTOGRAM_LOG_INTERVAL_S, DEFAULT_LATENCY_HISTOGRAM_LOG_INTERVAL_S);
+            this.metricsPort = getOptionalInt(METRICS_PORT, 0);
+            this.resourceAccounting = getOptionalBoolean(RESOURCE_ACCOUNTING, false);
+            String pluginUrl = getOptionalString(PLUGIN_URL, null);
+            if (!fleet.isEmpty()) {
+                this.pluginData = fleet.get(0);
+            } else if (!isNullOrEmpty(pluginUrl)) {
+                this.pluginData = new PluginData(
+                        pluginUrl,
+                        getOptionalBoolean(USE_TLS, false),
+                        getOptionalFile(SSL_CERT_FILE, null),
+                        getOptionalString(SHARED_SECRET, null),
+                        getOptionalString(TRANSPORT, "REST"),
+                        getOptionalString(REST_BASIC_AUTH_USERNAME, null),
+                        getOptionalString(REST_BASIC_AUTH_PASSWORD, null)
+                );
+            } else {
+                this.pluginData = null;
+            }
+            this.restMaxIdleConnections = getOptionalInt(REST_MAX_IDLE_CONNECTIONS, DEFAULT_REST_MAX_IDLE_CONNECTIONS);
+            this.restKeepAliveDurationS = getOptionalLong(REST_KEEP_ALIVE_DURATION_S, DEFAULT_REST_KEEP_ALIVE_DURATION_S);
+            // open-loop load must not have more calls in flight than HTTP client lets through, see #boundInFlight
+            this.loadMaxInFlight = getOptionalInt(LOAD_MAX_IN_FLIGHT, DEFAULT_LOAD_MAX_IN_FLIGHT);
+            this.restMaxRequests = getOptionalInt(REST_MAX_REQUESTS, Math.max(DEFAULT_REST_MAX_REQUESTS, loadMaxInFlight));
+            this.restMaxRequestsPerHost = getOptionalInt(
+                    REST_MAX_REQUESTS_PER_HOST,
+                    Math.max(DEFAULT_REST_MAX_REQUESTS_PER_HOST, loadMaxInFlight)
+            );
+            this.restGzipRequests = getOptionalBoolean(REST_GZIP_REQUESTS, DEFAULT_REST_GZIP_REQUESTS);
+            this.grpcDeadlinesS = getGrpcDeadlines(
+                    actionType -> getOptionalLong(GRPC_DEADLINE_S_PREFIX + actionType.name(), actionType.defaultDeadlineS)
+            );
+            this.grpcEventLoopThreads = getOptionalInt(GRPC_EVENT_LOOP_THREADS, DEFAULT_GRPC_EVENT_LOOP_THREADS);
+            this.grpcNativeTransport = getOptionalBoolean(GRPC_NATIVE_TRANSPORT, DEFAULT_GRPC_NATIVE_TRANSPORT);
+            this.grpcCallbackExecutor = GrpcTransportEngine.CallbackExecutor.valueOf(
+                    getOptionalString(GRPC_CALLBACK_EXECUTOR, DEFAULT_GRPC_CALLBACK_EXECUTOR.name())
+            );
+            this.grpcCallbackThreads = getOptionalInt(GRPC_CALLBACK_THREADS, DEFAULT_GRPC_CALLBACK_THREADS);
+            this.loadWorkers = getOptionalInt(LOAD_WORKERS, DEFAULT_LOAD_WORKERS);
+            this.loadThreads = WorkerThreads.Kind.valueOf(getOptionalString(LOAD_THREADS, DEFAULT_LOAD_THREADS.name()));
+            this.loadDurationS = getOptionalLong(LOAD_DURATION_S, DEFAULT_LOAD_DURATION_S);
+            this.loadIterations = getOptionalLong(LOAD_ITERATIONS, DEFAULT_LOAD_ITERATIONS);
+            this.loadRate = getOptionalLong(LOAD_RATE, DEFAULT_LOAD_RATE);
+            this.loadAction = ActionType.valueOf(getOptionalString(LOAD_ACTION, DEFAULT_LOAD_ACTION.name()));
+            this.loadMix = getOptionalString(LOAD_MIX, null);
+            this.loadWorkerPort = getOptionalInt(LOAD_WORKER_PORT, DEFAULT_LOAD_WORKER_PORT);
+            this.loadWorkerAddresses = getOptionalString(LOAD_WORKER_ADDRESSES, "");
+            this.loadSoakWindowS = getOptionalLong(LOAD_SOAK_WINDOW_S, DEFAULT_LOAD_SOAK_WINDOW_S);
+            this.loadSoakComparedWindows = getOptionalInt(LOAD_SOAK_COMPARED_WINDOWS, DEFAULT_LOAD_SOAK_COMPARED_WINDOWS);
+            this.loadSessionThinkMs = getOptionalLong(LOAD_SESSION_THINK_MS, DEFAULT_LOAD_SESSION_THINK_MS);
+            this.loadSessionThinkTime = VirtualUsers.ThinkTime.valueOf(getOptionalString(LOAD_SESSION_THINK_TIME, DEFAULT_LOAD_SESSION_THINK_TIME.name()));
+            this.loadSessionAbandonment = getOptionalString(LOAD_SESSION_ABANDONMENT, DEFAULT_LOAD_SESSION_ABANDONMENT);
+            this.loadSpikeBaselineRate = getOptionalLong(LOAD_SPIKE_BASELINE_RATE, DEFAULT_LOAD_SPIKE_BASELINE_RATE);
+            this.loadSpikeBurstRate = getOptionalLong(LOAD_SPIKE_BURST_RATE, DEFAULT_LOAD_SPIKE_BURST_RATE);
+            this.loadSpikeBurstS = getOptionalLong(LOAD_SPIKE_BURST_S, DEFAULT_LOAD_SPIKE_BURST_S);
+            this.loadSpikeIntervalS = getOptionalLong(LOAD_SPIKE_INTERVAL_S, DEFAULT_LOAD_SPIKE_INTERVAL_S);
+            this.loadSpikeCount = getOptionalInt(LOAD_SPIKE_COUNT, DEFAULT_LOAD_SPIKE_COUNT);
+            this.loadSaturationActions = getActionTypes(LOAD_SATURATION_ACTIONS, DEFAULT_LOAD_SATURATION_ACTIONS);
+            this.loadSaturationStartRate = getOptionalLong(LOAD_SATURATION_START_RATE, DEFAULT_LOAD_SATURATION_START_RATE);
+            this.loadSaturationStepPercent = getOptionalLong(LOAD_SATURATION_STEP_PERCENT, DEFAULT_LOAD_SATURATION_STEP_PERCENT);
+            this.loadSaturationMaxRate = getOptionalLong(LOAD_SATURATION_MAX_RATE, DEFAULT_LOAD_SATURATION_MAX_RATE);
+            this.loadSaturationStepS = getOptionalLong(LOAD_SATURATION_STEP_S, DEFAULT_LOAD_SATURATION_STEP_S);
+        }
+
+        private Configuration(Configuration other, PluginData pluginData) {
+            this.pluginData = pluginData;
+            this.fleet = other.fleet;
+            this.fleetParallelism = other.fleetParallelism;
+            this.latencyHistogramLog = other.latencyHistogramLog;
+            this.latencyHistogramLogIntervalS = other.latencyHistogramLogIntervalS;
+            this.metricsPort = other.metricsPort;
+            this.resourceAccounting = other.resourceAccounting;
+            this.restMaxIdleConnections = other.restMaxIdleConnections;
+            this.restKeepAliveDurationS = other.restKeepAliveDurationS;
+            this.restMaxRequests = other.restMaxRequests;
+            this.restMaxRequestsPerHost = other.restMaxRequestsPerHost;
+            this.restGzipRequests = other.restGzipRequests;
+            this.grpcDeadlinesS = other.grpcDeadlinesS;
+            this.grpcEventLoopThreads = other.grpcEventLoopThreads;
+            this.grpcNativeTransport = other.grpcNativeTransport;
+            this.grpcCallbackExecutor = other.grpcCallbackExecutor;
+            this.grpcCallbackThreads = other.grpcCallbackThreads;
+            this.loadWorkers = other.loadWorkers;
+            this.loadThreads = other.loadThreads;
+            this.loadDurationS = other.loadDurationS;
+            this.loadIterations = other.loadIterations;
+            this.loadRate = other.loadRate;
+            this.loadAction = other.loadAction;
+            this.loadMix = other.loadMix;
+            this.loadMaxInFlight = other.loadMaxInFlight;
+            this.loadWorkerPort = other.loadWorkerPort;
+            this.loadWorkerAddresses = other.loadWorkerAddresses;
+            this.loadSoakWindowS = other.loadSoakWindowS;
+            this.loadSoakComparedWindows = other.loadSoakComparedWindows;
+            this.loadSessionThinkMs = other.loadSessionThinkMs;
+            this.loadSessionThinkTime = other.loadSessionThinkTime;
+            this.loadSessionAbandonment = other.loadSessionAbandonment;
+            this.loadSpikeBaselineRate = other.loadSpikeBaselineRate;
+            this.loadSpikeBurstRate = other.loadSpikeBurstRate;
+            this.loadSpikeBurstS = other.loadSpikeBurstS;
+            this.loadSpikeIntervalS = other.loadSpikeIntervalS;
+            this.loadSpikeCount = other.loadSpikeCount;
+            this.loadSaturationActions = other.loadSaturationActions;
+            this.loadSaturationStartRate = other.loadSaturationStartRate;
+            this.loadSaturationStepPercent = other.loadSaturationStepPercent;
+            this.loadSaturationMaxRate = other.loadSaturationMaxRate;
+            this.loadSaturationStepS = other.loadSaturationStepS;
+        }
+
+        /**
+         * Bounds number of calls open-loop load may have in flight by what the transport can actually send at once. Over
+         * REST, requests above dispatcher limits of HTTP client would wait in its queue; scheduler would count the wait
+         * as plugin's response and service time.
+         *
+         * @param maxInFlight max number of calls in flight asked for.
+         * @return the same number, or a smaller one if transport can't have that many calls in flight.
+         */
+        public int boundInFlight(int maxInFlight) {
+            if ((pluginData == null) || (pluginData.transport != PluginData.Transport.REST)) {
+                return maxInFlight;
+            }
+            int dispatcherLimit = Math.min(restMaxRequests, restMaxRequestsPerHost);
+            if (maxInFlight <= dispatcherLimit) {
+                return maxInFlight;
+            }
+            log.warn(
+                    "At most {} calls can be in flight over REST, see {} and {}; {} asked for",
+                    dispatcherLimit,
+                    REST_MAX_REQUESTS,
+                    REST_MAX_REQUESTS_PER_HOST,
+                    maxInFlight
             );
+            return dispatcherLimit;
+        }
+
+        /**
+         * @return the same configuration, but for a different plugin.
+         */
+        @Nonnull
+        public Configuration withPluginData(@Nonnull PluginData pluginData) {
+            return new Configuration(this, pluginData);
         }
     }
 }
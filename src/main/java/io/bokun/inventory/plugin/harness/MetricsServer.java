@@ -0,0 +1,71 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+import com.google.common.util.concurrent.*;
+import com.sun.net.httpserver.*;
+import org.slf4j.*;
+
+/**
+ * Serves {@link PluginMetrics} over HTTP at <tt>/metrics</tt>, for Prometheus or similar tooling to scrape while the
+ * harness runs. Listens on loopback interface only.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class MetricsServer {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsServer.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts listening on given port.
+     */
+    public MetricsServer(int port) {
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Could not listen for metrics scrapes on port " + port, ioe);
+        }
+        this.executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("metrics-server")
+                        .setDaemon(true)
+                        .build()
+        );
+        server.setExecutor(executor);
+        server.createContext("/metrics", MetricsServer::serveMetrics);
+        server.start();
+        log.info("Serving metrics at http://{}:{}/metrics", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    private static void serveMetrics(HttpExchange exchange) throws IOException {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8)) {
+                PluginMetrics.writePrometheus(writer);
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.size());
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                body.writeTo(responseBody);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Stops listening; scrapes in progress are not waited for.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
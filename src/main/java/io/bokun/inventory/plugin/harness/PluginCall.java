@@ -0,0 +1,118 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+/**
+ * A single call made to a plugin: what is called, bytes it has put on the wire so far and when it started. Timed from
+ * {@link #begin()} until {@link #end(String, CallOutcome, int)}; the latter also emits a flight recorder event, see
+ * {@link PluginCallRecorder}, if Java Flight Recorder is available and records it, so plugin calls show up on the same
+ * timeline as GC pauses and thread stalls of the harness.
+ *
+ * <p>A new instance is needed for every call. RESTful requests carry it as their tag.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class PluginCall {
+
+    /**
+     * JFR is only there since JDK 11 (and backported to 8u262), hence event classes mustn't be touched unless it is;
+     * neither are they built on JDK not having it. {@code null} if either is the case.
+     */
+    @Nullable
+    private static final PluginCallRecorder recorder = loadRecorder();
+
+    @Nonnull
+    public final PluginData.Transport transport;
+
+    @Nonnull
+    public final ActionType actionType;
+
+    /**
+     * Product the call is about, if it's about a single one.
+     */
+    @Nullable
+    public final String productId;
+
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+
+    private long startNanos;
+
+    @Nullable
+    private Object event;
+
+    public PluginCall(@Nonnull PluginData.Transport transport, @Nonnull ActionType actionType, @Nullable String productId) {
+        this.transport = transport;
+        this.actionType = actionType;
+        this.productId = productId;
+    }
+
+    /**
+     * Describes RESTful call not related to a single product.
+     */
+    @Nonnull
+    public static PluginCall rest(@Nonnull ActionType actionType) {
+        return new PluginCall(PluginData.Transport.REST, actionType, null);
+    }
+
+    /**
+     * Describes RESTful call about given product.
+     */
+    @Nonnull
+    public static PluginCall rest(@Nonnull ActionType actionType, @Nonnull String productId) {
+        return new PluginCall(PluginData.Transport.REST, actionType, productId);
+    }
+
+    @Nullable
+    private static PluginCallRecorder loadRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PluginCall.class.getClassLoader());
+            return (PluginCallRecorder) Class.forName(PluginCall.class.getName() + "Event$Recorder")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts timing the call; to be called right before sending it.
+     */
+    public void begin() {
+        event = (recorder != null) ? recorder.begin() : null;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds given number of bytes sent or received on the wire.
+     */
+    public void addBytes(@Nonnull TransferStatistics.Direction direction, long bytes) {
+        (direction == TransferStatistics.Direction.REQUEST ? requestBytes : responseBytes).add(bytes);
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    /**
+     * Stops timing the call, emitting flight recorder event if it's being recorded.
+     *
+     * @param plugin plugin address, i.e. <tt>host:port</tt>.
+     * @param elements number of responses or array elements received.
+     * @return time elapsed since {@link #begin()}, in nanoseconds.
+     */
+    public long end(@Nonnull String plugin, @Nonnull CallOutcome outcome, int elements) {
+        long nanos = System.nanoTime() - startNanos;
+        if (event != null) {
+            recorder.endAndCommit(event, this, plugin, outcome, elements);
+            event = null;
+        }
+        return nanos;
+    }
+}
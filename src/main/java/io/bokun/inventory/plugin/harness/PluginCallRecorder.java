@@ -0,0 +1,28 @@
+package io.bokun.inventory.plugin.harness;
+
+import javax.annotation.*;
+
+/**
+ * Records plugin calls as Java Flight Recorder events. Implemented next to the event class in <tt>src/jfr</tt>, which
+ * is compiled apart from the rest of the harness as only JDKs having JFR can compile it; {@link PluginCall} loads the
+ * implementation if both JFR and the class are there.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+interface PluginCallRecorder {
+
+    /**
+     * @return event whose duration has started, or {@code null} if the event is disabled in all running recordings.
+     */
+    @Nullable
+    Object begin();
+
+    /**
+     * Ends given event and commits it, if it's still being recorded.
+     */
+    void endAndCommit(@Nonnull Object begun,
+                      @Nonnull PluginCall call,
+                      @Nonnull String plugin,
+                      @Nonnull CallOutcome outcome,
+                      int elements);
+}
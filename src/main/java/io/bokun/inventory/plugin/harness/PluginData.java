@@ -1,5 +1,7 @@
 package io.bokun.inventory.plugin.harness;
 
+import java.util.*;
+
 import javax.annotation.*;
 
 /**
@@ -32,6 +34,10 @@ public class PluginData {
     @Nullable
     public final String restBasicAuthPassword;
 
+    // plugin configuration parameter values by parameter name; if null, they are taken from PLUGIN_CONFIG_* env vars
+    @Nullable
+    public final Map<String, String> configParameters;
+
     public PluginData(@Nonnull String url,
                       boolean tls,
                       @Nullable String cert,
@@ -39,6 +45,17 @@ public class PluginData {
                       String transport,
                       String restBasicAuthUsername,
                       String restBasicAuthPassword) {
+        this(url, tls, cert, sharedSecret, transport, restBasicAuthUsername, restBasicAuthPassword, null);
+    }
+
+    public PluginData(@Nonnull String url,
+                      boolean tls,
+                      @Nullable String cert,
+                      @Nullable String sharedSecret,
+                      String transport,
+                      String restBasicAuthUsername,
+                      String restBasicAuthPassword,
+                      @Nullable Map<String, String> configParameters) {
         this.url = url;
         this.tls = tls;
         this.cert = cert;
@@ -46,6 +63,31 @@ public class PluginData {
         this.transport = Transport.valueOf(transport);
         this.restBasicAuthUsername = restBasicAuthUsername;
         this.restBasicAuthPassword = restBasicAuthPassword;
+        this.configParameters = (configParameters != null) ? Collections.unmodifiableMap(new HashMap<>(configParameters)) : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PluginData that = (PluginData) o;
+        return tls == that.tls
+                && url.equals(that.url)
+                && Objects.equals(cert, that.cert)
+                && Objects.equals(sharedSecret, that.sharedSecret)
+                && transport == that.transport
+                && Objects.equals(restBasicAuthUsername, that.restBasicAuthUsername)
+                && Objects.equals(restBasicAuthPassword, that.restBasicAuthPassword)
+                && Objects.equals(configParameters, that.configParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(url, tls, cert, sharedSecret, transport, restBasicAuthUsername, restBasicAuthPassword, configParameters);
     }
 
     public enum Transport {
@@ -0,0 +1,174 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+/**
+ * Live counters of plugin calls, labelled by transport, plugin and action: calls by outcome, bytes on the wire and
+ * latency of successful calls in fixed buckets. Meant to be scraped while the harness runs (see {@link MetricsServer}),
+ * hence rendered in Prometheus text exposition format. Safe to use from any thread.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class PluginMetrics {
+
+    /**
+     * Upper bounds (in seconds) of latency buckets, spanning from a fast in-memory plugin to the longest default
+     * deadline.
+     */
+    private static final double[] LATENCY_BUCKETS_S = {0.005d, 0.01d, 0.025d, 0.05d, 0.1d, 0.25d, 0.5d, 1.0d, 2.5d, 5.0d, 10.0d, 30.0d, 60.0d, 120.0d, 300.0d};
+
+    private static final long[] LATENCY_BUCKETS_NANOS = Arrays.stream(LATENCY_BUCKETS_S)
+            .mapToLong(s -> (long) (s * TimeUnit.SECONDS.toNanos(1L)))
+            .toArray();
+
+    /**
+     * Counters of a single transport, plugin and action.
+     */
+    private static final class Series {
+
+        private final LongAdder[] calls = newAdders(CallOutcome.values().length);
+        private final LongAdder[] bytes = newAdders(TransferStatistics.Direction.values().length);
+        private final LongAdder[] latencyBuckets = newAdders(LATENCY_BUCKETS_NANOS.length + 1);     // last one is +Inf
+        private final LongAdder latencySumNanos = new LongAdder();
+
+        private static LongAdder[] newAdders(int count) {
+            LongAdder[] result = new LongAdder[count];
+            Arrays.setAll(result, i -> new LongAdder());
+            return result;
+        }
+    }
+
+    private static final ConcurrentMap<PluginData.Transport, ConcurrentMap<String, Map<ActionType, Series>>> series = new ConcurrentHashMap<>();
+
+    private PluginMetrics() {
+    }
+
+    private static Map<ActionType, Series> newSeries(String plugin) {
+        Map<ActionType, Series> result = new EnumMap<>(ActionType.class);
+        for (ActionType actionType : ActionType.values()) {
+            result.put(actionType, new Series());
+        }
+        return result;
+    }
+
+    private static Series of(PluginData.Transport transport, String plugin, ActionType actionType) {
+        return series.computeIfAbsent(transport, t -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(plugin, PluginMetrics::newSeries)
+                .get(actionType);
+    }
+
+    /**
+     * Records that a call has ended with given outcome after given time; time only counts if the call has succeeded.
+     *
+     * @param plugin plugin address, i.e. <tt>host:port</tt>.
+     */
+    public static void recordCall(@Nonnull PluginData.Transport transport,
+                                  @Nonnull String plugin,
+                                  @Nonnull ActionType actionType,
+                                  @Nonnull CallOutcome outcome,
+                                  long nanos) {
+        Series series = of(transport, plugin, actionType);
+        series.calls[outcome.ordinal()].increment();
+        if (outcome == CallOutcome.SUCCESS) {
+            int bucket = 0;
+            while ((bucket < LATENCY_BUCKETS_NANOS.length) && (nanos > LATENCY_BUCKETS_NANOS[bucket])) {
+                bucket++;
+            }
+            series.latencyBuckets[bucket].increment();
+            series.latencySumNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Adds given number of bytes sent or received on the wire by a call.
+     *
+     * @param plugin plugin address, i.e. <tt>host:port</tt>.
+     */
+    public static void addBytes(@Nonnull PluginData.Transport transport,
+                                @Nonnull String plugin,
+                                @Nonnull ActionType actionType,
+                                @Nonnull TransferStatistics.Direction direction,
+                                long bytes) {
+        of(transport, plugin, actionType).bytes[direction.ordinal()].add(bytes);
+    }
+
+    /**
+     * Writes all the metrics in Prometheus text exposition format (version 0.0.4), skipping actions never called.
+     */
+    public static void writePrometheus(@Nonnull Writer writer) throws IOException {
+        writer.write("# HELP harness_calls_total Plugin calls made, by outcome.\n");
+        writer.write("# TYPE harness_calls_total counter\n");
+        forEachSeries((labels, series) -> {
+            for (CallOutcome outcome : CallOutcome.values()) {
+                writeSample(writer, "harness_calls_total", labels + ",outcome=\"" + outcome.name().toLowerCase() + "\"", series.calls[outcome.ordinal()].sum());
+            }
+        });
+
+        writer.write("# HELP harness_transferred_bytes_total Bytes sent to and received from plugins on the wire.\n");
+        writer.write("# TYPE harness_transferred_bytes_total counter\n");
+        forEachSeries((labels, series) -> {
+            for (TransferStatistics.Direction direction : TransferStatistics.Direction.values()) {
+                writeSample(writer, "harness_transferred_bytes_total", labels + ",direction=\"" + direction.name().toLowerCase() + "\"", series.bytes[direction.ordinal()].sum());
+            }
+        });
+
+        writer.write("# HELP harness_call_duration_seconds Latency of successful plugin calls.\n");
+        writer.write("# TYPE harness_call_duration_seconds histogram\n");
+        forEachSeries((labels, series) -> {
+            long cumulative = 0L;
+            for (int i = 0; i < series.latencyBuckets.length; i++) {
+                cumulative += series.latencyBuckets[i].sum();
+                String le = (i < LATENCY_BUCKETS_S.length) ? Double.toString(LATENCY_BUCKETS_S[i]) : "+Inf";
+                writeSample(writer, "harness_call_duration_seconds_bucket", labels + ",le=\"" + le + "\"", cumulative);
+            }
+            writer.write("harness_call_duration_seconds_sum{" + labels + "} " + series.latencySumNanos.sum() / 1_000_000_000.0d + "\n");
+            writeSample(writer, "harness_call_duration_seconds_count", labels, cumulative);
+        });
+    }
+
+    @FunctionalInterface
+    private interface SeriesWriter {
+        void write(String labels, Series series) throws IOException;
+    }
+
+    private static void forEachSeries(SeriesWriter seriesWriter) throws IOException {
+        for (PluginData.Transport transport : PluginData.Transport.values()) {
+            Map<String, Map<ActionType, Series>> transportSeries = series.get(transport);
+            if (transportSeries == null) {
+                continue;
+            }
+            for (Map.Entry<String, Map<ActionType, Series>> pluginSeries : transportSeries.entrySet()) {
+                for (Map.Entry<ActionType, Series> actionSeries : pluginSeries.getValue().entrySet()) {
+                    if (!isCalled(actionSeries.getValue())) {
+                        continue;
+                    }
+                    String labels = "transport=\"" + transport + "\",plugin=\"" + escape(pluginSeries.getKey())
+                            + "\",action=\"" + actionSeries.getKey().methodName + "\"";
+                    seriesWriter.write(labels, actionSeries.getValue());
+                }
+            }
+        }
+    }
+
+    private static boolean isCalled(Series series) {
+        for (LongAdder calls : series.calls) {
+            if (calls.sum() > 0L) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, long value) throws IOException {
+        writer.write(name + "{" + labels + "} " + value + "\n");
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,179 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import org.slf4j.*;
+
+/**
+ * Accounts CPU time used and bytes allocated by the harness per action type, to tell how much of the machine the
+ * harness itself takes when generating load, and which actions are heavy to send, decode and validate.
+ *
+ * <p>A call is worked on by several threads: the caller sends it, while HTTP client's dispatcher or gRPC callback
+ * executor threads decode and validate what plugin returns. Each piece of work is measured on the thread doing it,
+ * between {@link #begin()} and {@link #end(ActionType)}, using HotSpot per-thread CPU time and allocation counters;
+ * pieces nested on the same thread are counted as part of the outermost one. Work done by transport libraries outside
+ * of harness code, e.g. gRPC decoding responses before passing them on, isn't counted; neither is work done on virtual
+ * threads, which HotSpot keeps no such counters for.</p>
+ *
+ * <p>Reading the counters takes some hundreds of nanoseconds, which is a lot when streamed responses are validated one
+ * by one, hence accounting is off unless enabled by {@link Main.Configuration#resourceAccounting}. Safe to use from any
+ * thread.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class ResourceStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceStatistics.class);
+
+    /**
+     * Resources used by all calls of a single action type.
+     */
+    private static final class Usage {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+    }
+
+    /**
+     * Piece of work in progress on a thread; only the outermost one is measured.
+     */
+    private static final class Measurement {
+
+        private int depth;
+        private boolean unsupported;
+        private long cpuNanosBefore;
+        private long allocatedBytesBefore;
+    }
+
+    private static final ConcurrentMap<ActionType, Usage> usages = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Measurement> measurements = ThreadLocal.withInitial(Measurement::new);
+
+    /**
+     * Pieces of work done on threads the counters aren't available for, hence not accounted.
+     */
+    private static final LongAdder unmeasured = new LongAdder();
+
+    private static final AtomicBoolean unmeasuredWarned = new AtomicBoolean();
+
+    @Nullable
+    private static volatile com.sun.management.ThreadMXBean threadMXBean;
+
+    private ResourceStatistics() {
+    }
+
+    /**
+     * Enables accounting, if configured to and supported by the JVM.
+     */
+    public static void configure(@Nonnull Main.Configuration configuration) {
+        if (!configuration.resourceAccounting) {
+            return;
+        }
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !bean.isCurrentThreadCpuTimeSupported()
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            log.warn("JVM does not support per-thread CPU time and allocation counters, resources used won't be accounted");
+            return;
+        }
+        com.sun.management.ThreadMXBean hotSpotBean = (com.sun.management.ThreadMXBean) bean;
+        hotSpotBean.setThreadCpuTimeEnabled(true);
+        hotSpotBean.setThreadAllocatedMemoryEnabled(true);
+        threadMXBean = hotSpotBean;
+    }
+
+    private static Usage of(ActionType actionType) {
+        return usages.computeIfAbsent(actionType, a -> new Usage());
+    }
+
+    /**
+     * Counts a call of given action type.
+     */
+    public static void countCall(@Nonnull ActionType actionType) {
+        if (threadMXBean != null) {
+            of(actionType).calls.increment();
+        }
+    }
+
+    /**
+     * Starts measuring a piece of work on the current thread. Has to be followed by {@link #end(ActionType)} on the
+     * same thread, in <tt>finally</tt> block.
+     */
+    public static void begin() {
+        com.sun.management.ThreadMXBean bean = threadMXBean;
+        if (bean == null) {
+            return;
+        }
+        Measurement measurement = measurements.get();
+        if (measurement.depth++ == 0) {
+            measurement.allocatedBytesBefore = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            measurement.cpuNanosBefore = bean.getCurrentThreadCpuTime();
+            // HotSpot doesn't keep counters of virtual threads, reading them gives -1
+            measurement.unsupported = (measurement.allocatedBytesBefore < 0L) || (measurement.cpuNanosBefore < 0L);
+        }
+    }
+
+    /**
+     * Ends measuring a piece of work on the current thread, adding resources it used to given action type.
+     *
+     * @param actionType action the work was done for, or {@code null} if it isn't to be accounted.
+     */
+    public static void end(@Nullable ActionType actionType) {
+        com.sun.management.ThreadMXBean bean = threadMXBean;
+        if (bean == null) {
+            return;
+        }
+        Measurement measurement = measurements.get();
+        if ((--measurement.depth == 0) && (actionType != null)) {
+            if (measurement.unsupported) {
+                unmeasured.increment();
+                if (unmeasuredWarned.compareAndSet(false, true)) {
+                    log.warn("Per-thread CPU time and allocation counters are not available on virtual threads, work done on them won't be accounted");
+                }
+                return;
+            }
+            long cpuNanos = bean.getCurrentThreadCpuTime() - measurement.cpuNanosBefore;
+            long allocatedBytes = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - measurement.allocatedBytesBefore;
+            Usage usage = of(actionType);
+            usage.cpuNanos.add(cpuNanos);
+            usage.allocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    /**
+     * Logs CPU time and allocations per call of every action called so far, if accounting was enabled.
+     */
+    public static void logSummary() {
+        if (threadMXBean == null) {
+            return;
+        }
+        long totalCpuNanos = 0L;
+        for (ActionType actionType : ActionType.values()) {
+            Usage usage = usages.get(actionType);
+            long calls = (usage == null) ? 0L : usage.calls.sum();
+            if (calls == 0L) {
+                continue;
+            }
+            long cpuNanos = usage.cpuNanos.sum();
+            totalCpuNanos += cpuNanos;
+            log.info(
+                    "{}: {} calls, per call CPU {}ms, allocated {}KB",
+                    actionType.methodName,
+                    calls,
+                    String.format("%.3f", cpuNanos / 1_000_000.0d / calls),
+                    String.format("%.1f", usage.allocatedBytes.sum() / 1024.0d / calls)
+            );
+        }
+        log.info("Harness CPU time spent on plugin calls: {}s", String.format("%.1f", totalCpuNanos / 1_000_000_000.0d));
+        long unmeasuredCount = unmeasured.sum();
+        if (unmeasuredCount > 0L) {
+            log.warn("{} pieces of work were done on virtual threads and are not accounted for above", unmeasuredCount);
+        }
+    }
+}
@@ -1,17 +1,17 @@
 package io.bokun.inventory.plugin.harness;
 
+import java.util.concurrent.*;
+
 import javax.annotation.*;
 
-import com.google.gson.*;
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 import org.slf4j.*;
 
-import static io.bokun.inventory.util.GrpcRestMapper.restToGrpc;
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.validateOrThrow;
 
 /**
  * Cancels a booking. Uses RESTful transport protocol.
@@ -31,14 +31,35 @@ public class RestCancelBookingAction implements Action {
 
     @Nonnull
     public CancelBookingResponse cancelBooking(@Nonnull PluginData pluginData, @Nonnull CancelBookingRequest cancelBookingRequest) {
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return sendHttpRequestAndParseResponse(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, cancelBookingRequest),
+                CancelBookingResponse.class,
+                cancelBookingResponse -> validate(pluginData, cancelBookingResponse)
+        );
+    }
+
+    @Nonnull
+    public CompletableFuture<CancelBookingResponse> cancelBookingAsync(@Nonnull PluginData pluginData, @Nonnull CancelBookingRequest cancelBookingRequest) {
+        return sendHttpRequestAndParseResponseAsync(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, cancelBookingRequest),
+                CancelBookingResponse.class,
+                cancelBookingResponse -> validate(pluginData, cancelBookingResponse)
+        );
+    }
+
+    @Nonnull
+    private static Request buildRequest(PluginData pluginData, CancelBookingRequest cancelBookingRequest) {
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/booking/cancel")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(cancelBookingRequest)))
+                .tag(PluginCall.rest(ActionType.CANCEL_BOOKING))
+                .post(jsonBody(cancelBookingRequest))
                 .build();
-        CancelBookingResponse confirmBookingResponse = sendHttpRequestAndParseResponse(httpClient, request, CancelBookingResponse.class);
-        validateOrThrow(restToGrpc(confirmBookingResponse), cancelBookingResponseValidator);
+    }
+
+    private void validate(PluginData pluginData, CancelBookingResponse cancelBookingResponse) {
+        mapAndValidateOrThrow(ActionType.CANCEL_BOOKING, cancelBookingResponse, GrpcRestMapper::restToGrpc, cancelBookingResponseValidator);
         log.info("Success for ::cancelBooking@{}", pluginData.url);
-        return confirmBookingResponse;
     }
 }
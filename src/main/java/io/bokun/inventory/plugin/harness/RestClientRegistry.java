@@ -0,0 +1,102 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.squareup.okhttp.*;
+import org.slf4j.*;
+
+import static com.google.common.base.Strings.*;
+import static io.bokun.inventory.plugin.harness.CustomTrust.*;
+import static io.bokun.inventory.plugin.harness.RestUtil.*;
+
+/**
+ * Keeps one {@link OkHttpClient} per plugin, so that all RESTful actions share its connection pool, dispatcher and
+ * TLS session cache instead of opening new connections and re-doing handshakes for every call.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class RestClientRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(RestClientRegistry.class);
+
+    private final int maxIdleConnections;
+    private final long keepAliveDurationS;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final boolean gzipRequests;
+
+    private final ConcurrentMap<PluginData, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxIdleConnections how many idle connections to keep per plugin.
+     * @param keepAliveDurationS how long an idle connection is kept before being evicted.
+     * @param maxRequests how many asynchronous requests may be executed concurrently per plugin.
+     * @param maxRequestsPerHost how many asynchronous requests may be executed concurrently per host of a plugin.
+     * @param gzipRequests whether to compress request bodies. Responses are always accepted compressed.
+     */
+    public RestClientRegistry(int maxIdleConnections,
+                              long keepAliveDurationS,
+                              int maxRequests,
+                              int maxRequestsPerHost,
+                              boolean gzipRequests) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveDurationS = keepAliveDurationS;
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.gzipRequests = gzipRequests;
+    }
+
+    /**
+     * Returns the client for given plugin, creating one if it does not exist yet.
+     *
+     * @param pluginData plugin config info for shaping the client.
+     * @return shared client.
+     */
+    @Nonnull
+    public OkHttpClient getClient(@Nonnull PluginData pluginData) {
+        return clients.computeIfAbsent(pluginData, this::createClient);
+    }
+
+    /**
+     * Closes idle connections and stops dispatcher threads of all clients created so far.
+     */
+    public void shutdown() {
+        List<OkHttpClient> toShutdown = new ArrayList<>(clients.values());
+        clients.clear();
+        for (OkHttpClient client : toShutdown) {
+            client.getDispatcher().getExecutorService().shutdown();
+            client.getConnectionPool().evictAll();
+        }
+    }
+
+    @Nonnull
+    private OkHttpClient createClient(@Nonnull PluginData pluginData) {
+        log.debug("Creating HTTP client for {}", pluginData.url);
+        OkHttpClient httpClient = new OkHttpClient();
+        httpClient.setConnectionPool(new ConnectionPool(maxIdleConnections, keepAliveDurationS, TimeUnit.SECONDS));
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        httpClient.setDispatcher(dispatcher);
+
+        // client asks for gzip-ed responses and inflates them transparently, unless Accept-Encoding is set explicitly;
+        // counting on both sides of (de)compression shows how much it saves
+        httpClient.interceptors().add(new TransferCountingInterceptor(TransferStatistics.Layer.CONTENT));
+        if (gzipRequests) {
+            httpClient.interceptors().add(new GzipRequestInterceptor());
+        }
+        httpClient.networkInterceptors().add(new TransferCountingInterceptor(TransferStatistics.Layer.WIRE));
+
+        if (!nullToEmpty(pluginData.restBasicAuthUsername).isEmpty()) {
+            httpClient.setAuthenticator(getRestHttpAuthenticator(pluginData.restBasicAuthUsername, pluginData.restBasicAuthPassword));
+        }
+        if (pluginData.tls) {
+            assert pluginData.cert != null;
+            acceptSelfSignedCertificate(httpClient, pluginData.cert);
+        }
+        return httpClient;
+    }
+}
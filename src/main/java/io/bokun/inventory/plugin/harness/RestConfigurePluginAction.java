@@ -41,21 +41,43 @@ public class RestConfigurePluginAction implements Action {
         }
     }
 
+    /**
+     * Same as {@link #getPluginConfigurationParameterValues(PluginData, PluginDefinition)}, always taking values from
+     * environment variables.
+     */
     @Nonnull
     public Collection<PluginConfigurationParameterValue> getPluginConfigurationParameterValues(@Nonnull PluginDefinition pluginDefinition) {
+        return getPluginConfigurationParameterValues(System.getenv(), PLUGIN_CONFIG_PREFIX, pluginDefinition);
+    }
+
+    /**
+     * Matches configuration parameters plugin requires with values given in plugin data or, if there are none, in
+     * <tt>PLUGIN_CONFIG_*</tt> environment variables.
+     */
+    @Nonnull
+    public Collection<PluginConfigurationParameterValue> getPluginConfigurationParameterValues(@Nonnull PluginData pluginData,
+                                                                                              @Nonnull PluginDefinition pluginDefinition) {
+        return (pluginData.configParameters != null)
+                ? getPluginConfigurationParameterValues(pluginData.configParameters, "", pluginDefinition)
+                : getPluginConfigurationParameterValues(pluginDefinition);
+    }
+
+    @Nonnull
+    private Collection<PluginConfigurationParameterValue> getPluginConfigurationParameterValues(Map<String, String> environment,
+                                                                                               String prefix,
+                                                                                               PluginDefinition pluginDefinition) {
         ImmutableList.Builder<PluginConfigurationParameterValue> result = new ImmutableList.Builder<>();
-        Map<String, String> environment = System.getenv();
         for (PluginConfigurationParameter parameter : pluginDefinition.getParameters()) {
-            String envVarName = PLUGIN_CONFIG_PREFIX + parameter.getName();
+            String envVarName = prefix + parameter.getName();
             String envVarValue = environment.get(envVarName);
             if (parameter.getRequired() && isNullOrEmpty(envVarValue)) {
-                throw new IllegalStateException(envVarName + " environment variable is missing");
+                throw new IllegalStateException(envVarName + " configuration value is missing");
             }
             if (!isNullOrEmpty(envVarValue) &&  !valueCanBeParsed(parameter.getType(), envVarName, envVarValue)) {
                 throw new IllegalStateException("Unparseable value");
             }
             PluginConfigurationParameterValue value = new PluginConfigurationParameterValue();
-            value.setName(envVarName.substring(PLUGIN_CONFIG_PREFIX.length()));
+            value.setName(parameter.getName());
             value.setValue(envVarValue);
             result.add(value);
         }
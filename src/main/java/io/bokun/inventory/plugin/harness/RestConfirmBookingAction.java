@@ -1,17 +1,17 @@
 package io.bokun.inventory.plugin.harness;
 
+import java.util.concurrent.*;
+
 import javax.annotation.*;
 
-import com.google.gson.*;
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 import org.slf4j.*;
 
-import static io.bokun.inventory.util.GrpcRestMapper.*;
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.*;
 
 /**
  * Confirms reservation for plugin, if the latter supports it. Uses RESTful transport protocol.
@@ -31,14 +31,35 @@ public class RestConfirmBookingAction implements Action {
 
     @Nonnull
     public ConfirmBookingResponse confirmBooking(@Nonnull PluginData pluginData, @Nonnull ConfirmBookingRequest confirmBookingRequest) {
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return sendHttpRequestAndParseResponse(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, confirmBookingRequest),
+                ConfirmBookingResponse.class,
+                confirmBookingResponse -> validate(pluginData, confirmBookingResponse)
+        );
+    }
+
+    @Nonnull
+    public CompletableFuture<ConfirmBookingResponse> confirmBookingAsync(@Nonnull PluginData pluginData, @Nonnull ConfirmBookingRequest confirmBookingRequest) {
+        return sendHttpRequestAndParseResponseAsync(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, confirmBookingRequest),
+                ConfirmBookingResponse.class,
+                confirmBookingResponse -> validate(pluginData, confirmBookingResponse)
+        );
+    }
+
+    @Nonnull
+    private static Request buildRequest(PluginData pluginData, ConfirmBookingRequest confirmBookingRequest) {
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/booking/confirm")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(confirmBookingRequest)))
+                .tag(PluginCall.rest(ActionType.CONFIRM_BOOKING))
+                .post(jsonBody(confirmBookingRequest))
                 .build();
-        ConfirmBookingResponse confirmBookingResponse = sendHttpRequestAndParseResponse(httpClient, request, ConfirmBookingResponse.class);
-        validateOrThrow(restToGrpc(confirmBookingResponse), confirmBookingResponseValidator);
+    }
+
+    private void validate(PluginData pluginData, ConfirmBookingResponse confirmBookingResponse) {
+        mapAndValidateOrThrow(ActionType.CONFIRM_BOOKING, confirmBookingResponse, GrpcRestMapper::restToGrpc, confirmBookingResponseValidator);
         log.info("Success for ::confirmBooking@{}", pluginData.url);
-        return confirmBookingResponse;
     }
 }
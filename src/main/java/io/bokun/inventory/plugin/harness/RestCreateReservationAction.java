@@ -1,17 +1,17 @@
 package io.bokun.inventory.plugin.harness;
 
+import java.util.concurrent.*;
+
 import javax.annotation.*;
 
-import com.google.gson.*;
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 import org.slf4j.*;
 
-import static io.bokun.inventory.util.GrpcRestMapper.restToGrpc;
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.validateOrThrow;
 
 /**
  * Creates reservation for plugin, if the latter supports it. Uses RESTful transport protocol.
@@ -31,14 +31,35 @@ public class RestCreateReservationAction implements Action {
 
     @Nonnull
     public ReservationResponse createReservation(PluginData pluginData, ReservationRequest reservationRequest) {
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return sendHttpRequestAndParseResponse(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, reservationRequest),
+                ReservationResponse.class,
+                reservationResponse -> validate(pluginData, reservationResponse)
+        );
+    }
+
+    @Nonnull
+    public CompletableFuture<ReservationResponse> createReservationAsync(PluginData pluginData, ReservationRequest reservationRequest) {
+        return sendHttpRequestAndParseResponseAsync(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, reservationRequest),
+                ReservationResponse.class,
+                reservationResponse -> validate(pluginData, reservationResponse)
+        );
+    }
+
+    @Nonnull
+    private static Request buildRequest(PluginData pluginData, ReservationRequest reservationRequest) {
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/booking/reserve")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(reservationRequest)))
+                .tag(PluginCall.rest(ActionType.CREATE_RESERVATION))
+                .post(jsonBody(reservationRequest))
                 .build();
-        ReservationResponse reservationResponse = sendHttpRequestAndParseResponse(httpClient, request, ReservationResponse.class);
-        validateOrThrow(restToGrpc(reservationResponse), reservationResponseValidator);
+    }
+
+    private void validate(PluginData pluginData, ReservationResponse reservationResponse) {
+        mapAndValidateOrThrow(ActionType.CREATE_RESERVATION, reservationResponse, GrpcRestMapper::restToGrpc, reservationResponseValidator);
         log.info("Success for ::createReservation@{}", pluginData.url);
-        return reservationResponse;
     }
 }
@@ -2,20 +2,20 @@ package io.bokun.inventory.plugin.harness;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import javax.annotation.*;
 
 import com.google.common.collect.*;
-import com.google.gson.*;
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 
-import static io.bokun.inventory.util.GrpcRestMapper.restToGrpc;
 import static io.bokun.inventory.plugin.harness.RestShallowAvailabilityAction.*;
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.validateOrThrow;
 
 /**
  * Makes a "deep" call to receive availability of given single product. Uses RESTful transport.
@@ -37,6 +37,67 @@ public class RestDeepAvailabilityAction implements Action {
                                                                       @Nonnull LocalDate from,
                                                                       @Nonnull LocalDate to,
                                                                       @Nonnull String productId) {
+        ImmutableList.Builder<ProductAvailabilityWithRatesResponse> result = ImmutableList.builder();
+        getAvailability(pluginData, pluginConfiguration, from, to, productId, result::add);
+        return result.build();
+    }
+
+    /**
+     * Same as {@link #getAvailability(PluginData, Collection, LocalDate, LocalDate, String)}, but streams the
+     * availabilities: each of them is validated and passed to the consumer as soon as it is decoded.
+     *
+     * @return number of availabilities returned by plugin.
+     */
+    public int getAvailability(@Nonnull PluginData pluginData,
+                               @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                               @Nonnull LocalDate from,
+                               @Nonnull LocalDate to,
+                               @Nonnull String productId,
+                               @Nonnull Consumer<? super ProductAvailabilityWithRatesResponse> availabilityConsumer) {
+        return sendHttpRequestAndStreamResponseArray(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, pluginConfiguration, from, to, productId),
+                ProductAvailabilityWithRatesResponse.class,
+                validating(availabilityConsumer)
+        );
+    }
+
+    @Nonnull
+    public CompletableFuture<List<ProductAvailabilityWithRatesResponse>> getAvailabilityAsync(@Nonnull PluginData pluginData,
+                                                                                              @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                                                              @Nonnull LocalDate from,
+                                                                                              @Nonnull LocalDate to,
+                                                                                              @Nonnull String productId) {
+        ImmutableList.Builder<ProductAvailabilityWithRatesResponse> result = ImmutableList.builder();
+        return getAvailabilityAsync(pluginData, pluginConfiguration, from, to, productId, result::add)
+                .thenApply(count -> result.build());
+    }
+
+    /**
+     * Asynchronous version of {@link #getAvailability(PluginData, Collection, LocalDate, LocalDate, String, Consumer)};
+     * availabilities are passed to the consumer on HTTP client's dispatcher thread.
+     */
+    @Nonnull
+    public CompletableFuture<Integer> getAvailabilityAsync(@Nonnull PluginData pluginData,
+                                                           @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                           @Nonnull LocalDate from,
+                                                           @Nonnull LocalDate to,
+                                                           @Nonnull String productId,
+                                                           @Nonnull Consumer<? super ProductAvailabilityWithRatesResponse> availabilityConsumer) {
+        return sendHttpRequestAndStreamResponseArrayAsync(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, pluginConfiguration, from, to, productId),
+                ProductAvailabilityWithRatesResponse.class,
+                validating(availabilityConsumer)
+        );
+    }
+
+    @Nonnull
+    private static Request buildRequest(@Nonnull PluginData pluginData,
+                                        @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                        @Nonnull LocalDate from,
+                                        @Nonnull LocalDate to,
+                                        @Nonnull String productId) {
         ProductAvailabilityRequest deepAvailabilityRequest = new ProductAvailabilityRequest();
         deepAvailabilityRequest.setParameters(Lists.newArrayList(pluginConfiguration));
         DatePeriod range = new DatePeriod();
@@ -45,14 +106,18 @@ public class RestDeepAvailabilityAction implements Action {
         deepAvailabilityRequest.setRange(range);
         deepAvailabilityRequest.setProductId(productId);
 
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/product/getAvailability")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(deepAvailabilityRequest)))
+                .tag(PluginCall.rest(ActionType.DEEP_AVAILABILITY, productId))
+                .post(jsonBody(deepAvailabilityRequest))
                 .build();
-        List<ProductAvailabilityWithRatesResponse> deepAvailabilityResponse =
-                sendHttpRequestAndParseResponseArray(httpClient, request, ProductAvailabilityWithRatesResponse.class);
-        deepAvailabilityResponse.forEach(response -> validateOrThrow(restToGrpc(response), responseValidator));
-        return deepAvailabilityResponse;
+    }
+
+    @Nonnull
+    private Consumer<ProductAvailabilityWithRatesResponse> validating(@Nonnull Consumer<? super ProductAvailabilityWithRatesResponse> availabilityConsumer) {
+        return response -> {
+            mapAndValidateOrThrow(ActionType.DEEP_AVAILABILITY, response, GrpcRestMapper::restToGrpc, responseValidator);
+            availabilityConsumer.accept(response);
+        };
     }
 }
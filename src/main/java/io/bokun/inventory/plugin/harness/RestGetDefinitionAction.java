@@ -1,15 +1,16 @@
 package io.bokun.inventory.plugin.harness;
 
+import java.util.concurrent.*;
+
 import javax.annotation.*;
 
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 
-import static io.bokun.inventory.util.GrpcRestMapper.*;
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.*;
 
 /**
  * Gets plugin definition and validates whether returned result is valid. Uses RESTful transport protocol.
@@ -27,12 +28,33 @@ public class RestGetDefinitionAction implements Action {
 
     @Nonnull
     public PluginDefinition getDefinition(PluginData pluginData) {
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
-                             .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/plugin/definition")
-                             .build();
-        PluginDefinition definition = sendHttpRequestAndParseResponse(httpClient, request, PluginDefinition.class);
-        validateOrThrow(restToGrpc(definition), pluginDefinitionValidator);
-        return definition;
+        return sendHttpRequestAndParseResponse(
+                getHttpClient(pluginData),
+                buildRequest(pluginData),
+                PluginDefinition.class,
+                definition -> validate(pluginData, definition)
+        );
+    }
+
+    @Nonnull
+    public CompletableFuture<PluginDefinition> getDefinitionAsync(PluginData pluginData) {
+        return sendHttpRequestAndParseResponseAsync(
+                getHttpClient(pluginData),
+                buildRequest(pluginData),
+                PluginDefinition.class,
+                definition -> validate(pluginData, definition)
+        );
+    }
+
+    @Nonnull
+    private static Request buildRequest(PluginData pluginData) {
+        return new Request.Builder()
+                .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/plugin/definition")
+                .tag(PluginCall.rest(ActionType.GET_DEFINITION))
+                .build();
+    }
+
+    private void validate(PluginData pluginData, PluginDefinition definition) {
+        mapAndValidateOrThrow(ActionType.GET_DEFINITION, definition, GrpcRestMapper::restToGrpc, pluginDefinitionValidator);
     }
 }
@@ -1,19 +1,18 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
-import com.google.gson.*;
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 import org.slf4j.*;
 
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.validateOrThrow;
-import static io.bokun.inventory.util.GrpcRestMapper.restToGrpc;
 
 /**
  * Searches for products on the remote API (before mapping is done). Uses RESTful API.
@@ -35,19 +34,36 @@ public class RestGetProductByIdAction implements Action {
     public ProductDescription getProductById(@Nonnull PluginData pluginData,
                                              @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
                                              String productId) {
+        Request request = buildRequest(pluginData, pluginConfiguration, productId);
+        return sendHttpRequestAndParseResponse(getHttpClient(pluginData), request, ProductDescription.class, this::validate);
+    }
+
+    @Nonnull
+    public CompletableFuture<ProductDescription> getProductByIdAsync(@Nonnull PluginData pluginData,
+                                                                     @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                                     String productId) {
+        Request request = buildRequest(pluginData, pluginConfiguration, productId);
+        return sendHttpRequestAndParseResponseAsync(getHttpClient(pluginData), request, ProductDescription.class, this::validate);
+    }
+
+    @Nonnull
+    private static Request buildRequest(@Nonnull PluginData pluginData,
+                                        @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                        String productId) {
         log.info("Searching for inventory products in plugin {}", pluginData.url);
 
         GetProductByIdRequest getByIdRequest = new GetProductByIdRequest();
         getByIdRequest.getParameters().addAll(pluginConfiguration);
         getByIdRequest.setExternalId(productId);
 
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/product/getById")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(getByIdRequest)))
+                .tag(PluginCall.rest(ActionType.GET_PRODUCT_BY_ID, productId))
+                .post(jsonBody(getByIdRequest))
                 .build();
-        ProductDescription product = sendHttpRequestAndParseResponse(httpClient, request, ProductDescription.class);
-        validateOrThrow(restToGrpc(product), productDescriptionValidator);
-        return product;
+    }
+
+    private void validate(ProductDescription product) {
+        mapAndValidateOrThrow(ActionType.GET_PRODUCT_BY_ID, product, GrpcRestMapper::restToGrpc, productDescriptionValidator);
     }
 }
@@ -2,7 +2,9 @@ package io.bokun.inventory.plugin.harness;
 
 import java.time.*;
 import java.util.*;
-import java.util.stream.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
 
 import com.google.common.collect.*;
 import com.google.inject.*;
@@ -18,7 +20,7 @@ import static java.lang.Math.*;
  *
  * @author Mindaugas Žakšauskas
  */
-public class RestHarness {
+public class RestHarness implements Harness {
 
     private static final Logger log = LoggerFactory.getLogger(RestHarness.class);
 
@@ -35,6 +37,11 @@ public class RestHarness {
 
     private final Random prng = new Random(System.nanoTime());
 
+    /**
+     * How many products to check shallow availability for when preparing the workload.
+     */
+    private static final int WORKLOAD_AVAILABILITY_SAMPLE = 30;
+
     @Inject
     public RestHarness(RestGetDefinitionAction restGetDefinitionAction,
                        RestConfigurePluginAction restConfigurePluginAction,
@@ -196,27 +203,54 @@ public class RestHarness {
         return bookingSource;
     }
 
-    public void runEndToEnd(Main.Configuration configuration) {
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    @Override
+    public FunnelResult runEndToEnd(@Nonnull Main.Configuration configuration) {
+        FunnelResult.Tracker funnel = new FunnelResult.Tracker();
+        try {
+            return runEndToEnd(configuration, funnel);
+        } catch (RuntimeException e) {
+            log.error("Funnel has failed", e);
+            return funnel.failed(e);
+        }
+    }
+
+    @Nonnull
+    private FunnelResult runEndToEnd(Main.Configuration configuration, FunnelResult.Tracker funnel) {
         // step 1: get and validate plugin definition
-        io.bokun.inventory.plugin.api.rest.PluginDefinition pluginDefinition = restGetDefinitionAction.getDefinition(configuration.pluginData);
+        io.bokun.inventory.plugin.api.rest.PluginDefinition pluginDefinition = funnel.step(
+                ActionType.GET_DEFINITION,
+                () -> restGetDefinitionAction.getDefinition(configuration.pluginData)
+        );
         log.info("Received definition for plugin {}", pluginDefinition.getName());
         log.debug("Definition: {}", pluginDefinition);
 
         // step 2: not really calling the plugin, but instead transforming environment variables into a list of plugin configuration parameters
-        Collection<PluginConfigurationParameterValue> pluginConfiguration =
-                restConfigurePluginAction.getPluginConfigurationParameterValues(pluginDefinition);
+        Collection<PluginConfigurationParameterValue> pluginConfiguration = funnel.prepare(
+                "plugin configuration",
+                () -> restConfigurePluginAction.getPluginConfigurationParameterValues(configuration.pluginData, pluginDefinition)
+        );
         log.info("Received definition for plugin {}", pluginDefinition.getName());
 
         // step 3: searching for all products this plugin may provide. Supply configuration values built in the previous step.
-        List<BasicProductInfo> basicProducts = restSearchProductsAction.search(configuration.pluginData, pluginConfiguration);
-        log.info("Received total of {} products", basicProducts.size());
+        // Only product ids are needed further on, so products are not kept around once validated.
+        List<String> allProductIds = new ArrayList<>();
+        int productCount = funnel.step(
+                ActionType.SEARCH_PRODUCTS,
+                () -> restSearchProductsAction.search(
+                        configuration.pluginData,
+                        pluginConfiguration,
+                        product -> allProductIds.add(product.getId())
+                )
+        );
+        log.info("Received total of {} products", productCount);
 
         // step 4: make a shallow call for availabilities on a small range of products until we find availability
         LocalDate today = LocalDate.now();
         LocalDate monthLater = today.plusMonths(1L);
-        List<String> allProductIds = basicProducts.stream()
-                .map(BasicProductInfo::getId)
-                .collect(Collectors.toList());
         Set<String> availableProducts;
         do {
             Collection<String> randomThree = new ArrayList<>();
@@ -227,29 +261,38 @@ public class RestHarness {
             }
             if (randomThree.isEmpty()) {
                 log.error("Could not find products to check availability for.");
-                return;
+                return funnel.failed(ActionType.SHALLOW_AVAILABILITY, "No available products");
             }
 
-            availableProducts = restShallowAvailabilityAction.getAvailableProducts(configuration.pluginData, pluginConfiguration, today, monthLater, 1, randomThree);
+            availableProducts = funnel.step(
+                    ActionType.SHALLOW_AVAILABILITY,
+                    () -> restShallowAvailabilityAction.getAvailableProducts(configuration.pluginData, pluginConfiguration, today, monthLater, 1, randomThree)
+            );
         } while (availableProducts.isEmpty());
         String randomAvailableProductId = Iterables.get(availableProducts, prng.nextInt(availableProducts.size()));
         log.info("Will inquiry and make bookings for product id={}", randomAvailableProductId);
 
         // step 5: call getProductById on selected random product which has availability over next month and verify/inspect it
-        ProductDescription product = restGetProductByIdAction.getProductById(configuration.pluginData, pluginConfiguration, randomAvailableProductId);
+        ProductDescription product = funnel.step(
+                ActionType.GET_PRODUCT_BY_ID,
+                () -> restGetProductByIdAction.getProductById(configuration.pluginData, pluginConfiguration, randomAvailableProductId)
+        );
         log.info("Inquiry for product {} was successful: {}", randomAvailableProductId, product);
 
         // step 6: make deep availability call and get some pricing info.
-        List<ProductAvailabilityWithRatesResponse> deepAvailability = restDeepAvailabilityAction.getAvailability(
-                configuration.pluginData,
-                pluginConfiguration,
-                today,
-                monthLater,
-                product.getId()
+        List<ProductAvailabilityWithRatesResponse> deepAvailability = funnel.step(
+                ActionType.DEEP_AVAILABILITY,
+                () -> restDeepAvailabilityAction.getAvailability(
+                        configuration.pluginData,
+                        pluginConfiguration,
+                        today,
+                        monthLater,
+                        product.getId()
+                )
         );
         if (deepAvailability.isEmpty()) {
             log.error("No deep availability found even though shallow availability result was positive");
-            return;
+            return funnel.failed(ActionType.DEEP_AVAILABILITY, "No deep availability");
         }
         log.info("Found availabilities for product {}: {}", randomAvailableProductId, deepAvailability);
 
@@ -260,14 +303,18 @@ public class RestHarness {
         ConfirmationData confirmationData = new ConfirmationData();
         confirmationData.setTicketSupport(getRandomElement(product.getTicketSupport()));
         ConfirmBookingResponse confirmBookingResponse;
+        ActionType confirmStep;
         if (pluginDefinition.getCapabilities().contains(RESERVATIONS)) {
             ReservationRequest reservationRequest = new ReservationRequest();
             reservationRequest.setReservationData(reservationData);
             reservationRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
-            ReservationResponse reservationResponse = restCreateReservationAction.createReservation(configuration.pluginData, reservationRequest);
+            ReservationResponse reservationResponse = funnel.step(
+                    ActionType.CREATE_RESERVATION,
+                    () -> restCreateReservationAction.createReservation(configuration.pluginData, reservationRequest)
+            );
             if (reservationResponse.getSuccessfulReservation() == null) {
                 log.error("Could not make successful reservation");
-                return;
+                return funnel.failed(ActionType.CREATE_RESERVATION, "Reservation not successful");
             }
             log.info("Successfully reserved booking {}", reservationResponse);
             ConfirmBookingRequest confirmBookingRequest = new ConfirmBookingRequest();
@@ -275,17 +322,25 @@ public class RestHarness {
             confirmBookingRequest.setReservationConfirmationCode(reservationResponse.getSuccessfulReservation().getReservationConfirmationCode());
             confirmBookingRequest.setReservationData(reservationData);
             confirmBookingRequest.setConfirmationData(confirmationData);
-            confirmBookingResponse = restConfirmBookingAction.confirmBooking(configuration.pluginData, confirmBookingRequest);
+            confirmStep = ActionType.CONFIRM_BOOKING;
+            confirmBookingResponse = funnel.step(
+                    ActionType.CONFIRM_BOOKING,
+                    () -> restConfirmBookingAction.confirmBooking(configuration.pluginData, confirmBookingRequest)
+            );
         } else {
             CreateConfirmBookingRequest createConfirmRequest = new CreateConfirmBookingRequest();
             createConfirmRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
             createConfirmRequest.setReservationData(reservationData);
             createConfirmRequest.setConfirmationData(confirmationData);
-            confirmBookingResponse = restCreateAndConfirmBookingAction.createAndConfirmBooking(configuration.pluginData, createConfirmRequest);
+            confirmStep = ActionType.CREATE_AND_CONFIRM_BOOKING;
+            confirmBookingResponse = funnel.step(
+                    ActionType.CREATE_AND_CONFIRM_BOOKING,
+                    () -> restCreateAndConfirmBookingAction.createAndConfirmBooking(configuration.pluginData, createConfirmRequest)
+            );
         }
         if (confirmBookingResponse.getSuccessfulBooking() == null) {
             log.error("Could not successfully confirm booking");
-            return;
+            return funnel.failed(confirmStep, "Booking not successful");
         }
         log.info("Successfully confirmed booking {}", confirmBookingResponse);
 
@@ -294,12 +349,393 @@ public class RestHarness {
         cancelBookingRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
         cancelBookingRequest.setBookingConfirmationCode(confirmBookingResponse.getSuccessfulBooking().getBookingConfirmationCode());
 
-        CancelBookingResponse cancelBookingResponse = restCancelBookingAction.cancelBooking(configuration.pluginData, cancelBookingRequest);
+        CancelBookingResponse cancelBookingResponse = funnel.step(
+                ActionType.CANCEL_BOOKING,
+                () -> restCancelBookingAction.cancelBooking(configuration.pluginData, cancelBookingRequest)
+        );
         if (cancelBookingResponse.getSuccessfulCancellation() == null) {
             log.error("Could not successfully cancel booking");
-            return;
+            return funnel.failed(ActionType.CANCEL_BOOKING, "Cancellation not successful");
         }
         log.info("Successfully cancelled booking {}", cancelBookingResponse);
         log.info("Exiting...");
+        return funnel.succeeded();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nonnull
+    @Override
+    public Workload prepareWorkload(@Nonnull Main.Configuration configuration) {
+        io.bokun.inventory.plugin.api.rest.PluginDefinition pluginDefinition = restGetDefinitionAction.getDefinition(configuration.pluginData);
+        Collection<PluginConfigurationParameterValue> pluginConfiguration =
+                restConfigurePluginAction.getPluginConfigurationParameterValues(configuration.pluginData, pluginDefinition);
+        List<String> allProductIds = new ArrayList<>();
+        restSearchProductsAction.search(
+                configuration.pluginData,
+                pluginConfiguration,
+                product -> allProductIds.add(product.getId())
+        );
+        if (allProductIds.isEmpty()) {
+            // every call would be made on a product picked out of these
+            throw new IllegalStateException("No products returned, can't prepare workload");
+        }
+
+        // deep availability is best called for products having some; fall back to all products if none found in the sample
+        LocalDate today = LocalDate.now();
+        LocalDate monthLater = today.plusMonths(1L);
+        List<String> sample = new ArrayList<>(allProductIds);
+        Collections.shuffle(sample, prng);
+        Set<String> availableProducts = restShallowAvailabilityAction.getAvailableProducts(
+                configuration.pluginData,
+                pluginConfiguration,
+                today,
+                monthLater,
+                1,
+                sample.subList(0, min(WORKLOAD_AVAILABILITY_SAMPLE, sample.size()))
+        );
+        log.info("Prepared workload of {} products, {} of them available", allProductIds.size(), availableProducts.size());
+
+        // bookings are all made for the same product, on the dates it is available
+        ProductDescription bookableProduct = null;
+        List<ProductAvailabilityWithRatesResponse> bookableAvailability = Collections.emptyList();
+        if (!availableProducts.isEmpty()) {
+            bookableProduct = restGetProductByIdAction.getProductById(
+                    configuration.pluginData,
+                    pluginConfiguration,
+                    getRandomElement(availableProducts)
+            );
+            bookableAvailability = restDeepAvailabilityAction.getAvailability(
+                    configuration.pluginData,
+                    pluginConfiguration,
+                    today,
+                    monthLater,
+                    bookableProduct.getId()
+            );
+        }
+        if (bookableAvailability.isEmpty()) {
+            log.warn("No bookable product found, workload will not make bookings");
+        }
+        return new RestWorkload(
+                configuration.pluginData,
+                pluginConfiguration,
+                pluginDefinition.getCapabilities().contains(RESERVATIONS),
+                allProductIds,
+                availableProducts.isEmpty() ? allProductIds : new ArrayList<>(availableProducts),
+                bookableProduct,
+                bookableAvailability,
+                false
+        );
+    }
+
+    /**
+     * Calls plugin actions on randomly picked products, over the next month. Reservations made are kept to be
+     * confirmed, and bookings made are kept to be cancelled by subsequent calls; if there are none, confirmation or
+     * cancellation is skipped rather than made on a reservation or booking made for it, which would be timed as part of
+     * it.
+     *
+     * <p>Bookings are made for the product found bookable when preparing the workload, on a random date it's available.
+     * Sessions instead follow a single product the way {@link #runEndToEnd(Main.Configuration)} does: the one picked
+     * out of shallow availability results is looked at, has its deep availability checked, and is booked on a date
+     * picked out of that. If there's no product to follow, session steps are skipped; if no date was found, booking
+     * is.</p>
+     */
+    private final class RestWorkload implements Workload {
+
+        private final PluginData pluginData;
+        private final Collection<PluginConfigurationParameterValue> pluginConfiguration;
+        private final boolean supportsReservations;
+        private final List<String> productIds;
+        private final List<String> availableProductIds;
+
+        @Nullable
+        private final ProductDescription bookableProduct;
+        private final List<ProductAvailabilityWithRatesResponse> bookableAvailability;
+
+        /**
+         * Whether this is a session, following a single product from availability to booking.
+         */
+        private final boolean session;
+
+        // picked by session steps, which complete on callback threads
+        @Nullable
+        private volatile String sessionProductId;
+        @Nullable
+        private volatile ProductDescription sessionProduct;
+        @Nullable
+        private volatile ProductAvailabilityWithRatesResponse sessionAvailability;
+
+        private final Set<ActionType> supportedActions;
+        private final Queue<ConfirmBookingRequest> pendingReservations = new ConcurrentLinkedQueue<>();
+        private final Queue<CancelBookingRequest> confirmedBookings = new ConcurrentLinkedQueue<>();
+
+        private RestWorkload(PluginData pluginData,
+                             Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                             boolean supportsReservations,
+                             List<String> productIds,
+                             List<String> availableProductIds,
+                             @Nullable ProductDescription bookableProduct,
+                             List<ProductAvailabilityWithRatesResponse> bookableAvailability,
+                             boolean session) {
+            this.pluginData = pluginData;
+            this.pluginConfiguration = pluginConfiguration;
+            this.supportsReservations = supportsReservations;
+            this.productIds = productIds;
+            this.availableProductIds = availableProductIds;
+            this.bookableProduct = bookableProduct;
+            this.bookableAvailability = bookableAvailability;
+            this.session = session;
+
+            Set<ActionType> supportedActions = EnumSet.of(
+                    ActionType.GET_DEFINITION,
+                    ActionType.SEARCH_PRODUCTS,
+                    ActionType.GET_PRODUCT_BY_ID,
+                    ActionType.SHALLOW_AVAILABILITY,
+                    ActionType.DEEP_AVAILABILITY
+            );
+            if (!bookableAvailability.isEmpty()) {
+                if (supportsReservations) {
+                    supportedActions.add(ActionType.CREATE_RESERVATION);
+                    supportedActions.add(ActionType.CONFIRM_BOOKING);
+                } else {
+                    supportedActions.add(ActionType.CREATE_AND_CONFIRM_BOOKING);
+                }
+                supportedActions.add(ActionType.CANCEL_BOOKING);
+            }
+            this.supportedActions = Sets.immutableEnumSet(supportedActions);
+        }
+
+        @Nonnull
+        @Override
+        public Set<ActionType> getSupportedActions() {
+            return supportedActions;
+        }
+
+        @Nullable
+        @Override
+        public CompletableFuture<?> start(@Nonnull ActionType actionType) {
+            if (!supportedActions.contains(actionType)) {
+                throw new UnsupportedOperationException("Workload does not support " + actionType);
+            }
+            LocalDate today = LocalDate.now();
+            switch (actionType) {
+                case GET_DEFINITION:
+                    return restGetDefinitionAction.getDefinitionAsync(pluginData);
+                case SEARCH_PRODUCTS:
+                    return restSearchProductsAction.searchAsync(pluginData, pluginConfiguration, product -> { });
+                case GET_PRODUCT_BY_ID:
+                    if (session) {
+                        String productId = sessionProductId;
+                        if (productId == null) {
+                            return null;
+                        }
+                        return restGetProductByIdAction.getProductByIdAsync(pluginData, pluginConfiguration, productId)
+                                .thenAccept(product -> sessionProduct = product);
+                    }
+                    return restGetProductByIdAction.getProductByIdAsync(pluginData, pluginConfiguration, getRandomElement(productIds));
+                case SHALLOW_AVAILABILITY: {
+                    CompletableFuture<Set<String>> availableProducts = restShallowAvailabilityAction.getAvailableProductsAsync(
+                            pluginData,
+                            pluginConfiguration,
+                            today,
+                            today.plusMonths(1L),
+                            1,
+                            ImmutableList.of(getRandomElement(productIds), getRandomElement(productIds), getRandomElement(productIds))
+                    );
+                    if (session) {
+                        return availableProducts.thenAccept(found -> sessionProductId = pickSessionProduct(found));
+                    }
+                    return availableProducts;
+                }
+                case DEEP_AVAILABILITY:
+                    if (session) {
+                        String productId = sessionProductId;
+                        if (productId == null) {
+                            return null;
+                        }
+                        return restDeepAvailabilityAction.getAvailabilityAsync(
+                                pluginData,
+                                pluginConfiguration,
+                                today,
+                                today.plusMonths(1L),
+                                productId
+                        ).thenAccept(availability -> sessionAvailability = availability.isEmpty() ? null : getRandomElement(availability));
+                    }
+                    return restDeepAvailabilityAction.getAvailabilityAsync(
+                            pluginData,
+                            pluginConfiguration,
+                            today,
+                            today.plusMonths(1L),
+                            getRandomElement(availableProductIds),
+                            availability -> { }
+                    );
+                case CREATE_RESERVATION: {
+                    ProductDescription product = getBookingProduct();
+                    ProductAvailabilityWithRatesResponse availability = getBookingAvailability();
+                    if ((product == null) || (availability == null)) {
+                        return null;
+                    }
+                    return reserve(product, availability)
+                            .thenAccept(pendingReservations::add);
+                }
+                case CONFIRM_BOOKING: {
+                    ConfirmBookingRequest pendingReservation = pendingReservations.poll();
+                    if (pendingReservation == null) {
+                        return null;
+                    }
+                    return confirm(pendingReservation)
+                            .thenAccept(confirmedBookings::add);
+                }
+                case CREATE_AND_CONFIRM_BOOKING: {
+                    ProductDescription product = getBookingProduct();
+                    ProductAvailabilityWithRatesResponse availability = getBookingAvailability();
+                    if ((product == null) || (availability == null)) {
+                        return null;
+                    }
+                    return createAndConfirm(product, availability)
+                            .thenAccept(confirmedBookings::add);
+                }
+                case CANCEL_BOOKING: {
+                    CancelBookingRequest confirmedBooking = confirmedBookings.poll();
+                    if (confirmedBooking == null) {
+                        return null;
+                    }
+                    return cancel(confirmedBooking);
+                }
+                default:
+                    throw new UnsupportedOperationException("Workload does not support " + actionType);
+            }
+        }
+
+        @Nonnull
+        @Override
+        public Workload newSession() {
+            return new RestWorkload(
+                    pluginData,
+                    pluginConfiguration,
+                    supportsReservations,
+                    productIds,
+                    availableProductIds,
+                    bookableProduct,
+                    bookableAvailability,
+                    true
+            );
+        }
+
+        @Override
+        public void cleanUp() {
+            int abandonedReservations = pendingReservations.size();
+            pendingReservations.clear();
+            if (abandonedReservations > 0) {
+                log.info("{} reservations left unconfirmed by workload, leaving them to expire", abandonedReservations);
+            }
+            List<CompletableFuture<?>> cancellations = new ArrayList<>();
+            for (CancelBookingRequest confirmedBooking; (confirmedBooking = confirmedBookings.poll()) != null; ) {
+                cancellations.add(cancel(confirmedBooking));
+            }
+            if (!cancellations.isEmpty()) {
+                log.info("Cancelling {} bookings left by workload", cancellations.size());
+                CompletableFuture.allOf(cancellations.toArray(new CompletableFuture[0]))
+                        .exceptionally(t -> null)
+                        .join();
+            }
+        }
+
+        /**
+         * @return product for the session to follow: one of those found available or, if none of the products checked
+         * is, one known to be, so that session goes on; {@code null} if there's no product to follow.
+         */
+        @Nullable
+        private String pickSessionProduct(Set<String> found) {
+            if (!found.isEmpty()) {
+                return getRandomElement(found);
+            }
+            return availableProductIds.isEmpty() ? null : getRandomElement(availableProductIds);
+        }
+
+        /**
+         * @return product to book, or {@code null} if session hasn't looked at one.
+         */
+        @Nullable
+        private ProductDescription getBookingProduct() {
+            return session ? sessionProduct : bookableProduct;
+        }
+
+        /**
+         * @return date and rates to book, or {@code null} if session has found none.
+         */
+        @Nullable
+        private ProductAvailabilityWithRatesResponse getBookingAvailability() {
+            return session ? sessionAvailability : getRandomElement(bookableAvailability);
+        }
+
+        /**
+         * @return request confirming the reservation made.
+         */
+        private CompletableFuture<ConfirmBookingRequest> reserve(ProductDescription product, ProductAvailabilityWithRatesResponse availability) {
+            ReservationData reservationData = prepareReservationData(product, availability);
+            ReservationRequest reservationRequest = new ReservationRequest();
+            reservationRequest.setReservationData(reservationData);
+            reservationRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
+            return restCreateReservationAction.createReservationAsync(pluginData, reservationRequest)
+                    .thenApply(reservationResponse -> {
+                        if (reservationResponse.getSuccessfulReservation() == null) {
+                            throw new IllegalStateException("Reservation not successful");
+                        }
+                        ConfirmBookingRequest confirmBookingRequest = new ConfirmBookingRequest();
+                        confirmBookingRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
+                        confirmBookingRequest.setReservationConfirmationCode(reservationResponse.getSuccessfulReservation().getReservationConfirmationCode());
+                        confirmBookingRequest.setReservationData(reservationData);
+                        confirmBookingRequest.setConfirmationData(prepareConfirmationData(product));
+                        return confirmBookingRequest;
+                    });
+        }
+
+        /**
+         * @return request cancelling the booking made.
+         */
+        private CompletableFuture<CancelBookingRequest> confirm(ConfirmBookingRequest confirmBookingRequest) {
+            return restConfirmBookingAction.confirmBookingAsync(pluginData, confirmBookingRequest)
+                    .thenApply(this::toCancelBookingRequest);
+        }
+
+        /**
+         * @return request cancelling the booking made.
+         */
+        private CompletableFuture<CancelBookingRequest> createAndConfirm(ProductDescription product, ProductAvailabilityWithRatesResponse availability) {
+            CreateConfirmBookingRequest createConfirmRequest = new CreateConfirmBookingRequest();
+            createConfirmRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
+            createConfirmRequest.setReservationData(prepareReservationData(product, availability));
+            createConfirmRequest.setConfirmationData(prepareConfirmationData(product));
+            return restCreateAndConfirmBookingAction.createAndConfirmBookingAsync(pluginData, createConfirmRequest)
+                    .thenApply(this::toCancelBookingRequest);
+        }
+
+        private CompletableFuture<CancelBookingResponse> cancel(CancelBookingRequest cancelBookingRequest) {
+            return restCancelBookingAction.cancelBookingAsync(pluginData, cancelBookingRequest)
+                    .thenApply(cancelBookingResponse -> {
+                        if (cancelBookingResponse.getSuccessfulCancellation() == null) {
+                            throw new IllegalStateException("Cancellation not successful");
+                        }
+                        return cancelBookingResponse;
+                    });
+        }
+
+        private ConfirmationData prepareConfirmationData(ProductDescription product) {
+            ConfirmationData confirmationData = new ConfirmationData();
+            confirmationData.setTicketSupport(getRandomElement(product.getTicketSupport()));
+            return confirmationData;
+        }
+
+        private CancelBookingRequest toCancelBookingRequest(ConfirmBookingResponse confirmBookingResponse) {
+            if (confirmBookingResponse.getSuccessfulBooking() == null) {
+                throw new IllegalStateException("Booking not successful");
+            }
+            CancelBookingRequest cancelBookingRequest = new CancelBookingRequest();
+            cancelBookingRequest.setParameters(ImmutableList.copyOf(pluginConfiguration));
+            cancelBookingRequest.setBookingConfirmationCode(confirmBookingResponse.getSuccessfulBooking().getBookingConfirmationCode());
+            return cancelBookingRequest;
+        }
     }
 }
@@ -0,0 +1,134 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import org.slf4j.*;
+
+/**
+ * Splits time spent on RESTful plugin calls into phases, per action type, to tell time plugin takes to respond from
+ * time harness itself takes to encode, decode and check what is sent and received. Only totals are kept: phases of a
+ * single call may be measured on different threads and, when responses are streamed, interleave with one another.
+ * Safe to use from any thread.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class RestPhaseStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(RestPhaseStatistics.class);
+
+    /**
+     * Part of a call time is spent on.
+     */
+    public enum Phase {
+
+        /**
+         * Encoding request body as JSON. Body is encoded straight onto the connection, so this includes compressing
+         * it and, for bodies larger than a socket buffer, writing it out.
+         */
+        SERIALIZE,
+
+        /**
+         * Waiting for plugin to respond and reading response body off the connection. For asynchronous calls, this
+         * also includes waiting for a free slot in HTTP client's dispatcher.
+         */
+        NETWORK,
+
+        /**
+         * Decoding JSON response body.
+         */
+        PARSE,
+
+        /**
+         * Mapping decoded response to its gRPC counterpart, which validators work on.
+         */
+        MAP,
+
+        /**
+         * Validating mapped response.
+         */
+        VALIDATE
+    }
+
+    /**
+     * Time spent on each phase and number of calls of a single action type.
+     */
+    private static final class Phases {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+
+        private Phases() {
+            Arrays.setAll(nanos, i -> new LongAdder());
+        }
+    }
+
+    private static final ConcurrentMap<ActionType, Phases> phases = new ConcurrentHashMap<>();
+
+    private RestPhaseStatistics() {
+    }
+
+    private static Phases of(ActionType actionType) {
+        return phases.computeIfAbsent(actionType, a -> new Phases());
+    }
+
+    /**
+     * Adds given time to the phase of given action type. Time may be negative, to move it out of a phase it was
+     * counted in as part of a longer measurement.
+     */
+    public static void add(@Nonnull ActionType actionType, @Nonnull Phase phase, long nanos) {
+        of(actionType).nanos[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * Counts a call of given action type.
+     */
+    public static void countCall(@Nonnull ActionType actionType) {
+        of(actionType).calls.increment();
+    }
+
+    /**
+     * @return total time spent on given phase of given action type so far, in nanoseconds.
+     */
+    public static long getNanos(@Nonnull ActionType actionType, @Nonnull Phase phase) {
+        Phases actionPhases = phases.get(actionType);
+        return (actionPhases == null) ? 0L : actionPhases.nanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Logs mean time per call spent on each phase of every action called so far, along with the share of it spent by
+     * the harness rather than waiting for plugin.
+     */
+    public static void logSummary() {
+        for (ActionType actionType : ActionType.values()) {
+            Phases actionPhases = phases.get(actionType);
+            long calls = (actionPhases == null) ? 0L : actionPhases.calls.sum();
+            if (calls == 0L) {
+                continue;
+            }
+            long total = 0L;
+            for (Phase phase : Phase.values()) {
+                total += getNanos(actionType, phase);
+            }
+            long network = getNanos(actionType, Phase.NETWORK);
+            log.info(
+                    "{}: {} calls, ms per call serialize={} network={} parse={} map={} validate={}, harness {}%",
+                    actionType.methodName,
+                    calls,
+                    toMillisPerCall(getNanos(actionType, Phase.SERIALIZE), calls),
+                    toMillisPerCall(network, calls),
+                    toMillisPerCall(getNanos(actionType, Phase.PARSE), calls),
+                    toMillisPerCall(getNanos(actionType, Phase.MAP), calls),
+                    toMillisPerCall(getNanos(actionType, Phase.VALIDATE), calls),
+                    String.format("%.1f", (total > 0L) ? (total - network) * 100.0d / total : 0.0d)
+            );
+        }
+    }
+
+    private static String toMillisPerCall(long nanos, long calls) {
+        return String.format("%.3f", nanos / 1_000_000.0d / calls);
+    }
+}
@@ -1,19 +1,20 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import javax.annotation.*;
 
-import com.google.gson.*;
+import com.google.common.collect.*;
 import com.google.inject.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 import io.bokun.inventory.plugin.harness.validation.*;
+import io.bokun.inventory.util.GrpcRestMapper;
 import org.slf4j.*;
 
-import static com.google.common.collect.Collections2.*;
 import static io.bokun.inventory.plugin.harness.RestUtil.*;
-import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.*;
 
 /**
  * Searches for products on the remote API (before mapping is done).
@@ -33,24 +34,72 @@ public class RestSearchProductsAction implements Action {
 
     public List<BasicProductInfo> search(@Nonnull PluginData pluginData,
                                          @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration) {
+        ImmutableList.Builder<BasicProductInfo> products = ImmutableList.builder();
+        search(pluginData, pluginConfiguration, products::add);
+        return products.build();
+    }
+
+    /**
+     * Same as {@link #search(PluginData, Collection)}, but streams the products: each of them is validated and passed to
+     * the consumer as soon as it is decoded, so the caller doesn't have to keep all of them in memory.
+     *
+     * @return number of products returned by plugin.
+     */
+    public int search(@Nonnull PluginData pluginData,
+                      @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                      @Nonnull Consumer<? super BasicProductInfo> productConsumer) {
+        return sendHttpRequestAndStreamResponseArray(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, pluginConfiguration),
+                BasicProductInfo.class,
+                validating(productConsumer)
+        );
+    }
+
+    @Nonnull
+    public CompletableFuture<List<BasicProductInfo>> searchAsync(@Nonnull PluginData pluginData,
+                                                                 @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration) {
+        ImmutableList.Builder<BasicProductInfo> products = ImmutableList.builder();
+        return searchAsync(pluginData, pluginConfiguration, products::add)
+                .thenApply(count -> products.build());
+    }
+
+    /**
+     * Asynchronous version of {@link #search(PluginData, Collection, Consumer)}; products are passed to the consumer on
+     * HTTP client's dispatcher thread.
+     */
+    @Nonnull
+    public CompletableFuture<Integer> searchAsync(@Nonnull PluginData pluginData,
+                                                  @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                  @Nonnull Consumer<? super BasicProductInfo> productConsumer) {
+        return sendHttpRequestAndStreamResponseArrayAsync(
+                getHttpClient(pluginData),
+                buildRequest(pluginData, pluginConfiguration),
+                BasicProductInfo.class,
+                validating(productConsumer)
+        );
+    }
+
+    @Nonnull
+    private static Request buildRequest(@Nonnull PluginData pluginData,
+                                        @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration) {
         log.info("Searching for inventory products in plugin {}", pluginData.url);
 
         SearchProductRequest pluginSearchRequest = new SearchProductRequest();
         pluginSearchRequest.getParameters().addAll(pluginConfiguration);
 
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/product/search")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(pluginSearchRequest)))
+                .tag(PluginCall.rest(ActionType.SEARCH_PRODUCTS))
+                .post(jsonBody(pluginSearchRequest))
                 .build();
-        List<BasicProductInfo> products = sendHttpRequestAndParseResponseArray(httpClient, request, BasicProductInfo.class);
-        validateOrThrow(
-                transform(
-                        products,
-                        io.bokun.inventory.util.GrpcRestMapper::restToGrpc
-                ),
-                basicProductInfoValidator
-        );
-        return products;
+    }
+
+    @Nonnull
+    private Consumer<BasicProductInfo> validating(@Nonnull Consumer<? super BasicProductInfo> productConsumer) {
+        return product -> {
+            mapAndValidateOrThrow(ActionType.SEARCH_PRODUCTS, product, GrpcRestMapper::restToGrpc, basicProductInfoValidator);
+            productConsumer.accept(product);
+        };
     }
 }
@@ -2,12 +2,12 @@ package io.bokun.inventory.plugin.harness;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 
 import javax.annotation.*;
 
 import com.google.common.collect.*;
-import com.google.gson.*;
 import com.squareup.okhttp.*;
 import io.bokun.inventory.plugin.api.rest.*;
 
@@ -35,7 +35,31 @@ public class RestShallowAvailabilityAction implements Action {
                                             LocalDate to,
                                             int requiredCapacity,
                                             Iterable<String> productIds) {
+        Request request = buildRequest(pluginData, pluginConfiguration, from, to, requiredCapacity, productIds);
+        List<ProductsAvailabilityResponse> shallowAvailabilityResponse =
+                sendHttpRequestAndParseResponseArray(getHttpClient(pluginData), request, ProductsAvailabilityResponse.class);
+        return toProductIds(shallowAvailabilityResponse);
+    }
+
+    @Nonnull
+    public CompletableFuture<Set<String>> getAvailableProductsAsync(@Nonnull PluginData pluginData,
+                                                                    @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                                                    LocalDate from,
+                                                                    LocalDate to,
+                                                                    int requiredCapacity,
+                                                                    Iterable<String> productIds) {
+        Request request = buildRequest(pluginData, pluginConfiguration, from, to, requiredCapacity, productIds);
+        return sendHttpRequestAndParseResponseArrayAsync(getHttpClient(pluginData), request, ProductsAvailabilityResponse.class)
+                .thenApply(RestShallowAvailabilityAction::toProductIds);
+    }
 
+    @Nonnull
+    private static Request buildRequest(@Nonnull PluginData pluginData,
+                                        @Nonnull Collection<PluginConfigurationParameterValue> pluginConfiguration,
+                                        LocalDate from,
+                                        LocalDate to,
+                                        int requiredCapacity,
+                                        Iterable<String> productIds) {
         ProductsAvailabilityRequest shallowAvailabilityRequest = new ProductsAvailabilityRequest();
         shallowAvailabilityRequest.setParameters(new ArrayList<>(pluginConfiguration));
         DatePeriod range = new DatePeriod();
@@ -45,14 +69,15 @@ public class RestShallowAvailabilityAction implements Action {
         shallowAvailabilityRequest.setRequiredCapacity((long) requiredCapacity);
         shallowAvailabilityRequest.setExternalProductIds(ImmutableList.copyOf(productIds));
 
-        OkHttpClient httpClient = getHttpClient(pluginData);
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url((pluginData.tls ? "https://" : "http://") + pluginData.url + "/product/getAvailable")
-                .post(RequestBody.create(APPLICATION_JSON, new Gson().toJson(shallowAvailabilityRequest)))
+                .tag(PluginCall.rest(ActionType.SHALLOW_AVAILABILITY))
+                .post(jsonBody(shallowAvailabilityRequest))
                 .build();
-        List<ProductsAvailabilityResponse> shallowAvailabilityResponse =
-                sendHttpRequestAndParseResponseArray(httpClient, request, ProductsAvailabilityResponse.class);
+    }
 
+    @Nonnull
+    private static Set<String> toProductIds(List<ProductsAvailabilityResponse> shallowAvailabilityResponse) {
         return shallowAvailabilityResponse.stream()
                 .map(ProductsAvailabilityResponse::getProductId)
                 .collect(Collectors.toSet());
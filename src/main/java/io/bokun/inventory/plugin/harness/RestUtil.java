@@ -1,19 +1,31 @@
 package io.bokun.inventory.plugin.harness;
 
 import java.io.*;
-import java.lang.reflect.*;
 import java.net.Proxy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import javax.annotation.*;
 
 import com.google.common.collect.*;
 import com.google.gson.*;
+import com.google.gson.stream.*;
 import com.squareup.okhttp.Authenticator;
 import com.squareup.okhttp.*;
+import io.bokun.inventory.plugin.api.rest.BasicProductInfo;
+import io.bokun.inventory.plugin.api.rest.ProductAvailabilityWithRatesResponse;
+import io.bokun.inventory.plugin.api.rest.ProductDescription;
+import io.bokun.inventory.plugin.api.rest.RateWithPrice;
+import io.bokun.inventory.plugin.api.rest.ReservationData;
+import io.bokun.inventory.plugin.harness.validation.*;
 import okio.*;
 import org.slf4j.*;
 
-import static com.google.common.base.Strings.*;
-import static io.bokun.inventory.plugin.harness.CustomTrust.*;
+import static io.bokun.inventory.plugin.harness.RestPhaseStatistics.Phase.*;
+import static io.bokun.inventory.plugin.harness.validation.ValidationUtils.*;
+import static java.nio.charset.StandardCharsets.*;
+
 
 /**
  * Various utilities pertaining to RESTful transport layer.
@@ -26,6 +38,36 @@ public class RestUtil {
 
     public static final MediaType APPLICATION_JSON = MediaType.parse("application/json; charset=utf-8");
 
+    /**
+     * Shared by all REST calls. Gson builds a reflective type adapter the first time it sees a type and caches it per
+     * instance, so creating a new {@link Gson} per call used to re-introspect all the models every time.
+     */
+    public static final Gson GSON = new Gson();
+
+    static {
+        // resolve adapters for the largest and most frequently (de)serialized models upfront rather than on the first call
+        ImmutableList.of(
+                ProductAvailabilityWithRatesResponse.class,
+                RateWithPrice.class,
+                ProductDescription.class,
+                BasicProductInfo.class,
+                ReservationData.class
+        ).forEach(GSON::getAdapter);
+    }
+
+    /**
+     * At most this many bytes of request body are logged, the rest is cut off.
+     */
+    private static final long MAX_LOGGED_BODY_BYTES = 4096L;
+
+    private static volatile RestClientRegistry clientRegistry = new RestClientRegistry(
+            Main.Configuration.DEFAULT_REST_MAX_IDLE_CONNECTIONS,
+            Main.Configuration.DEFAULT_REST_KEEP_ALIVE_DURATION_S,
+            Main.Configuration.DEFAULT_REST_MAX_REQUESTS,
+            Main.Configuration.DEFAULT_REST_MAX_REQUESTS_PER_HOST,
+            Main.Configuration.DEFAULT_REST_GZIP_REQUESTS
+    );
+
     public static Authenticator getRestHttpAuthenticator(String username, String password) {
         return new Authenticator() {
             @Override
@@ -47,25 +89,99 @@ public class RestUtil {
 
     public static <T> T parseJson(String json, Class<T> clazz) {
         try {
-            return new Gson().fromJson(json, clazz);
+            return GSON.fromJson(json, clazz);
         } catch (JsonSyntaxException jse) {
             throw new RuntimeException(jse);
         }
     }
 
     public static <T> T sendHttpRequestAndParseResponse(OkHttpClient httpClient, Request request, Class<T> clazz) {
-        try {
-            String uri = request.uri().toString();
-            Response response = httpClient.newCall(request).execute();
-            if (!response.isSuccessful()) {
-                log.error("{} has returned {}. Body: ", uri, response.code(), response.body());
-                throw new IllegalStateException();
+        return sendHttpRequestAndParseResponse(httpClient, request, clazz, response -> {});
+    }
+
+    /**
+     * Same as {@link #sendHttpRequestAndParseResponse(OkHttpClient, Request, Class)}, but checks decoded response before
+     * outcome of the call is recorded, hence a response which doesn't pass the check is recorded as
+     * {@link CallOutcome#ERROR}, same as elements of streamed responses rejected by their consumer.
+     *
+     * @param check throws if response isn't valid.
+     */
+    public static <T> T sendHttpRequestAndParseResponse(OkHttpClient httpClient, Request request, Class<T> clazz, Consumer<? super T> check) {
+        return execute(httpClient, request, objectReader(clazz, notParsing(request, check)));
+    }
+
+    /**
+     * Same as {@link #sendHttpRequestAndParseResponse(OkHttpClient, Request, Class, Consumer)}, but doesn't block: the
+     * request is enqueued to the client's dispatcher and the response is decoded and checked on one of its threads.
+     *
+     * @return future completed with decoded response, or exceptionally if the call fails, response can't be decoded or
+     * doesn't pass the check.
+     */
+    public static <T> CompletableFuture<T> sendHttpRequestAndParseResponseAsync(OkHttpClient httpClient,
+                                                                              Request request,
+                                                                              Class<T> clazz,
+                                                                              Consumer<? super T> check) {
+        return enqueue(httpClient, request, objectReader(clazz, notParsing(request, check)));
+    }
+
+    /**
+     * Creates JSON request body which is serialized straight into the request stream when the request is sent, rather
+     * than built as a string upfront. Body is serialized anew every time it's written, e.g. on retries.
+     *
+     * @param value object to serialize using the shared {@link Gson} instance.
+     * @return request body of unknown length, hence sent using chunked transfer encoding.
+     */
+    public static RequestBody jsonBody(Object value) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return APPLICATION_JSON;
             }
-            String bodyString = response.body().string();
-            return parseJson(bodyString, clazz);
-        } catch (IOException ioe) {
-            log.error("Could not call request {}", request, ioe);
-            throw new IllegalStateException();
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                try {
+                    GSON.toJson(value, value.getClass(), GSON.newJsonWriter(new SinkWriter(sink)));
+                } catch (JsonIOException jioe) {
+                    throw new IOException(jioe);
+                }
+            }
+        };
+    }
+
+    /**
+     * Encodes characters as UTF-8 straight into the sink's own buffer. Unlike {@link OutputStreamWriter}, doesn't
+     * allocate an intermediate buffer of its own. Never flushes nor closes the sink, which belongs to the caller.
+     */
+    private static final class SinkWriter extends Writer {
+
+        private final BufferedSink sink;
+
+        SinkWriter(BufferedSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            sink.writeUtf8CodePoint(c);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            sink.writeUtf8(str, off, off + len);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            sink.writeUtf8(new String(cbuf, off, len));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
         }
     }
 
@@ -75,41 +191,454 @@ public class RestUtil {
         }
         Buffer buffer = new Buffer();
         requestBody.writeTo(buffer);
-        return buffer.readUtf8();
+        long size = buffer.size();
+        if (size <= MAX_LOGGED_BODY_BYTES) {
+            return buffer.readUtf8();
+        }
+        return buffer.readUtf8(MAX_LOGGED_BODY_BYTES) + "... (" + size + " bytes in total)";
     }
 
-    @SuppressWarnings("unchecked")
     public static <T> List<T> sendHttpRequestAndParseResponseArray(OkHttpClient httpClient, Request request, Class<T> clazz) {
+        ImmutableList.Builder<T> result = ImmutableList.builder();
+        sendHttpRequestAndStreamResponseArray(httpClient, request, clazz, result::add);
+        return result.build();
+    }
+
+    /**
+     * Sends the request and decodes JSON array in the response incrementally, straight from the response stream. Each
+     * element is handed over to the consumer as soon as it is parsed, so neither the whole body nor all the elements
+     * need to be kept in memory at once.
+     *
+     * @param httpClient client to send the request with.
+     * @param request request expected to return a JSON array.
+     * @param clazz type of array elements.
+     * @param elementConsumer receives array elements one by one, in the order they appear in the response.
+     * @return number of elements received.
+     */
+    public static <T> int sendHttpRequestAndStreamResponseArray(OkHttpClient httpClient,
+                                                                Request request,
+                                                                Class<T> clazz,
+                                                                Consumer<? super T> elementConsumer) {
         try {
-            String uri = request.uri().toString();
-            log.debug("→ {} / body: {}", uri, requestBodyToString(request.body()));
-            Response response = httpClient.newCall(request).execute();
+            logRequest(request);
+        } catch (IOException ioe) {
+            log.error("Could not call request {}", request, ioe);
+            throw new IllegalStateException();
+        }
+        return execute(httpClient, request, arrayReader(clazz, notParsing(request, elementConsumer)));
+    }
+
+    /**
+     * Asynchronous version of {@link #sendHttpRequestAndParseResponseArray(OkHttpClient, Request, Class)}.
+     */
+    public static <T> CompletableFuture<List<T>> sendHttpRequestAndParseResponseArrayAsync(OkHttpClient httpClient,
+                                                                                         Request request,
+                                                                                         Class<T> clazz) {
+        ImmutableList.Builder<T> result = ImmutableList.builder();
+        return sendHttpRequestAndStreamResponseArrayAsync(httpClient, request, clazz, result::add)
+                .thenApply(count -> result.build());
+    }
+
+    /**
+     * Asynchronous version of {@link #sendHttpRequestAndStreamResponseArray(OkHttpClient, Request, Class, Consumer)}.
+     * Elements are handed over to the consumer on a dispatcher thread of the client.
+     *
+     * @return future completed with the number of elements received.
+     */
+    public static <T> CompletableFuture<Integer> sendHttpRequestAndStreamResponseArrayAsync(OkHttpClient httpClient,
+                                                                                          Request request,
+                                                                                          Class<T> clazz,
+                                                                                          Consumer<? super T> elementConsumer) {
+        try {
+            logRequest(request);
+        } catch (IOException ioe) {
+            log.error("Could not call request {}", request, ioe);
+            CompletableFuture<Integer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException(ioe));
+            return failed;
+        }
+        return enqueue(httpClient, request, arrayReader(clazz, notParsing(request, elementConsumer)));
+    }
+
+    /**
+     * Decodes successful response body; shared by blocking and non-blocking calls.
+     */
+    @FunctionalInterface
+    private interface ResponseBodyReader<T> {
+
+        T read(String uri, ResponseBody body) throws IOException;
+
+        /**
+         * Tells how many elements given decoded response consists of.
+         */
+        default int elements(T value) {
+            return 1;
+        }
+    }
+
+    /**
+     * Decodes response body as a single JSON object. Unlike {@link Gson#fromJson(String, Class)}, empty body or JSON
+     * <tt>null</tt> fail the call, as there's no response to check then.
+     */
+    private static <T> ResponseBodyReader<T> objectReader(Class<T> clazz, Consumer<? super T> check) {
+        return (uri, body) -> {
+            JsonReader reader = newJsonReader(body.source());
+            T value = GSON.fromJson(reader, clazz);
+            if (value == null) {
+                throw new JsonSyntaxException("Response body is empty or null, expected " + clazz.getSimpleName());
+            }
+            assertFullyConsumed(reader);
+            check.accept(value);
+            return value;
+        };
+    }
+
+    private static <T> ResponseBodyReader<Integer> arrayReader(Class<T> clazz, Consumer<? super T> elementConsumer) {
+        return new ResponseBodyReader<Integer>() {
+            @Override
+            public Integer read(String uri, ResponseBody body) throws IOException {
+                int count = readJsonArray(body.source(), clazz, elementConsumer);
+                log.debug("← {} / elements: {}", uri, count);
+                return count;
+            }
+
+            @Override
+            public int elements(Integer count) {
+                return count;
+            }
+        };
+    }
+
+    private static void logRequest(Request request) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("→ {} / body: {}", request.uri(), requestBodyToString(request.body()));
+        }
+    }
+
+    private static <T> T readResponse(Request request, Response response, ResponseBodyReader<T> reader) throws IOException {
+        String uri = request.uri().toString();
+        try (ResponseBody body = response.body()) {
             if (!response.isSuccessful()) {
-                log.error("{} has returned {}. Body: ", uri, response.code(), response.body());
+                log.error("{} has returned {}. Body: ", uri, response.code(), body);
                 throw new IllegalStateException();
             }
-            String bodyString = response.body().string();
-            log.debug("← {} / code: {}, body: {}", uri, response.code(), bodyString);
-            Object arr = parseJson(bodyString, Array.newInstance(clazz, 0).getClass());
-            if (!arr.getClass().isArray()) {
-                throw new IllegalStateException();
+            log.debug("← {} / code: {}", uri, response.code());
+            ActionType actionType = getTaggedActionType(request);
+            if (actionType == null) {
+                return reader.read(uri, body);
+            }
+            long start = System.nanoTime();
+            try {
+                return reader.read(uri, networkTimed(body, actionType));
+            } finally {
+                RestPhaseStatistics.add(actionType, PARSE, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return action type to time phases of given request's call by, or {@code null} if request isn't tagged with one.
+     */
+    @Nullable
+    private static ActionType getTaggedActionType(Request request) {
+        return (request.tag() instanceof PluginCall) ? ((PluginCall) request.tag()).actionType : null;
+    }
+
+    /**
+     * Times writing of given request body into {@link RestPhaseStatistics.Phase#SERIALIZE}. Body is written while the
+     * call waits for network, hence the same time is taken out of {@link RestPhaseStatistics.Phase#NETWORK}.
+     */
+    private static RequestBody serializationTimed(RequestBody body, ActionType actionType) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                return body.contentLength();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                ResourceStatistics.begin();
+                long start = System.nanoTime();
+                try {
+                    body.writeTo(sink);
+                } finally {
+                    long nanos = System.nanoTime() - start;
+                    RestPhaseStatistics.add(actionType, SERIALIZE, nanos);
+                    RestPhaseStatistics.add(actionType, NETWORK, -nanos);
+                    ResourceStatistics.end(actionType);
+                }
+            }
+        };
+    }
+
+    /**
+     * Times reading of given response body off the connection into {@link RestPhaseStatistics.Phase#NETWORK}. Body is
+     * read while it's being parsed, hence the same time is taken out of {@link RestPhaseStatistics.Phase#PARSE}.
+     */
+    private static ResponseBody networkTimed(ResponseBody body, ActionType actionType) throws IOException {
+        BufferedSource timedSource = Okio.buffer(new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read(sink, byteCount);
+                } finally {
+                    long nanos = System.nanoTime() - start;
+                    RestPhaseStatistics.add(actionType, NETWORK, nanos);
+                    RestPhaseStatistics.add(actionType, PARSE, -nanos);
+                }
+            }
+        });
+        return ResponseBody.create(body.contentType(), body.contentLength(), timedSource);
+    }
+
+    /**
+     * Takes time spent by given consumer of streamed elements, or of decoded response, out of
+     * {@link RestPhaseStatistics.Phase#PARSE}; consumers map and validate what they receive, which is timed on its own.
+     */
+    private static <T> Consumer<T> notParsing(Request request, Consumer<? super T> elementConsumer) {
+        ActionType actionType = getTaggedActionType(request);
+        if (actionType == null) {
+            return elementConsumer::accept;
+        }
+        return element -> {
+            long start = System.nanoTime();
+            try {
+                elementConsumer.accept(element);
+            } finally {
+                RestPhaseStatistics.add(actionType, PARSE, start - System.nanoTime());
             }
-            return ImmutableList.copyOf((T[]) arr);
+        };
+    }
+
+    /**
+     * Maps RESTful response to its gRPC counterpart and validates it, timing both phases of given action type in
+     * {@link RestPhaseStatistics} and accounting resources used in {@link ResourceStatistics}.
+     *
+     * @throws IllegalStateException if response is invalid.
+     */
+    public static <R, G> void mapAndValidateOrThrow(@Nonnull ActionType actionType,
+                                                    @Nonnull R response,
+                                                    @Nonnull Function<? super R, ? extends G> mapper,
+                                                    @Nonnull Validator<G> validator) {
+        ResourceStatistics.begin();
+        try {
+            long start = System.nanoTime();
+            G mapped = mapper.apply(response);
+            long mappedAt = System.nanoTime();
+            RestPhaseStatistics.add(actionType, MAP, mappedAt - start);
+            try {
+                validateOrThrow(mapped, validator);
+            } finally {
+                RestPhaseStatistics.add(actionType, VALIDATE, System.nanoTime() - mappedAt);
+            }
+        } finally {
+            ResourceStatistics.end(actionType);
+        }
+    }
+
+    /**
+     * Starts timing the call of given request, if it's tagged with {@link PluginCall}.
+     *
+     * @return request to send: the same one, only with its body timed if call is timed.
+     */
+    private static Request beginCall(Request request) {
+        if (!(request.tag() instanceof PluginCall)) {
+            return request;
+        }
+        PluginCall pluginCall = (PluginCall) request.tag();
+        Request timedRequest = (request.body() == null)
+                ? request
+                : request.newBuilder().method(request.method(), serializationTimed(request.body(), pluginCall.actionType)).build();
+        ResourceStatistics.countCall(pluginCall.actionType);
+        pluginCall.begin();
+        return timedRequest;
+    }
+
+    /**
+     * Counts the call of given request in {@link RestPhaseStatistics}, adding time since given start to
+     * {@link RestPhaseStatistics.Phase#NETWORK}; to be called once the call has received response headers or failed.
+     */
+    private static void addNetworkTime(Request request, long start) {
+        ActionType actionType = getTaggedActionType(request);
+        if (actionType != null) {
+            RestPhaseStatistics.countCall(actionType);
+            RestPhaseStatistics.add(actionType, NETWORK, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Ends the call of given request, recording its outcome in {@link PluginMetrics} and, if it has succeeded, its
+     * latency in {@link LatencyStatistics}. Only calls of requests tagged with {@link PluginCall} are recorded.
+     *
+     * @param failure what the call has failed with, or {@code null} if it has succeeded.
+     * @param elements number of elements received.
+     */
+    private static void recordCall(Request request, @Nullable Throwable failure, int elements) {
+        if (!(request.tag() instanceof PluginCall)) {
+            return;
+        }
+        PluginCall pluginCall = (PluginCall) request.tag();
+        CallOutcome outcome;
+        if (failure == null) {
+            outcome = CallOutcome.SUCCESS;
+        } else {
+            outcome = (failure instanceof InterruptedIOException) ? CallOutcome.TIMEOUT : CallOutcome.ERROR;
+        }
+        HttpUrl url = request.httpUrl();
+        String plugin = url.host() + ":" + url.port();
+        long nanos = pluginCall.end(plugin, outcome, elements);
+        if (outcome == CallOutcome.SUCCESS) {
+            LatencyStatistics.record(PluginData.Transport.REST, pluginCall.actionType, nanos);
+        }
+        PluginMetrics.recordCall(PluginData.Transport.REST, plugin, pluginCall.actionType, outcome, nanos);
+    }
+
+    private static <T> T execute(OkHttpClient httpClient, Request request, ResponseBodyReader<T> reader) {
+        ResourceStatistics.begin();
+        try {
+            Request timedRequest = beginCall(request);
+            T result = readResponse(request, send(httpClient, timedRequest), reader);
+            recordCall(request, null, reader.elements(result));
+            return result;
+        } catch (JsonParseException jpe) {
+            recordCall(request, jpe, 0);
+            throw new RuntimeException(jpe);
         } catch (IOException ioe) {
+            recordCall(request, ioe, 0);
             log.error("Could not call request {}", request, ioe);
             throw new IllegalStateException();
+        } catch (RuntimeException e) {
+            recordCall(request, e, 0);
+            throw e;
+        } finally {
+            ResourceStatistics.end(getTaggedActionType(request));
         }
     }
 
-    public static OkHttpClient getHttpClient(PluginData pluginData) {
-        OkHttpClient httpClient = new OkHttpClient();
-        if (!nullToEmpty(pluginData.restBasicAuthUsername).isEmpty()) {
-            httpClient.setAuthenticator(getRestHttpAuthenticator(pluginData.restBasicAuthUsername, pluginData.restBasicAuthPassword));
+    private static Response send(OkHttpClient httpClient, Request request) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return httpClient.newCall(request).execute();
+        } finally {
+            addNetworkTime(request, start);
         }
-        if (pluginData.tls) {
-            assert pluginData.cert != null;
-            acceptSelfSignedCertificate(httpClient, pluginData.cert);
+    }
+
+    private static <T> CompletableFuture<T> enqueue(OkHttpClient httpClient, Request request, ResponseBodyReader<T> reader) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Request timedRequest = beginCall(request);
+        long start = System.nanoTime();
+        httpClient.newCall(timedRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request failedRequest, IOException ioe) {
+                addNetworkTime(request, start);
+                recordCall(request, ioe, 0);
+                log.error("Could not call request {}", request, ioe);
+                result.completeExceptionally(new IllegalStateException(ioe));
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                addNetworkTime(request, start);
+                ResourceStatistics.begin();
+                try {
+                    result.complete(readAndRecordResponse(request, response, reader));
+                } catch (IOException ioe) {
+                    log.error("Could not read response of {}", request, ioe);
+                    result.completeExceptionally(new IllegalStateException(ioe));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    ResourceStatistics.end(getTaggedActionType(request));
+                }
+            }
+        });
+        return result;
+    }
+
+    private static <T> T readAndRecordResponse(Request request, Response response, ResponseBodyReader<T> reader) throws IOException {
+        T value;
+        try {
+            value = readResponse(request, response, reader);
+        } catch (IOException | RuntimeException e) {
+            recordCall(request, e, 0);
+            throw e;
+        }
+        recordCall(request, null, reader.elements(value));
+        return value;
+    }
+
+    /**
+     * Decodes JSON array from given source element by element, using the shared type adapter of the element type.
+     *
+     * @param source source positioned at the beginning of JSON array.
+     * @param clazz type of array elements.
+     * @param elementConsumer receives array elements one by one, in the order they appear in the source.
+     * @return number of elements decoded.
+     * @throws IOException if source can't be read or does not contain a well-formed JSON array.
+     * @throws JsonIOException if anything but whitespace follows the array.
+     */
+    public static <T> int readJsonArray(BufferedSource source, Class<T> clazz, Consumer<? super T> elementConsumer) throws IOException {
+        TypeAdapter<T> adapter = GSON.getAdapter(clazz);
+        JsonReader reader = newJsonReader(source);
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            elementConsumer.accept(adapter.read(reader));
+            count++;
+        }
+        reader.endArray();
+        assertFullyConsumed(reader);
+        return count;
+    }
+
+    /**
+     * Fails the same way {@link Gson#fromJson(String, Class)} does if JSON document read is followed by anything but
+     * whitespace, so that plugins responding with trailing garbage don't pass.
+     */
+    private static void assertFullyConsumed(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonIOException("JSON document was not fully consumed.");
         }
-        return httpClient;
+    }
+
+    private static JsonReader newJsonReader(BufferedSource source) {
+        JsonReader reader = new JsonReader(new InputStreamReader(source.inputStream(), UTF_8));
+        reader.setLenient(true);        // same as Gson#fromJson
+        return reader;
+    }
+
+    /**
+     * Returns the HTTP client shared by all actions calling given plugin.
+     */
+    public static OkHttpClient getHttpClient(PluginData pluginData) {
+        return clientRegistry.getClient(pluginData);
+    }
+
+    /**
+     * Replaces connection pool and dispatcher limits with the ones from configuration. Only affects clients created
+     * afterwards, hence should be called before running the harness.
+     */
+    public static void configureHttpClients(Main.Configuration configuration) {
+        clientRegistry = new RestClientRegistry(
+                configuration.restMaxIdleConnections,
+                configuration.restKeepAliveDurationS,
+                configuration.restMaxRequests,
+                configuration.restMaxRequestsPerHost,
+                configuration.restGzipRequests
+        );
+    }
+
+    /**
+     * Releases connections and threads held by HTTP clients. Should be called once the harness is done.
+     */
+    public static void shutdownHttpClients() {
+        clientRegistry.shutdown();
     }
 }
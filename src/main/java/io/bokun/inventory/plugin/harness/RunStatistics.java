@@ -0,0 +1,65 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import org.slf4j.*;
+
+/**
+ * Counts outcomes of plugin calls made during the run, per action type. Safe to use from any thread.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class RunStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(RunStatistics.class);
+
+    private static final ConcurrentMap<ActionType, Map<CallOutcome, LongAdder>> outcomes = new ConcurrentHashMap<>();
+
+    private RunStatistics() {
+    }
+
+    private static Map<CallOutcome, LongAdder> newCounters(ActionType actionType) {
+        Map<CallOutcome, LongAdder> result = new EnumMap<>(CallOutcome.class);
+        for (CallOutcome outcome : CallOutcome.values()) {
+            result.put(outcome, new LongAdder());
+        }
+        return result;
+    }
+
+    /**
+     * Records that a call of given type has ended with given outcome.
+     */
+    public static void record(@Nonnull ActionType actionType, @Nonnull CallOutcome outcome) {
+        outcomes.computeIfAbsent(actionType, RunStatistics::newCounters).get(outcome).increment();
+    }
+
+    /**
+     * @return how many calls of given type have ended with given outcome so far.
+     */
+    public static long getCount(@Nonnull ActionType actionType, @Nonnull CallOutcome outcome) {
+        Map<CallOutcome, LongAdder> counters = outcomes.get(actionType);
+        return (counters == null) ? 0L : counters.get(outcome).sum();
+    }
+
+    /**
+     * Logs number of calls by action type and outcome, skipping actions which were never called.
+     */
+    public static void logSummary() {
+        for (ActionType actionType : ActionType.values()) {
+            if (!outcomes.containsKey(actionType)) {
+                continue;
+            }
+            log.info(
+                    "{}: {} succeeded, {} failed, {} timed out",
+                    actionType.methodName,
+                    getCount(actionType, CallOutcome.SUCCESS),
+                    getCount(actionType, CallOutcome.ERROR),
+                    getCount(actionType, CallOutcome.TIMEOUT)
+            );
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.io.*;
+
+import javax.annotation.*;
+
+import com.squareup.okhttp.*;
+import okio.*;
+
+import static io.bokun.inventory.plugin.harness.TransferStatistics.*;
+
+/**
+ * Counts request and response body bytes passing through it into {@link TransferStatistics}. Registered as a network
+ * interceptor it sees bodies as they travel on the wire; registered as an application interceptor it sees them after
+ * transparent decompression and before compression. Bytes on the wire of requests tagged with {@link PluginCall} are
+ * also counted into the call itself and {@link PluginMetrics}.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class TransferCountingInterceptor implements Interceptor {
+
+    private final Layer layer;
+
+    public TransferCountingInterceptor(@Nonnull Layer layer) {
+        this.layer = layer;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.httpUrl();
+        String plugin = url.host() + ":" + url.port();
+        String endpoint = plugin + url.encodedPath();
+        Object tag = request.tag();
+        if (request.body() != null) {
+            request = request.newBuilder()
+                    .method(request.method(), countingRequestBody(request.body(), tag, plugin, endpoint))
+                    .build();
+        }
+        Response response = chain.proceed(request);
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        BufferedSource countingSource = Okio.buffer(new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0L) {
+                    count(tag, plugin, endpoint, Direction.RESPONSE, read);
+                }
+                return read;
+            }
+        });
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), countingSource))
+                .build();
+    }
+
+    private void count(Object tag, String plugin, String endpoint, Direction direction, long bytes) {
+        add(endpoint, layer, direction, bytes);
+        if ((layer == Layer.WIRE) && (tag instanceof PluginCall)) {
+            PluginCall pluginCall = (PluginCall) tag;
+            PluginMetrics.addBytes(PluginData.Transport.REST, plugin, pluginCall.actionType, direction, bytes);
+            pluginCall.addBytes(direction, bytes);
+        }
+    }
+
+    private RequestBody countingRequestBody(RequestBody body, Object tag, String plugin, String endpoint) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                return body.contentLength();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                BufferedSink countingSink = Okio.buffer(new ForwardingSink(sink) {
+                    @Override
+                    public void write(Buffer source, long byteCount) throws IOException {
+                        super.write(source, byteCount);
+                        count(tag, plugin, endpoint, Direction.REQUEST, byteCount);
+                    }
+                });
+                body.writeTo(countingSink);
+                countingSink.emit();        // pass everything on, but leave flushing and closing to the caller
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import org.slf4j.*;
+
+/**
+ * Counts bytes transferred to and from RESTful plugin endpoints, both as they travel on the wire (possibly compressed)
+ * and as they are produced or consumed by the harness (uncompressed). Comparing the two tells whether compression pays
+ * off for a particular endpoint. Safe to use from any thread.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class TransferStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferStatistics.class);
+
+    /**
+     * Which side of compression bytes are counted at.
+     */
+    public enum Layer {
+
+        /**
+         * Bytes as sent over the network, i.e. compressed if compression was negotiated.
+         */
+        WIRE,
+
+        /**
+         * Bytes as written or read by the harness, i.e. always uncompressed.
+         */
+        CONTENT
+    }
+
+    /**
+     * Direction of the transfer.
+     */
+    public enum Direction {
+        REQUEST, RESPONSE
+    }
+
+    private static final ConcurrentMap<String, LongAdder[]> bytesByEndpoint = new ConcurrentSkipListMap<>();
+
+    private TransferStatistics() {
+    }
+
+    private static int index(Layer layer, Direction direction) {
+        return layer.ordinal() * Direction.values().length + direction.ordinal();
+    }
+
+    private static LongAdder[] newCounters(String endpoint) {
+        LongAdder[] result = new LongAdder[Layer.values().length * Direction.values().length];
+        Arrays.setAll(result, i -> new LongAdder());
+        return result;
+    }
+
+    /**
+     * Adds given number of bytes to the endpoint's counter.
+     *
+     * @param endpoint endpoint identifier, e.g. <tt>localhost:8080/product/getAvailability</tt>.
+     */
+    public static void add(@Nonnull String endpoint, @Nonnull Layer layer, @Nonnull Direction direction, long bytes) {
+        bytesByEndpoint.computeIfAbsent(endpoint, TransferStatistics::newCounters)[index(layer, direction)].add(bytes);
+    }
+
+    /**
+     * @return number of bytes transferred to or from given endpoint so far.
+     */
+    public static long getBytes(@Nonnull String endpoint, @Nonnull Layer layer, @Nonnull Direction direction) {
+        LongAdder[] counters = bytesByEndpoint.get(endpoint);
+        return (counters == null) ? 0L : counters[index(layer, direction)].sum();
+    }
+
+    /**
+     * Logs transferred bytes of every endpoint called so far.
+     */
+    public static void logSummary() {
+        for (String endpoint : bytesByEndpoint.keySet()) {
+            log.info(
+                    "{}: sent {} bytes ({} uncompressed), received {} bytes ({} uncompressed)",
+                    endpoint,
+                    getBytes(endpoint, Layer.WIRE, Direction.REQUEST),
+                    getBytes(endpoint, Layer.CONTENT, Direction.REQUEST),
+                    getBytes(endpoint, Layer.WIRE, Direction.RESPONSE),
+                    getBytes(endpoint, Layer.CONTENT, Direction.RESPONSE)
+            );
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.bokun.inventory.plugin.harness;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+/**
+ * Plugin calls prepared for load generation: products and configuration have been discovered up front, so each call
+ * can be started on its own, without walking through the booking funnel first. Booking calls pass state along: a
+ * confirmation confirms an earlier reservation, a cancellation cancels an earlier booking; if there is none, the call
+ * is skipped.
+ *
+ * <p>Implementations are thread safe.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public interface Workload {
+
+    /**
+     * @return actions {@link #start(ActionType)} can be called with.
+     */
+    @Nonnull
+    Set<ActionType> getSupportedActions();
+
+    /**
+     * Starts a single call of given action on a randomly picked product. Doesn't block for the plugin to respond.
+     *
+     * @return future completed once plugin has responded and its response has been validated, or {@code null} if the
+     * call is skipped as there's no reservation to confirm or booking to cancel, or session has no product to follow or
+     * has found no date to book.
+     * @throws UnsupportedOperationException if action is not one of {@link #getSupportedActions()}.
+     */
+    @Nullable
+    CompletableFuture<?> start(@Nonnull ActionType actionType);
+
+    /**
+     * @return workload calling the same plugin on the same products, but keeping reservations and bookings of its own,
+     * e.g. so that a virtual user confirms its own reservation and not someone else's. Its steps follow a single
+     * product: the one picked at {@link ActionType#SHALLOW_AVAILABILITY} is looked at and has its deep availability
+     * checked, and is then booked on a date picked at {@link ActionType#DEEP_AVAILABILITY}. Its {@link #cleanUp()}
+     * has to be called separately.
+     */
+    @Nonnull
+    Workload newSession();
+
+    /**
+     * Cancels bookings made by this workload which have not been cancelled by {@link ActionType#CANCEL_BOOKING} calls,
+     * and logs how many reservations were left unconfirmed. Blocks until all the cancellations complete.
+     */
+    void cleanUp();
+}
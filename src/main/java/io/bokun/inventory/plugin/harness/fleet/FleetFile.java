@@ -0,0 +1,100 @@
+package io.bokun.inventory.plugin.harness.fleet;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import javax.annotation.*;
+
+import com.google.gson.*;
+import com.google.gson.reflect.*;
+import io.bokun.inventory.plugin.harness.*;
+
+import static com.google.common.base.Charsets.*;
+
+/**
+ * Reads a fleet of plugins from a JSON file, e.g.:
+ * <pre>
+ * [
+ *   {
+ *     "url": "plugin-a.example.com:443",
+ *     "tls": true,
+ *     "certFile": "certs/plugin-a.pem",
+ *     "sharedSecret": "...",
+ *     "transport": "GRPC",
+ *     "config": {"USERNAME": "...", "PASSWORD": "..."}
+ *   },
+ *   {
+ *     "url": "plugin-b.example.com:8080",
+ *     "transport": "REST",
+ *     "restBasicAuthUsername": "...",
+ *     "restBasicAuthPassword": "...",
+ *     "config": {"API_KEY": "..."}
+ *   }
+ * ]
+ * </pre>
+ * Only <tt>url</tt> is mandatory; transport defaults to <tt>REST</tt>. Relative certificate paths are resolved against
+ * the directory of the fleet file. Configuration parameters of each plugin are given in <tt>config</tt>, by name, in
+ * place of <tt>PLUGIN_CONFIG_*</tt> environment variables.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class FleetFile {
+
+    private FleetFile() {
+    }
+
+    private static final class Entry {
+        String url;
+        boolean tls;
+        String certFile;
+        String sharedSecret;
+        String transport = "REST";
+        String restBasicAuthUsername;
+        String restBasicAuthPassword;
+        Map<String, String> config;
+    }
+
+    @Nonnull
+    public static List<PluginData> read(@Nonnull Path fleetFile) {
+        List<Entry> entries;
+        try (Reader reader = Files.newBufferedReader(fleetFile, UTF_8)) {
+            entries = RestUtil.GSON.fromJson(reader, new TypeToken<List<Entry>>() { }.getType());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read fleet file " + fleetFile, e);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed fleet file " + fleetFile, e);
+        }
+        if ((entries == null) || entries.isEmpty()) {
+            throw new IllegalArgumentException("No plugins in fleet file " + fleetFile);
+        }
+        List<PluginData> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.url == null) {
+                throw new IllegalArgumentException("Plugin without url in fleet file " + fleetFile);
+            }
+            result.add(
+                    new PluginData(
+                            entry.url,
+                            entry.tls,
+                            (entry.certFile != null) ? readCert(fleetFile, entry.certFile) : null,
+                            entry.sharedSecret,
+                            entry.transport,
+                            entry.restBasicAuthUsername,
+                            entry.restBasicAuthPassword,
+                            (entry.config != null) ? entry.config : Collections.emptyMap()
+                    )
+            );
+        }
+        return result;
+    }
+
+    private static String readCert(Path fleetFile, String certFile) {
+        Path path = fleetFile.toAbsolutePath().getParent().resolve(certFile);
+        try {
+            return new String(Files.readAllBytes(path), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read certificate " + path, e);
+        }
+    }
+}
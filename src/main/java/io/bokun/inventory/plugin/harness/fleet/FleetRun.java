@@ -0,0 +1,100 @@
+package io.bokun.inventory.plugin.harness.fleet;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.util.concurrent.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Runs the booking funnel once against each plugin of a fleet, a bounded number of them at a time, all sharing the
+ * same JVM and transports (gRPC event loops, HTTP clients), and reports how each of them went.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class FleetRun {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetRun.class);
+
+    private final Harness grpcHarness;
+    private final Harness restHarness;
+    private final Main.Configuration configuration;
+
+    /**
+     * @param configuration harness configuration; {@link Main.Configuration#fleet} are the plugins to run against and
+     *                      {@link Main.Configuration#fleetParallelism} is how many of them to run at a time.
+     */
+    public FleetRun(@Nonnull Harness grpcHarness, @Nonnull Harness restHarness, @Nonnull Main.Configuration configuration) {
+        this.grpcHarness = grpcHarness;
+        this.restHarness = restHarness;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Runs the funnel against all the plugins and logs the results.
+     *
+     * @return result of each plugin, in fleet order.
+     */
+    @Nonnull
+    public Map<PluginData, FunnelResult> run() {
+        log.info("Running against {} plugins, {} at a time", configuration.fleet.size(), configuration.fleetParallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                configuration.fleetParallelism,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("fleet-%d")
+                        .setDaemon(true)
+                        .build()
+        );
+        Map<PluginData, Future<FunnelResult>> futures = new LinkedHashMap<>();
+        for (PluginData pluginData : configuration.fleet) {
+            Harness harness = (pluginData.transport == PluginData.Transport.GRPC) ? grpcHarness : restHarness;
+            futures.put(pluginData, executor.submit(() -> harness.runEndToEnd(configuration.withPluginData(pluginData))));
+        }
+        Map<PluginData, FunnelResult> results = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<PluginData, Future<FunnelResult>> future : futures.entrySet()) {
+                results.put(future.getKey(), future.getValue().get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for fleet", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Fleet run has failed", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        logReport(results);
+        return results;
+    }
+
+    private static void logReport(Map<PluginData, FunnelResult> results) {
+        int passed = 0;
+        for (Map.Entry<PluginData, FunnelResult> result : results.entrySet()) {
+            PluginData pluginData = result.getKey();
+            FunnelResult funnel = result.getValue();
+            StringJoiner steps = new StringJoiner(", ");
+            long totalNanos = 0L;
+            for (Map.Entry<ActionType, Long> step : funnel.getStepNanos().entrySet()) {
+                steps.add(step.getKey().methodName + "=" + TimeUnit.NANOSECONDS.toMillis(step.getValue()) + "ms");
+                totalNanos += step.getValue();
+            }
+            if (funnel.isSuccessful()) {
+                passed++;
+                log.info("{} ({}): passed in {}ms [{}]", pluginData.url, pluginData.transport, TimeUnit.NANOSECONDS.toMillis(totalNanos), steps);
+            } else {
+                log.warn(
+                        "{} ({}): failed at {}: {} [{}]",
+                        pluginData.url,
+                        pluginData.transport,
+                        funnel.getFailedStepName(),
+                        funnel.getFailure(),
+                        steps
+                );
+            }
+        }
+        log.info("{} of {} plugins passed", passed, results.size());
+    }
+}
@@ -0,0 +1,91 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import javax.annotation.*;
+
+import org.HdrHistogram.*;
+
+/**
+ * Tells whether a plugin has degraded between two periods of a run. A change is reported only if it is both
+ * statistically significant (i.e. unlikely to be due to chance at 1% level) and large enough to matter.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class DriftDetector {
+
+    /**
+     * Kolmogorov-Smirnov critical value coefficient for 1% significance level.
+     */
+    private static final double KS_COEFFICIENT = 1.628d;
+
+    /**
+     * One-sided normal critical value for 1% significance level.
+     */
+    private static final double Z_CRITICAL = 2.326d;
+
+    /**
+     * Median or 99th percentile latency must have grown at least this much (relatively) to count as drift.
+     */
+    private static final double MIN_LATENCY_GROWTH = 0.2d;
+
+    /**
+     * Error rate must have grown at least this much (absolute) to count as drift.
+     */
+    private static final double MIN_ERROR_RATE_GROWTH = 0.01d;
+
+    private DriftDetector() {
+    }
+
+    /**
+     * @return largest difference between cumulative distributions of the two histograms (two-sample Kolmogorov-Smirnov
+     * statistic).
+     */
+    static double ksStatistic(@Nonnull AbstractHistogram early, @Nonnull AbstractHistogram late) {
+        Histogram combined = LoadStatistics.newLatencyHistogram();
+        combined.add(early);
+        combined.add(late);
+        long earlyTotal = early.getTotalCount();
+        long lateTotal = late.getTotalCount();
+        long earlyCount = 0L;
+        long lateCount = 0L;
+        double result = 0.0d;
+        for (HistogramIterationValue value : combined.recordedValues()) {
+            earlyCount += early.getCountAtValue(value.getValueIteratedTo());
+            lateCount += late.getCountAtValue(value.getValueIteratedTo());
+            result = Math.max(result, Math.abs((double) earlyCount / earlyTotal - (double) lateCount / lateTotal));
+        }
+        return result;
+    }
+
+    /**
+     * @return whether latencies of later period are significantly worse than those of earlier one.
+     */
+    public static boolean isLatencyDrift(@Nonnull AbstractHistogram early, @Nonnull AbstractHistogram late) {
+        long n = early.getTotalCount();
+        long m = late.getTotalCount();
+        if ((n == 0L) || (m == 0L)) {
+            return false;
+        }
+        boolean significant = ksStatistic(early, late) > KS_COEFFICIENT * Math.sqrt((double) (n + m) / ((double) n * m));
+        boolean medianGrown = late.getValueAtPercentile(50.0d) > early.getValueAtPercentile(50.0d) * (1.0d + MIN_LATENCY_GROWTH);
+        boolean tailGrown = late.getValueAtPercentile(99.0d) > early.getValueAtPercentile(99.0d) * (1.0d + MIN_LATENCY_GROWTH);
+        return significant && (medianGrown || tailGrown);
+    }
+
+    /**
+     * @return whether error rate of later period is significantly higher than that of earlier one (one-sided
+     * two-proportion z-test).
+     */
+    public static boolean isErrorRateDrift(long earlyErrors, long earlyTotal, long lateErrors, long lateTotal) {
+        if ((earlyTotal == 0L) || (lateTotal == 0L)) {
+            return false;
+        }
+        double earlyRate = (double) earlyErrors / earlyTotal;
+        double lateRate = (double) lateErrors / lateTotal;
+        if (lateRate - earlyRate < MIN_ERROR_RATE_GROWTH) {
+            return false;
+        }
+        double pooledRate = (double) (earlyErrors + lateErrors) / (earlyTotal + lateTotal);
+        double standardError = Math.sqrt(pooledRate * (1.0d - pooledRate) * (1.0d / earlyTotal + 1.0d / lateTotal));
+        return (standardError > 0.0d) && ((lateRate - earlyRate) / standardError > Z_CRITICAL);
+    }
+}
@@ -0,0 +1,172 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Coordinator side of distributed load generation: splits open-loop load evenly among {@link LoadWorkerServer}
+ * processes, starts them together and merges their results into one report. Latency histograms travel in their
+ * lossless compressed encoding, so merged percentiles are as precise as if a single process had recorded them all.
+ *
+ * <p>Workers are started with a common delay once all of them are ready, rather than at a given wall clock time, so
+ * clocks of their machines don't need to agree.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class LoadCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadCoordinator.class);
+
+    /**
+     * How long after being told workers start, giving the start message time to reach all of them.
+     */
+    private static final long START_DELAY_MS = 1000L;
+
+    /**
+     * How long to wait for a worker to accept the connection.
+     */
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+
+    /**
+     * How long to wait for a worker to prepare its workload, which takes a few plugin calls, searches included.
+     */
+    private static final long PREPARE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10L);
+
+    /**
+     * How much longer than the run itself and draining calls in flight to wait for a worker to report, allowing for
+     * building the report and slow networks.
+     */
+    private static final long REPORT_MARGIN_MS = TimeUnit.SECONDS.toMillis(30L);
+
+    private final Main.Configuration configuration;
+    private final List<HostAndPort> workers;
+
+    /**
+     * @param configuration harness configuration; {@link Main.Configuration#loadWorkerAddresses} are the workers, and
+     *                      <tt>LOAD_*</tt> settings of open-loop load apply to all of them together.
+     */
+    public LoadCoordinator(@Nonnull Main.Configuration configuration) {
+        this.configuration = configuration;
+        this.workers = new ArrayList<>();
+        for (String address : Splitter.on(',').trimResults().omitEmptyStrings().split(configuration.loadWorkerAddresses)) {
+            workers.add(HostAndPort.fromString(address).withDefaultPort(configuration.loadWorkerPort));
+        }
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("No worker addresses given");
+        }
+        if (configuration.loadRate <= 0L) {
+            throw new IllegalArgumentException("Distributed load needs a rate");
+        }
+    }
+
+    /**
+     * Runs the load on all workers and logs the merged report.
+     *
+     * @return merged statistics of all workers.
+     */
+    @Nonnull
+    public OpenLoopStatistics run() {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            List<BufferedReader> readers = new ArrayList<>();
+            List<Writer> writers = new ArrayList<>();
+            for (HostAndPort worker : workers) {
+                Socket socket = new Socket();
+                sockets.add(socket);
+                try {
+                    socket.connect(new InetSocketAddress(worker.getHost(), worker.getPort()), CONNECT_TIMEOUT_MS);
+                } catch (IOException e) {
+                    throw new IOException("Could not connect to worker " + worker, e);
+                }
+                readers.add(WorkerMessage.reader(socket.getInputStream()));
+                writers.add(WorkerMessage.writer(socket.getOutputStream()));
+            }
+
+            WorkerMessage prepare = WorkerMessage.of(WorkerMessage.Type.PREPARE);
+            prepare.rate = (double) configuration.loadRate / workers.size();
+            prepare.durationS = configuration.loadDurationS;
+            prepare.maxInFlight = Math.max(1, configuration.loadMaxInFlight / workers.size());
+            prepare.action = configuration.loadAction.name();
+            prepare.mix = configuration.loadMix;
+            log.info("Splitting {} calls/s among {} workers", configuration.loadRate, workers.size());
+            for (Writer writer : writers) {
+                prepare.write(writer);
+            }
+            for (int i = 0; i < workers.size(); i++) {
+                expect(i, sockets.get(i), readers.get(i), WorkerMessage.Type.READY, PREPARE_TIMEOUT_MS);
+                log.info("Worker {} is ready", workers.get(i));
+            }
+
+            WorkerMessage start = WorkerMessage.of(WorkerMessage.Type.START);
+            start.startInMs = START_DELAY_MS;
+            for (Writer writer : writers) {
+                start.write(writer);
+            }
+
+            long reportTimeoutMs = START_DELAY_MS
+                    + TimeUnit.SECONDS.toMillis(configuration.loadDurationS + OpenLoopScheduler.MAX_DRAIN_S)
+                    + REPORT_MARGIN_MS;
+            OpenLoopStatistics result = new OpenLoopStatistics();
+            long scheduledNanos = 0L;
+            long elapsedNanos = 0L;
+            for (int i = 0; i < workers.size(); i++) {
+                WorkerMessage report = expect(i, sockets.get(i), readers.get(i), WorkerMessage.Type.REPORT, reportTimeoutMs);
+                log.info("Worker {} has reported", workers.get(i));
+                scheduledNanos = Math.max(scheduledNanos, report.scheduledNanos);
+                elapsedNanos = Math.max(elapsedNanos, report.elapsedNanos);
+                for (Map.Entry<ActionType, WorkerMessage.ActionReport> action : report.actions.entrySet()) {
+                    WorkerMessage.ActionReport actionReport = action.getValue();
+                    result.add(
+                            action.getKey(),
+                            actionReport.succeeded,
+                            actionReport.failed,
+                            actionReport.dropped,
+                            actionReport.skipped,
+                            WorkerMessage.decode(actionReport.responseTimes),
+                            WorkerMessage.decode(actionReport.serviceTimes)
+                    );
+                }
+            }
+            result.finish(scheduledNanos, elapsedNanos);
+            result.logReport();
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    log.warn("Could not close connection to worker", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next message of i-th worker, failing if it doesn't come in time. Timeout of a later message counts
+     * from when waiting for it starts, as workers are waited for one after another while all of them work in parallel.
+     */
+    @Nonnull
+    private WorkerMessage expect(int i,
+                                 @Nonnull Socket socket,
+                                 @Nonnull BufferedReader reader,
+                                 @Nonnull WorkerMessage.Type type,
+                                 long timeoutMs) throws IOException {
+        socket.setSoTimeout((int) Math.min(timeoutMs, Integer.MAX_VALUE));
+        try {
+            return WorkerMessage.expect(reader, type);
+        } catch (SocketTimeoutException e) {
+            throw new IOException("Worker " + workers.get(i) + " has not sent " + type + " within " + timeoutMs + "ms", e);
+        }
+    }
+}
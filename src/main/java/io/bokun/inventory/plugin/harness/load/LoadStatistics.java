@@ -0,0 +1,152 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.plugin.harness.*;
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+/**
+ * Aggregates results of many funnel passes: how many completed, how many calls each step has made and failed, and
+ * latency distribution of successful steps. Not thread safe; load workers share a single instance and synchronize on
+ * it, see {@link LoadTest}. Statistics of separate runs or windows can be merged with {@link #add(LoadStatistics)}.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class LoadStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadStatistics.class);
+
+    /**
+     * Latencies are recorded in microseconds, up to an hour, with 3 significant digits.
+     */
+    static final long HIGHEST_TRACKABLE_LATENCY_US = TimeUnit.HOURS.toMicros(1L);
+    static final int SIGNIFICANT_DIGITS = 3;
+
+    private long flows;
+    private long successfulFlows;
+    private final Map<ActionType, long[]> stepOutcomes = new EnumMap<>(ActionType.class);     // [successes, failures]
+    private final Map<ActionType, Histogram> stepLatencies = new EnumMap<>(ActionType.class);
+
+    private long[] outcomesOf(ActionType step) {
+        return stepOutcomes.computeIfAbsent(step, s -> new long[2]);
+    }
+
+    private Histogram latenciesOf(ActionType step) {
+        return stepLatencies.computeIfAbsent(step, s -> newLatencyHistogram());
+    }
+
+    @Nonnull
+    static Histogram newLatencyHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_LATENCY_US, SIGNIFICANT_DIGITS);
+    }
+
+    static void recordLatency(@Nonnull AbstractHistogram histogram, long nanos) {
+        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_LATENCY_US));
+    }
+
+    /**
+     * Accounts for a single funnel pass.
+     */
+    public void record(@Nonnull FunnelResult result) {
+        flows++;
+        if (result.isSuccessful()) {
+            successfulFlows++;
+        }
+        result.getStepNanos().forEach((step, nanos) -> {
+            if (step == result.getFailedStep()) {
+                outcomesOf(step)[1]++;
+            } else {
+                outcomesOf(step)[0]++;
+                recordLatency(latenciesOf(step), nanos);
+            }
+        });
+        ActionType failedStep = result.getFailedStep();
+        if ((failedStep != null) && !result.getStepNanos().containsKey(failedStep)) {
+            outcomesOf(failedStep)[1]++;       // failed before plugin was even called
+        }
+    }
+
+    /**
+     * Adds all the results of other statistics to this one.
+     */
+    public void add(@Nonnull LoadStatistics other) {
+        flows += other.flows;
+        successfulFlows += other.successfulFlows;
+        other.stepOutcomes.forEach((step, outcomes) -> {
+            long[] own = outcomesOf(step);
+            own[0] += outcomes[0];
+            own[1] += outcomes[1];
+        });
+        other.stepLatencies.forEach((step, latencies) -> latenciesOf(step).add(latencies));
+    }
+
+    public long getFlows() {
+        return flows;
+    }
+
+    public long getSuccessfulFlows() {
+        return successfulFlows;
+    }
+
+    public long getStepSuccesses(@Nonnull ActionType step) {
+        return stepOutcomes.containsKey(step) ? stepOutcomes.get(step)[0] : 0L;
+    }
+
+    public long getStepFailures(@Nonnull ActionType step) {
+        return stepOutcomes.containsKey(step) ? stepOutcomes.get(step)[1] : 0L;
+    }
+
+    /**
+     * @return latencies (in microseconds) of successful steps of given type, or {@code null} if there were none.
+     */
+    @Nullable
+    public Histogram getStepLatencies(@Nonnull ActionType step) {
+        return stepLatencies.get(step);
+    }
+
+    /**
+     * Logs flow throughput and a per-step breakdown of outcomes and latencies.
+     *
+     * @param elapsedNanos how long the run took.
+     */
+    public void logReport(long elapsedNanos) {
+        double elapsedS = elapsedNanos / 1_000_000_000.0d;
+        log.info(
+                "{} flows in {}s ({} flows/s), {} completed ({} flows/s)",
+                flows,
+                String.format("%.1f", elapsedS),
+                String.format("%.2f", flows / elapsedS),
+                successfulFlows,
+                String.format("%.2f", successfulFlows / elapsedS)
+        );
+        for (ActionType step : ActionType.values()) {
+            if (!stepOutcomes.containsKey(step)) {
+                continue;
+            }
+            Histogram latencies = stepLatencies.get(step);
+            if (latencies == null) {
+                log.info("{}: {} ok, {} failed", step.methodName, getStepSuccesses(step), getStepFailures(step));
+                continue;
+            }
+            log.info(
+                    "{}: {} ok, {} failed; latency ms p50={} p90={} p99={} max={}",
+                    step.methodName,
+                    getStepSuccesses(step),
+                    getStepFailures(step),
+                    toMillis(latencies.getValueAtPercentile(50.0d)),
+                    toMillis(latencies.getValueAtPercentile(90.0d)),
+                    toMillis(latencies.getValueAtPercentile(99.0d)),
+                    toMillis(latencies.getMaxValue())
+            );
+        }
+    }
+
+    @Nonnull
+    static String toMillis(long micros) {
+        return String.format("%.1f", micros / 1000.0d);
+    }
+}
@@ -0,0 +1,91 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Runs the booking funnel on a number of concurrent workers, each starting a new pass as soon as the previous one is
+ * over, until either the configured duration elapses or the configured number of passes is made. Workers share
+ * statistics, so that their number is not limited by memory the statistics take.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class LoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    private final Harness harness;
+    private final Main.Configuration configuration;
+    private final int workers;
+    private final WorkerThreads.Kind threads;
+    private final long durationNanos;
+    private final long iterations;
+
+    /**
+     * @param harness harness running the funnel over the transport of choice.
+     * @param configuration harness configuration; {@link Main.Configuration#loadWorkers}, {@link Main.Configuration#loadThreads},
+     *                      {@link Main.Configuration#loadDurationS} and {@link Main.Configuration#loadIterations} shape
+     *                      the load.
+     */
+    public LoadTest(@Nonnull Harness harness, @Nonnull Main.Configuration configuration) {
+        this.harness = harness;
+        this.configuration = configuration;
+        this.workers = configuration.loadWorkers;
+        this.threads = configuration.loadThreads;
+        this.durationNanos = (configuration.loadDurationS > 0L) ? TimeUnit.SECONDS.toNanos(configuration.loadDurationS) : Long.MAX_VALUE;
+        this.iterations = (configuration.loadIterations > 0L) ? configuration.loadIterations : Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs the load and logs the report.
+     *
+     * @return statistics shared by all workers.
+     */
+    @Nonnull
+    public LoadStatistics run() {
+        log.info(
+                "Running funnel on {} {} workers for {}s or {} iterations, whichever comes first",
+                workers,
+                threads,
+                (durationNanos == Long.MAX_VALUE) ? "unlimited " : TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                (iterations == Long.MAX_VALUE) ? "unlimited" : iterations
+        );
+        ExecutorService executor = WorkerThreads.newExecutor(threads, workers, "load-worker-%d");
+        AtomicLong remainingIterations = new AtomicLong(iterations);
+        LoadStatistics statistics = new LoadStatistics();
+        long start = System.nanoTime();
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            results.add(executor.submit(() -> runWorker(start, remainingIterations, statistics)));
+        }
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for load workers", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Load worker has failed", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        statistics.logReport(System.nanoTime() - start);
+        return statistics;
+    }
+
+    private void runWorker(long start, AtomicLong remainingIterations, LoadStatistics statistics) {
+        while ((System.nanoTime() - start < durationNanos) && (remainingIterations.getAndDecrement() > 0L)) {
+            FunnelResult result = harness.runEndToEnd(configuration);
+            synchronized (statistics) {
+                statistics.record(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Worker side of distributed load generation: waits for {@link LoadCoordinator} to connect, then generates the share of
+ * open-loop load it is told to and reports back. Serves a single run, then returns.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class LoadWorkerServer {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadWorkerServer.class);
+
+    private final Harness harness;
+    private final Main.Configuration configuration;
+
+    /**
+     * @param harness harness calling the plugin over the transport of choice.
+     * @param configuration harness configuration; {@link Main.Configuration#loadWorkerPort} is the port to listen on.
+     */
+    public LoadWorkerServer(@Nonnull Harness harness, @Nonnull Main.Configuration configuration) {
+        this.harness = harness;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Waits for coordinator, then runs the load it asks for.
+     */
+    public void serve() {
+        try (ServerSocket serverSocket = new ServerSocket(configuration.loadWorkerPort)) {
+            log.info("Waiting for coordinator on port {}", serverSocket.getLocalPort());
+            try (Socket socket = serverSocket.accept()) {
+                log.info("Coordinator has connected from {}", socket.getRemoteSocketAddress());
+                serve(WorkerMessage.reader(socket.getInputStream()), WorkerMessage.writer(socket.getOutputStream()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void serve(BufferedReader reader, Writer writer) throws IOException {
+        WorkerMessage prepare = WorkerMessage.expect(reader, WorkerMessage.Type.PREPARE);
+        Workload workload;
+        Supplier<ActionType> nextAction;
+        try {
+            workload = harness.prepareWorkload(configuration);
+            nextAction = (prepare.mix != null)
+                    ? WorkloadMix.parse(prepare.mix).supportedBy(workload)
+                    : constant(ActionType.valueOf(prepare.action));
+        } catch (RuntimeException e) {
+            log.error("Could not prepare workload", e);
+            WorkerMessage.failed(e).write(writer);
+            return;
+        }
+        try {
+            WorkerMessage.of(WorkerMessage.Type.READY).write(writer);
+            WorkerMessage start = WorkerMessage.expect(reader, WorkerMessage.Type.START);
+            Thread.sleep(start.startInMs);
+            OpenLoopStatistics statistics = new OpenLoopScheduler(
+                    workload,
+                    nextAction,
+                    prepare.rate,
+                    TimeUnit.SECONDS.toNanos(prepare.durationS),
+                    configuration.boundInFlight(prepare.maxInFlight)
+            ).run();
+            statistics.logReport();
+            toReport(statistics).write(writer);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to start", ie);
+        } catch (RuntimeException e) {
+            log.error("Could not run workload", e);
+            WorkerMessage.failed(e).write(writer);
+        } finally {
+            workload.cleanUp();
+        }
+    }
+
+    private static Supplier<ActionType> constant(ActionType actionType) {
+        return () -> actionType;
+    }
+
+    private static WorkerMessage toReport(OpenLoopStatistics statistics) {
+        WorkerMessage result = WorkerMessage.of(WorkerMessage.Type.REPORT);
+        result.scheduledNanos = statistics.getScheduledNanos();
+        result.elapsedNanos = statistics.getElapsedNanos();
+        result.actions = new EnumMap<>(ActionType.class);
+        for (ActionType actionType : ActionType.values()) {
+            OpenLoopStatistics.ActionStatistics action = statistics.get(actionType);
+            if (action != null) {
+                WorkerMessage.ActionReport report = new WorkerMessage.ActionReport();
+                report.succeeded = action.getSucceeded();
+                report.failed = action.getFailed();
+                report.dropped = action.getDropped();
+                report.skipped = action.getSkipped();
+                report.responseTimes = WorkerMessage.encode(action.getResponseTimes());
+                report.serviceTimes = WorkerMessage.encode(action.getServiceTimes());
+                result.actions.put(actionType, report);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,195 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Starts plugin calls at a given rate, whether or not the plugin keeps up. Unlike workers waiting for one call to
+ * complete before starting the next, a slow plugin doesn't make it send fewer calls, so the slowdown shows up in
+ * latencies rather than being hidden by it (coordinated omission). Latency of each call is measured from the time it
+ * was due to start.
+ *
+ * <p>Number of calls in flight is bounded; a call due when the limit is reached is dropped and counted as such. A call
+ * workload has nothing to make on, e.g. a confirmation with no reservation pending, is counted as skipped. The bound
+ * should not exceed what the transport can send at once, see {@link Main.Configuration#boundInFlight(int)}: a call is
+ * timed as soon as it's handed over to the workload, so any time it spends queued in the harness counts as plugin's.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class OpenLoopScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenLoopScheduler.class);
+
+    /**
+     * How long to wait for calls still in flight once scheduling is over.
+     */
+    static final long MAX_DRAIN_S = 60L;
+
+    /**
+     * Gets notified of every call's outcome, along with when it was due, e.g. to see how latency changes over time.
+     * Called on whatever thread the outcome is known on, so must be thread safe.
+     */
+    public interface CallListener {
+
+        /**
+         * @param intendedStartNanos time the call was due at, since the run has started.
+         * @param responseNanos time it took the call to complete, since it was due.
+         */
+        void succeeded(@Nonnull ActionType actionType, long intendedStartNanos, long responseNanos);
+
+        void failed(@Nonnull ActionType actionType, long intendedStartNanos);
+
+        void dropped(@Nonnull ActionType actionType, long intendedStartNanos);
+
+        void skipped(@Nonnull ActionType actionType, long intendedStartNanos);
+    }
+
+    private static final CallListener NO_LISTENER = new CallListener() {
+        @Override
+        public void succeeded(@Nonnull ActionType actionType, long intendedStartNanos, long responseNanos) {
+        }
+
+        @Override
+        public void failed(@Nonnull ActionType actionType, long intendedStartNanos) {
+        }
+
+        @Override
+        public void dropped(@Nonnull ActionType actionType, long intendedStartNanos) {
+        }
+
+        @Override
+        public void skipped(@Nonnull ActionType actionType, long intendedStartNanos) {
+        }
+    };
+
+    private final Workload workload;
+    private final Supplier<ActionType> nextAction;
+    private final RateProfile rateProfile;
+    private final long durationNanos;
+    private final int maxInFlight;
+    private final CallListener listener;
+
+    /**
+     * @param workload workload to start calls on.
+     * @param nextAction picks action of each call; called on the scheduling thread only.
+     * @param ratePerS how many calls to start per second.
+     * @param durationNanos how long to keep starting calls.
+     * @param maxInFlight max number of calls which may be in flight at the same time.
+     */
+    public OpenLoopScheduler(@Nonnull Workload workload,
+                             @Nonnull Supplier<ActionType> nextAction,
+                             double ratePerS,
+                             long durationNanos,
+                             int maxInFlight) {
+        this(workload, nextAction, RateProfile.constant(ratePerS), durationNanos, maxInFlight, NO_LISTENER);
+    }
+
+    /**
+     * @param workload workload to start calls on.
+     * @param nextAction picks action of each call; called on the scheduling thread only.
+     * @param rateProfile how many calls to start per second at each point of the run.
+     * @param durationNanos how long to keep starting calls.
+     * @param maxInFlight max number of calls which may be in flight at the same time.
+     * @param listener gets notified of each call's outcome, in addition to it being recorded in statistics.
+     */
+    public OpenLoopScheduler(@Nonnull Workload workload,
+                             @Nonnull Supplier<ActionType> nextAction,
+                             @Nonnull RateProfile rateProfile,
+                             long durationNanos,
+                             int maxInFlight,
+                             @Nonnull CallListener listener) {
+        this.workload = workload;
+        this.nextAction = nextAction;
+        this.rateProfile = rateProfile;
+        this.durationNanos = durationNanos;
+        this.maxInFlight = maxInFlight;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts calls on the current thread for the configured duration, then waits for those in flight to complete.
+     *
+     * @return outcomes and latencies of the calls.
+     */
+    @Nonnull
+    public OpenLoopStatistics run() {
+        log.info("Starting {} for {}s, at most {} in flight", rateProfile, TimeUnit.NANOSECONDS.toSeconds(durationNanos), maxInFlight);
+        OpenLoopStatistics statistics = new OpenLoopStatistics();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long start = System.nanoTime();
+        // kept as double so that rounding of intervals doesn't add up over a long run
+        for (double elapsedNanos = 0.0d; elapsedNanos < durationNanos; elapsedNanos += 1_000_000_000.0d / rate(elapsedNanos)) {
+            long intendedStart = start + (long) elapsedNanos;
+            long delay;
+            while ((delay = intendedStart - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(delay);
+            }
+            ActionType actionType = nextAction.get();
+            if (!inFlight.tryAcquire()) {
+                statistics.recordDrop(actionType);
+                listener.dropped(actionType, intendedStart - start);
+                continue;
+            }
+            startCall(actionType, start, intendedStart, inFlight, statistics);
+        }
+        awaitInFlight(inFlight);
+        statistics.finish(durationNanos, System.nanoTime() - start);
+        return statistics;
+    }
+
+    private double rate(double elapsedNanos) {
+        double rate = rateProfile.rateAt((long) elapsedNanos);
+        if (rate <= 0.0d) {
+            throw new IllegalStateException("Rate must be positive: " + rate + " at " + elapsedNanos + "ns");
+        }
+        return rate;
+    }
+
+    private void startCall(ActionType actionType, long start, long intendedStart, Semaphore inFlight, OpenLoopStatistics statistics) {
+        long actualStart = System.nanoTime();
+        CompletableFuture<?> call;
+        try {
+            call = workload.start(actionType);
+        } catch (RuntimeException e) {
+            log.debug("Could not start {}", actionType, e);
+            statistics.recordFailure(actionType);
+            listener.failed(actionType, intendedStart - start);
+            inFlight.release();
+            return;
+        }
+        if (call == null) {
+            statistics.recordSkip(actionType);
+            listener.skipped(actionType, intendedStart - start);
+            inFlight.release();
+            return;
+        }
+        call.whenComplete((result, t) -> {
+            if (t == null) {
+                long end = System.nanoTime();
+                statistics.recordSuccess(actionType, intendedStart, actualStart, end);
+                listener.succeeded(actionType, intendedStart - start, end - intendedStart);
+            } else {
+                statistics.recordFailure(actionType);
+                listener.failed(actionType, intendedStart - start);
+            }
+            inFlight.release();
+        });
+    }
+
+    private void awaitInFlight(Semaphore inFlight) {
+        try {
+            if (!inFlight.tryAcquire(maxInFlight, MAX_DRAIN_S, TimeUnit.SECONDS)) {
+                log.warn("{} calls still in flight after {}s, not waiting for them", maxInFlight - inFlight.availablePermits(), MAX_DRAIN_S);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for calls in flight", ie);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.plugin.harness.*;
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+/**
+ * Outcomes of calls made by {@link OpenLoopScheduler}, per action. Two latencies are kept for every successful call:
+ * response time, measured from the moment the call was scheduled to start, and service time, measured from the moment
+ * it has actually started. When the harness falls behind schedule the two diverge, and only the former is what a
+ * client arriving at that time would have experienced. Thread safe.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class OpenLoopStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenLoopStatistics.class);
+
+    /**
+     * Counters and latencies of a single action.
+     */
+    public static final class ActionStatistics {
+
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final Histogram responseTimes = new ConcurrentHistogram(LoadStatistics.HIGHEST_TRACKABLE_LATENCY_US, LoadStatistics.SIGNIFICANT_DIGITS);
+        private final Histogram serviceTimes = new ConcurrentHistogram(LoadStatistics.HIGHEST_TRACKABLE_LATENCY_US, LoadStatistics.SIGNIFICANT_DIGITS);
+
+        public long getSucceeded() {
+            return succeeded.sum();
+        }
+
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return number of calls which were due but not started because too many calls were already in flight.
+         */
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        /**
+         * @return number of calls which were due but not made as there was nothing to make them on, e.g. no reservation
+         * to confirm.
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        /**
+         * @return latencies (in microseconds) of successful calls, measured from their intended start.
+         */
+        @Nonnull
+        public Histogram getResponseTimes() {
+            return responseTimes;
+        }
+
+        /**
+         * @return latencies (in microseconds) of successful calls, measured from their actual start.
+         */
+        @Nonnull
+        public Histogram getServiceTimes() {
+            return serviceTimes;
+        }
+    }
+
+    private final Map<ActionType, ActionStatistics> actions = new ConcurrentHashMap<>();
+    private volatile long scheduledNanos;
+    private volatile long elapsedNanos;
+
+    /**
+     * @param scheduledNanos how long calls were being started for.
+     * @param elapsedNanos how long it took to start the calls and wait for them to complete.
+     */
+    void finish(long scheduledNanos, long elapsedNanos) {
+        this.scheduledNanos = scheduledNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    @Nonnull
+    ActionStatistics of(@Nonnull ActionType actionType) {
+        return actions.computeIfAbsent(actionType, a -> new ActionStatistics());
+    }
+
+    void recordSuccess(@Nonnull ActionType actionType, long intendedStartNanos, long actualStartNanos, long endNanos) {
+        ActionStatistics statistics = of(actionType);
+        statistics.succeeded.increment();
+        LoadStatistics.recordLatency(statistics.responseTimes, endNanos - intendedStartNanos);
+        LoadStatistics.recordLatency(statistics.serviceTimes, endNanos - actualStartNanos);
+    }
+
+    void recordFailure(@Nonnull ActionType actionType) {
+        of(actionType).failed.increment();
+    }
+
+    void recordDrop(@Nonnull ActionType actionType) {
+        of(actionType).dropped.increment();
+    }
+
+    void recordSkip(@Nonnull ActionType actionType) {
+        of(actionType).skipped.increment();
+    }
+
+    /**
+     * Adds outcomes of given action collected elsewhere (e.g. by another process) to these.
+     */
+    void add(@Nonnull ActionType actionType,
+             long succeeded,
+             long failed,
+             long dropped,
+             long skipped,
+             @Nonnull AbstractHistogram responseTimes,
+             @Nonnull AbstractHistogram serviceTimes) {
+        ActionStatistics statistics = of(actionType);
+        statistics.succeeded.add(succeeded);
+        statistics.failed.add(failed);
+        statistics.dropped.add(dropped);
+        statistics.skipped.add(skipped);
+        statistics.responseTimes.add(responseTimes);
+        statistics.serviceTimes.add(serviceTimes);
+    }
+
+    /**
+     * @return statistics of given action, or {@code null} if it was never scheduled.
+     */
+    @Nullable
+    public ActionStatistics get(@Nonnull ActionType actionType) {
+        return actions.get(actionType);
+    }
+
+    /**
+     * @return how long calls were being started for; achieved rates are over this time.
+     */
+    public long getScheduledNanos() {
+        return scheduledNanos;
+    }
+
+    /**
+     * @return how long it took to start the calls and wait for them to complete.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Logs achieved rate, outcome counts and latency percentiles of each action. Rate is over the time calls were being
+     * started for only; waiting for the last ones to complete takes the longest when plugin is slow to respond, and
+     * counting it in would make the plugin look as if it handled even fewer calls than it did.
+     */
+    public void logReport() {
+        double scheduledS = scheduledNanos / 1_000_000_000.0d;
+        log.info(
+                "Calls were started over {}s and completed in {}s",
+                String.format("%.1f", scheduledS),
+                String.format("%.1f", elapsedNanos / 1_000_000_000.0d)
+        );
+        for (ActionType actionType : ActionType.values()) {
+            ActionStatistics statistics = actions.get(actionType);
+            if (statistics == null) {
+                continue;
+            }
+            Histogram responseTimes = statistics.responseTimes;
+            Histogram serviceTimes = statistics.serviceTimes;
+            log.info(
+                    "{}: {} ok ({} calls/s), {} failed, {} dropped, {} skipped; response time ms p50={} p90={} p99={} p99.9={} max={}; service time ms p50={} p99={} max={}",
+                    actionType.methodName,
+                    statistics.getSucceeded(),
+                    String.format("%.2f", statistics.getSucceeded() / scheduledS),
+                    statistics.getFailed(),
+                    statistics.getDropped(),
+                    statistics.getSkipped(),
+                    LoadStatistics.toMillis(responseTimes.getValueAtPercentile(50.0d)),
+                    LoadStatistics.toMillis(responseTimes.getValueAtPercentile(90.0d)),
+                    LoadStatistics.toMillis(responseTimes.getValueAtPercentile(99.0d)),
+                    LoadStatistics.toMillis(responseTimes.getValueAtPercentile(99.9d)),
+                    LoadStatistics.toMillis(responseTimes.getMaxValue()),
+                    LoadStatistics.toMillis(serviceTimes.getValueAtPercentile(50.0d)),
+                    LoadStatistics.toMillis(serviceTimes.getValueAtPercentile(99.0d)),
+                    LoadStatistics.toMillis(serviceTimes.getMaxValue())
+            );
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import javax.annotation.*;
+
+/**
+ * How many calls per second {@link OpenLoopScheduler} is to start at any given moment of the run.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public interface RateProfile {
+
+    /**
+     * @param elapsedNanos time since the run has started.
+     * @return calls per second to start at that time; must be positive.
+     */
+    double rateAt(long elapsedNanos);
+
+    /**
+     * @return profile starting calls at the same rate throughout the run.
+     */
+    @Nonnull
+    static RateProfile constant(double ratePerS) {
+        if (ratePerS <= 0.0d) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerS);
+        }
+        return new RateProfile() {
+            @Override
+            public double rateAt(long elapsedNanos) {
+                return ratePerS;
+            }
+
+            @Override
+            public String toString() {
+                return ratePerS + " calls/s";
+            }
+        };
+    }
+}
@@ -0,0 +1,197 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.collect.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+/**
+ * Finds how much load a plugin can take: calls an action at a rate growing in steps, until (median) latency grows
+ * faster than throughput does. The last step before that is the knee of the throughput/latency curve; loading the plugin any
+ * further mostly makes calls wait longer.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class SaturationFinder {
+
+    private static final Logger log = LoggerFactory.getLogger(SaturationFinder.class);
+
+    /**
+     * A step is sustainable if no more than this share of calls failed or were dropped...
+     */
+    private static final double MAX_SUSTAINABLE_ERROR_RATE = 0.01d;
+
+    /**
+     * ...and plugin has kept up with at least this share of offered rate.
+     */
+    private static final double MIN_SUSTAINABLE_THROUGHPUT_RATIO = 0.95d;
+
+    /**
+     * Median latency must grow this much (relatively) more than throughput for the step to be past the knee; smaller
+     * differences are put down to noise.
+     */
+    private static final double LATENCY_GROWTH_TOLERANCE = 0.1d;
+
+    /**
+     * Measurements of a single load step.
+     */
+    public static final class Step {
+
+        public final double offeredRate;
+
+        /**
+         * Calls succeeded per second of the step, counting those completing after it, while calls in flight drained.
+         */
+        public final double throughput;
+        public final long p50Us;
+        public final long p99Us;
+        public final double errorRate;
+
+        private Step(double offeredRate, double throughput, long p50Us, long p99Us, double errorRate) {
+            this.offeredRate = offeredRate;
+            this.throughput = throughput;
+            this.p50Us = p50Us;
+            this.p99Us = p99Us;
+            this.errorRate = errorRate;
+        }
+
+        public boolean isSustainable() {
+            return (errorRate <= MAX_SUSTAINABLE_ERROR_RATE) && (throughput >= offeredRate * MIN_SUSTAINABLE_THROUGHPUT_RATIO);
+        }
+    }
+
+    /**
+     * All the steps taken for a single action.
+     */
+    public static final class Result {
+
+        public final ActionType actionType;
+        public final List<Step> steps;
+
+        @Nullable
+        public final Step knee;
+
+        private Result(ActionType actionType, List<Step> steps, @Nullable Step knee) {
+            this.actionType = actionType;
+            this.steps = ImmutableList.copyOf(steps);
+            this.knee = knee;
+        }
+
+        /**
+         * @return highest throughput achieved at a sustainable step, or 0 if none was.
+         */
+        public double getMaxSustainableRate() {
+            return steps.stream()
+                    .filter(Step::isSustainable)
+                    .mapToDouble(step -> step.throughput)
+                    .max()
+                    .orElse(0.0d);
+        }
+    }
+
+    private final Workload workload;
+    private final double startRate;
+    private final double rateFactor;
+    private final double maxRate;
+    private final long stepNanos;
+    private final int maxInFlight;
+
+    /**
+     * @param workload workload to call actions on.
+     * @param configuration harness configuration; <tt>loadSaturation*</tt> fields shape the steps.
+     */
+    public SaturationFinder(@Nonnull Workload workload, @Nonnull Main.Configuration configuration) {
+        this.workload = workload;
+        this.startRate = configuration.loadSaturationStartRate;
+        this.rateFactor = 1.0d + configuration.loadSaturationStepPercent / 100.0d;
+        this.maxRate = configuration.loadSaturationMaxRate;
+        this.stepNanos = TimeUnit.SECONDS.toNanos(configuration.loadSaturationStepS);
+        this.maxInFlight = configuration.boundInFlight(configuration.loadMaxInFlight);
+        if (rateFactor <= 1.0d) {
+            throw new IllegalArgumentException("Saturation step must increase the rate");
+        }
+    }
+
+    /**
+     * Steps up the rate of given action until the knee is found, an unsustainable step is reached or max rate is hit.
+     */
+    @Nonnull
+    public Result find(@Nonnull ActionType actionType) {
+        List<Step> steps = new ArrayList<>();
+        Step knee = null;
+        for (double rate = startRate; rate <= maxRate; rate *= rateFactor) {
+            Step step = measure(actionType, rate);
+            steps.add(step);
+            log.info(
+                    "{} at {} calls/s: {} calls/s, p50={}ms, p99={}ms, {}% errors",
+                    actionType.methodName,
+                    String.format("%.1f", step.offeredRate),
+                    String.format("%.1f", step.throughput),
+                    LoadStatistics.toMillis(step.p50Us),
+                    LoadStatistics.toMillis(step.p99Us),
+                    String.format("%.2f", step.errorRate * 100.0d)
+            );
+            if (steps.size() > 1) {
+                Step previous = steps.get(steps.size() - 2);
+                double latencyGrowth = (double) Math.max(step.p50Us, 1L) / Math.max(previous.p50Us, 1L);
+                double throughputGrowth = step.throughput / Math.max(previous.throughput, Double.MIN_VALUE);
+                if (latencyGrowth > throughputGrowth * (1.0d + LATENCY_GROWTH_TOLERANCE)) {
+                    knee = previous;
+                    break;
+                }
+            }
+            if (!step.isSustainable()) {
+                break;
+            }
+        }
+        return new Result(actionType, steps, knee);
+    }
+
+    private Step measure(ActionType actionType, double rate) {
+        OpenLoopStatistics statistics = new OpenLoopScheduler(workload, () -> actionType, rate, stepNanos, maxInFlight).run();
+        OpenLoopStatistics.ActionStatistics action = statistics.get(actionType);
+        if (action == null) {
+            return new Step(rate, 0.0d, 0L, 0L, 0.0d);
+        }
+        Histogram responseTimes = action.getResponseTimes();
+        long calls = action.getSucceeded() + action.getFailed() + action.getDropped();
+        // calls started within the step only, so throughput is over the time they were started in; elapsed time also
+        // includes waiting for the last ones to complete, which would make slow actions look as if they didn't keep up
+        return new Step(
+                rate,
+                action.getSucceeded() / (stepNanos / 1_000_000_000.0d),
+                responseTimes.getValueAtPercentile(50.0d),
+                responseTimes.getValueAtPercentile(99.0d),
+                (calls > 0L) ? (double) (action.getFailed() + action.getDropped()) / calls : 0.0d
+        );
+    }
+
+    /**
+     * Logs knee point and max sustainable rate of each action.
+     */
+    public static void logReport(@Nonnull Collection<Result> results) {
+        for (Result result : results) {
+            if (result.knee != null) {
+                log.info(
+                        "{}: knee at {} calls/s (p99={}ms), max sustainable rate {} calls/s",
+                        result.actionType.methodName,
+                        String.format("%.1f", result.knee.throughput),
+                        LoadStatistics.toMillis(result.knee.p99Us),
+                        String.format("%.1f", result.getMaxSustainableRate())
+                );
+            } else {
+                log.info(
+                        "{}: no knee found within {} steps, max sustainable rate {} calls/s",
+                        result.actionType.methodName,
+                        result.steps.size(),
+                        String.format("%.1f", result.getMaxSustainableRate())
+                );
+            }
+        }
+    }
+}
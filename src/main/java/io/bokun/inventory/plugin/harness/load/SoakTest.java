@@ -0,0 +1,211 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.util.concurrent.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+/**
+ * Runs the booking funnel on a number of concurrent workers for a long time, to catch plugins degrading over time
+ * (e.g. leaking memory or connections). Statistics are collected in windows of fixed length; once enough of them are
+ * collected, the latest windows are compared to the earliest ones after each new window and drift is reported.
+ *
+ * <p>Only the earliest and the latest few windows are kept, and each of them is of fixed size, so memory use doesn't
+ * grow with duration of the run.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class SoakTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SoakTest.class);
+
+    private final Harness harness;
+    private final Main.Configuration configuration;
+    private final int workers;
+    private final long durationNanos;
+    private final long windowNanos;
+    private final int comparedWindows;
+
+    private final Object windowLock = new Object();
+    private LoadStatistics currentWindow = new LoadStatistics();        // guarded by windowLock
+    private long currentWindowStart;                                    // guarded by windowLock
+
+    // below are only accessed by the thread rolling windows
+    private final List<LoadStatistics> earlyWindows = new ArrayList<>();
+    private final Deque<LoadStatistics> lateWindows = new ArrayDeque<>();
+    private final LoadStatistics total = new LoadStatistics();
+    private int windowCount;
+    private int driftedWindowCount;
+
+    /**
+     * @param harness harness running the funnel over the transport of choice.
+     * @param configuration harness configuration; {@link Main.Configuration#loadWorkers},
+     *                      {@link Main.Configuration#loadDurationS}, {@link Main.Configuration#loadSoakWindowS} and
+     *                      {@link Main.Configuration#loadSoakComparedWindows} shape the run.
+     */
+    public SoakTest(@Nonnull Harness harness, @Nonnull Main.Configuration configuration) {
+        this.harness = harness;
+        this.configuration = configuration;
+        this.workers = configuration.loadWorkers;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(configuration.loadDurationS);
+        this.windowNanos = TimeUnit.SECONDS.toNanos(configuration.loadSoakWindowS);
+        this.comparedWindows = configuration.loadSoakComparedWindows;
+    }
+
+    /**
+     * Runs the funnel for the configured duration, reporting each window and drift as it goes.
+     *
+     * @return statistics of the whole run.
+     */
+    @Nonnull
+    public LoadStatistics run() {
+        log.info(
+                "Soaking on {} workers for {}s, in windows of {}s; comparing first and last {} windows",
+                workers,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                TimeUnit.NANOSECONDS.toSeconds(windowNanos),
+                comparedWindows
+        );
+        ExecutorService executor = WorkerThreads.newExecutor(configuration.loadThreads, workers, "soak-worker-%d");
+        ScheduledExecutorService windowRoller = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("soak-window")
+                        .setDaemon(true)
+                        .build()
+        );
+        long start = System.nanoTime();
+        synchronized (windowLock) {
+            currentWindowStart = start;
+        }
+        windowRoller.scheduleAtFixedRate(this::rollWindow, windowNanos, windowNanos, TimeUnit.NANOSECONDS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            results.add(executor.submit(() -> runWorker(start)));
+        }
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+            windowRoller.shutdown();
+            windowRoller.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for soak workers", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Soak worker has failed", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+            windowRoller.shutdownNow();
+        }
+        rollWindow();       // the last, partial one
+        log.info("Soak over; drift detected after {} of {} windows", driftedWindowCount, windowCount);
+        total.logReport(System.nanoTime() - start);
+        return total;
+    }
+
+    private void runWorker(long start) {
+        while (System.nanoTime() - start < durationNanos) {
+            FunnelResult result = harness.runEndToEnd(configuration);
+            synchronized (windowLock) {
+                currentWindow.record(result);
+            }
+        }
+    }
+
+    private void rollWindow() {
+        try {
+            LoadStatistics window;
+            long windowElapsedNanos;
+            synchronized (windowLock) {
+                window = currentWindow;
+                long now = System.nanoTime();
+                windowElapsedNanos = now - currentWindowStart;
+                currentWindow = new LoadStatistics();
+                currentWindowStart = now;
+            }
+            windowCount++;
+            log.info("Window {}:", windowCount);
+            window.logReport(windowElapsedNanos);
+            total.add(window);
+            if (earlyWindows.size() < comparedWindows) {
+                earlyWindows.add(window);
+                return;
+            }
+            lateWindows.addLast(window);
+            if (lateWindows.size() > comparedWindows) {
+                lateWindows.removeFirst();
+            }
+            if ((lateWindows.size() == comparedWindows) && detectDrift()) {
+                driftedWindowCount++;
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not roll soak window", e);       // don't let scheduled rolling stop
+        }
+    }
+
+    /**
+     * @return whether latest windows have drifted from the earliest ones in any respect.
+     */
+    private boolean detectDrift() {
+        LoadStatistics early = merge(earlyWindows);
+        LoadStatistics late = merge(lateWindows);
+        boolean result = false;
+        if (DriftDetector.isErrorRateDrift(
+                early.getFlows() - early.getSuccessfulFlows(),
+                early.getFlows(),
+                late.getFlows() - late.getSuccessfulFlows(),
+                late.getFlows()
+        )) {
+            log.warn(
+                    "Drift: funnel failure rate has grown from {}% to {}%",
+                    percent(early.getFlows() - early.getSuccessfulFlows(), early.getFlows()),
+                    percent(late.getFlows() - late.getSuccessfulFlows(), late.getFlows())
+            );
+            result = true;
+        }
+        for (ActionType step : ActionType.values()) {
+            long earlyCalls = early.getStepSuccesses(step) + early.getStepFailures(step);
+            long lateCalls = late.getStepSuccesses(step) + late.getStepFailures(step);
+            if (DriftDetector.isErrorRateDrift(early.getStepFailures(step), earlyCalls, late.getStepFailures(step), lateCalls)) {
+                log.warn(
+                        "Drift: {} failure rate has grown from {}% to {}%",
+                        step.methodName,
+                        percent(early.getStepFailures(step), earlyCalls),
+                        percent(late.getStepFailures(step), lateCalls)
+                );
+                result = true;
+            }
+            Histogram earlyLatencies = early.getStepLatencies(step);
+            Histogram lateLatencies = late.getStepLatencies(step);
+            if ((earlyLatencies != null) && (lateLatencies != null) && DriftDetector.isLatencyDrift(earlyLatencies, lateLatencies)) {
+                log.warn(
+                        "Drift: {} latency has grown from p50={}ms p99={}ms to p50={}ms p99={}ms",
+                        step.methodName,
+                        LoadStatistics.toMillis(earlyLatencies.getValueAtPercentile(50.0d)),
+                        LoadStatistics.toMillis(earlyLatencies.getValueAtPercentile(99.0d)),
+                        LoadStatistics.toMillis(lateLatencies.getValueAtPercentile(50.0d)),
+                        LoadStatistics.toMillis(lateLatencies.getValueAtPercentile(99.0d))
+                );
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    private static LoadStatistics merge(Iterable<LoadStatistics> windows) {
+        LoadStatistics result = new LoadStatistics();
+        for (LoadStatistics window : windows) {
+            result.add(window);
+        }
+        return result;
+    }
+
+    private static String percent(long part, long total) {
+        return String.format("%.2f", (total > 0L) ? part * 100.0d / total : 0.0d);
+    }
+}
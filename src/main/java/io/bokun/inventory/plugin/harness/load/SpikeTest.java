@@ -0,0 +1,328 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import javax.annotation.*;
+
+import com.google.common.collect.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.HdrHistogram.*;
+import org.slf4j.*;
+
+/**
+ * Calls the plugin at a baseline rate, interrupted by a number of short bursts at a much higher one, the way a flash
+ * sale hits availability. Each burst is preceded and followed by an interval at baseline rate; latency and errors
+ * during and after the burst are compared to those of the interval before the first burst, to tell how the plugin copes:
+ * whether it absorbs the burst, queues calls (latency grows, then recovers), sheds them (errors or drops during the
+ * burst) or collapses (doesn't recover before the next burst).
+ *
+ * <p>Calls are accounted for by the second they were due in, so a backlog built up during the burst shows up as
+ * latency of calls due after it.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class SpikeTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SpikeTest.class);
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    /**
+     * A phase is healthy if no more than this share of calls failed or were dropped...
+     */
+    private static final double MAX_HEALTHY_ERROR_RATE = 0.01d;
+
+    /**
+     * ...and its p99 latency is no more than this much (relatively) above that of the baseline before the first burst.
+     */
+    private static final double LATENCY_TOLERANCE = 0.5d;
+
+    /**
+     * How the plugin has coped with a burst.
+     */
+    public enum Verdict {
+
+        /**
+         * Neither latency nor errors have grown noticeably during the burst.
+         */
+        ABSORBED,
+
+        /**
+         * Latency has grown during the burst, but returned to baseline after it.
+         */
+        QUEUED,
+
+        /**
+         * Calls failed or were dropped during the burst, but plugin returned to baseline after it.
+         */
+        SHED,
+
+        /**
+         * Latency or errors have not returned to baseline by the end of the interval after the burst.
+         */
+        COLLAPSED
+    }
+
+    /**
+     * Outcomes of calls due within some period of the run.
+     */
+    public static final class Phase {
+
+        public final double throughput;
+        public final long p50Us;
+        public final long p99Us;
+        public final long maxUs;
+        public final double errorRate;
+
+        private Phase(double throughput, long p50Us, long p99Us, long maxUs, double errorRate) {
+            this.throughput = throughput;
+            this.p50Us = p50Us;
+            this.p99Us = p99Us;
+            this.maxUs = maxUs;
+            this.errorRate = errorRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%.1f calls/s, p50=%sms p99=%sms max=%sms, %.1f%% errors",
+                    throughput,
+                    LoadStatistics.toMillis(p50Us),
+                    LoadStatistics.toMillis(p99Us),
+                    LoadStatistics.toMillis(maxUs),
+                    errorRate * 100.0d
+            );
+        }
+    }
+
+    /**
+     * Measurements around a single burst.
+     */
+    public static final class Spike {
+
+        /**
+         * The second half of the interval before the burst: the first half may still be recovering from the previous one.
+         */
+        public final Phase before;
+        public final Phase during;
+        public final Phase after;
+
+        /**
+         * Time from the end of the burst until plugin was back to baseline, or {@code -1} if it wasn't by the end of
+         * the interval after the burst.
+         */
+        public final long recoveryS;
+        public final Verdict verdict;
+
+        private Spike(Phase before, Phase during, Phase after, long recoveryS, Verdict verdict) {
+            this.before = before;
+            this.during = during;
+            this.after = after;
+            this.recoveryS = recoveryS;
+            this.verdict = verdict;
+        }
+    }
+
+    /**
+     * Outcomes of calls due within a single second. Guarded by itself.
+     */
+    private static final class Second {
+
+        private long succeeded;
+        private long failed;
+        private long dropped;
+        private final Histogram responseTimes = new Histogram(LoadStatistics.SIGNIFICANT_DIGITS);
+
+        private synchronized void addTo(Histogram responseTimes, long[] counts) {
+            responseTimes.add(this.responseTimes);
+            counts[0] += succeeded;
+            counts[1] += failed + dropped;
+        }
+    }
+
+    private final Workload workload;
+    private final Supplier<ActionType> nextAction;
+    private final double baselineRate;
+    private final double burstRate;
+    private final long burstS;
+    private final long intervalS;
+    private final int count;
+    private final int maxInFlight;
+    private final Second[] seconds;
+
+    /**
+     * @param workload workload to call actions on.
+     * @param nextAction picks action of each call, e.g. {@link WorkloadMix}.
+     * @param configuration harness configuration; <tt>loadSpike*</tt> settings shape the bursts and
+     *                      {@link Main.Configuration#loadMaxInFlight}, bounded by transport, limits calls in flight.
+     */
+    public SpikeTest(@Nonnull Workload workload, @Nonnull Supplier<ActionType> nextAction, @Nonnull Main.Configuration configuration) {
+        if ((configuration.loadSpikeBaselineRate <= 0L) || (configuration.loadSpikeBurstRate <= 0L)) {
+            throw new IllegalArgumentException("Spike rates must be positive");
+        }
+        if ((configuration.loadSpikeBurstS <= 0L) || (configuration.loadSpikeIntervalS <= 0L) || (configuration.loadSpikeCount <= 0)) {
+            throw new IllegalArgumentException("Spike durations and count must be positive");
+        }
+        this.workload = workload;
+        this.nextAction = nextAction;
+        this.baselineRate = configuration.loadSpikeBaselineRate;
+        this.burstRate = configuration.loadSpikeBurstRate;
+        this.burstS = configuration.loadSpikeBurstS;
+        this.intervalS = configuration.loadSpikeIntervalS;
+        this.count = configuration.loadSpikeCount;
+        this.maxInFlight = configuration.boundInFlight(configuration.loadMaxInFlight);
+        this.seconds = new Second[(int) (count * (intervalS + burstS) + intervalS)];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = new Second();
+        }
+    }
+
+    /**
+     * Runs all the bursts and logs the report.
+     *
+     * @return measurements around each burst, in order.
+     */
+    @Nonnull
+    public List<Spike> run() {
+        log.info(
+                "Running {} bursts of {} calls/s for {}s, {}s apart, on top of {} calls/s",
+                count,
+                burstRate,
+                burstS,
+                intervalS,
+                baselineRate
+        );
+        OpenLoopStatistics statistics = new OpenLoopScheduler(
+                workload,
+                nextAction,
+                new RateProfile() {
+                    @Override
+                    public double rateAt(long elapsedNanos) {
+                        return isBurst(elapsedNanos / SECOND_NANOS) ? burstRate : baselineRate;
+                    }
+
+                    @Override
+                    public String toString() {
+                        return String.format("%s calls/s with bursts of %s calls/s", baselineRate, burstRate);
+                    }
+                },
+                seconds.length * SECOND_NANOS,
+                maxInFlight,
+                new SecondRecorder()
+        ).run();
+        statistics.logReport();
+
+        Phase baseline = measure(0, (int) intervalS);
+        log.info("Baseline: {}", baseline);
+        List<Spike> spikes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int burstStart = (int) ((i + 1) * intervalS + i * burstS);
+            int burstEnd = (int) (burstStart + burstS);
+            Spike spike = measure(baseline, burstStart - (int) (intervalS / 2L), burstStart, burstEnd, burstEnd + (int) intervalS);
+            spikes.add(spike);
+            log.info("Burst {} at {}s: {}", i + 1, burstStart, spike.verdict);
+            log.info("  before: {}", spike.before);
+            log.info("  during: {}", spike.during);
+            log.info("  after:  {}", spike.after);
+            if (spike.recoveryS >= 0L) {
+                log.info("  back to baseline {}s after the burst", spike.recoveryS);
+            } else {
+                log.info("  not back to baseline within {}s after the burst", intervalS);
+            }
+        }
+        return ImmutableList.copyOf(spikes);
+    }
+
+    private boolean isBurst(long second) {
+        long cycleSecond = second % (intervalS + burstS);
+        return (second < count * (intervalS + burstS)) && (cycleSecond >= intervalS);
+    }
+
+    private Spike measure(Phase baseline, int beforeStart, int burstStart, int burstEnd, int afterEnd) {
+        Phase before = measure(beforeStart, burstStart);
+        Phase during = measure(burstStart, burstEnd);
+        Phase after = measure(burstEnd, afterEnd);
+
+        // the earliest second from which on every second is as healthy as the baseline was
+        long healthyP99Us = (long) (baseline.p99Us * (1.0d + LATENCY_TOLERANCE));
+        int recoveredAt = afterEnd;
+        while ((recoveredAt > burstEnd) && isHealthy(measure(recoveredAt - 1, recoveredAt), healthyP99Us)) {
+            recoveredAt--;
+        }
+        long recoveryS = (recoveredAt < afterEnd) ? recoveredAt - burstEnd : -1L;
+
+        Verdict verdict;
+        if (recoveryS < 0L) {
+            verdict = Verdict.COLLAPSED;
+        } else if (during.errorRate > MAX_HEALTHY_ERROR_RATE) {
+            verdict = Verdict.SHED;
+        } else if (during.p99Us > healthyP99Us) {
+            verdict = Verdict.QUEUED;
+        } else {
+            verdict = Verdict.ABSORBED;
+        }
+        return new Spike(before, during, after, recoveryS, verdict);
+    }
+
+    private static boolean isHealthy(Phase phase, long healthyP99Us) {
+        return (phase.errorRate <= MAX_HEALTHY_ERROR_RATE) && (phase.p99Us <= healthyP99Us);
+    }
+
+    private Phase measure(int fromSecond, int toSecond) {
+        Histogram responseTimes = new Histogram(LoadStatistics.SIGNIFICANT_DIGITS);
+        long[] counts = new long[2];
+        for (int i = fromSecond; i < toSecond; i++) {
+            seconds[i].addTo(responseTimes, counts);
+        }
+        long total = counts[0] + counts[1];
+        return new Phase(
+                (double) counts[0] / (toSecond - fromSecond),
+                responseTimes.getValueAtPercentile(50.0d),
+                responseTimes.getValueAtPercentile(99.0d),
+                responseTimes.getMaxValue(),
+                (total > 0L) ? (double) counts[1] / total : 0.0d
+        );
+    }
+
+    /**
+     * Accounts for calls by the second they were due in.
+     */
+    private final class SecondRecorder implements OpenLoopScheduler.CallListener {
+
+        private Second of(long intendedStartNanos) {
+            return seconds[(int) Math.min(intendedStartNanos / SECOND_NANOS, seconds.length - 1)];
+        }
+
+        @Override
+        public void succeeded(@Nonnull ActionType actionType, long intendedStartNanos, long responseNanos) {
+            Second second = of(intendedStartNanos);
+            synchronized (second) {
+                second.succeeded++;
+                LoadStatistics.recordLatency(second.responseTimes, responseNanos);
+            }
+        }
+
+        @Override
+        public void failed(@Nonnull ActionType actionType, long intendedStartNanos) {
+            Second second = of(intendedStartNanos);
+            synchronized (second) {
+                second.failed++;
+            }
+        }
+
+        @Override
+        public void dropped(@Nonnull ActionType actionType, long intendedStartNanos) {
+            Second second = of(intendedStartNanos);
+            synchronized (second) {
+                second.dropped++;
+            }
+        }
+
+        @Override
+        public void skipped(@Nonnull ActionType actionType, long intendedStartNanos) {
+            // no call was made, so it neither loaded the plugin nor tells how it copes
+        }
+    }
+}
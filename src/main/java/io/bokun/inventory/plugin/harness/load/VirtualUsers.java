@@ -0,0 +1,286 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import javax.annotation.*;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Runs a number of virtual users, each going through booking funnel sessions one after another the way a customer
+ * would: checking availability, looking at a product, checking its prices, reserving, confirming and cancelling. Users
+ * think between steps and may leave before any step but the first, so that most sessions end early. Reservations of
+ * users who leave before confirming are never released by the harness, which is what exercises the plugin's
+ * reservation expiry; bookings of users who leave before cancelling are kept till the end of the run.
+ *
+ * <p>Unlike {@link OpenLoopScheduler}, this is a closed model: a user doesn't take the next step until the plugin has
+ * responded to the previous one. With long think times most users are idle, so it's best run on virtual threads.</p>
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class VirtualUsers {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualUsers.class);
+
+    /**
+     * How long users take to think before their next step.
+     */
+    public enum ThinkTime {
+
+        /**
+         * Always the mean.
+         */
+        CONSTANT {
+            @Override
+            long nextNanos(Random prng, long meanNanos) {
+                return meanNanos;
+            }
+        },
+
+        /**
+         * Anything between zero and twice the mean.
+         */
+        UNIFORM {
+            @Override
+            long nextNanos(Random prng, long meanNanos) {
+                return (long) (prng.nextDouble() * 2.0d * meanNanos);
+            }
+        },
+
+        /**
+         * Memoryless: mostly short, occasionally long.
+         */
+        EXPONENTIAL {
+            @Override
+            long nextNanos(Random prng, long meanNanos) {
+                return (long) (-Math.log(1.0d - prng.nextDouble()) * meanNanos);
+            }
+        },
+
+        /**
+         * Skewed like human reading time usually is: median is about 60% of the mean, with a long tail.
+         */
+        LOG_NORMAL {
+            @Override
+            long nextNanos(Random prng, long meanNanos) {
+                return (long) (Math.exp(LOG_NORMAL_SIGMA * prng.nextGaussian() - LOG_NORMAL_SIGMA * LOG_NORMAL_SIGMA / 2.0d) * meanNanos);
+            }
+        };
+
+        private static final double LOG_NORMAL_SIGMA = 1.0d;
+
+        abstract long nextNanos(Random prng, long meanNanos);
+    }
+
+    /**
+     * Steps of a session when plugin supports reservations.
+     */
+    private static final List<ActionType> RESERVING_FUNNEL = ImmutableList.of(
+            ActionType.SHALLOW_AVAILABILITY,
+            ActionType.GET_PRODUCT_BY_ID,
+            ActionType.DEEP_AVAILABILITY,
+            ActionType.CREATE_RESERVATION,
+            ActionType.CONFIRM_BOOKING,
+            ActionType.CANCEL_BOOKING
+    );
+
+    /**
+     * Steps of a session when plugin books in one go.
+     */
+    private static final List<ActionType> BOOKING_FUNNEL = ImmutableList.of(
+            ActionType.SHALLOW_AVAILABILITY,
+            ActionType.GET_PRODUCT_BY_ID,
+            ActionType.DEEP_AVAILABILITY,
+            ActionType.CREATE_AND_CONFIRM_BOOKING,
+            ActionType.CANCEL_BOOKING
+    );
+
+    private final Workload workload;
+    private final WorkerThreads.Kind threads;
+    private final int users;
+    private final long durationNanos;
+    private final Map<ActionType, Long> abandonmentPercent;
+    private final ThinkTime thinkTime;
+    private final long thinkNanos;
+    private final List<ActionType> funnel;
+
+    private final OpenLoopStatistics statistics = new OpenLoopStatistics();
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder[] reachedSteps;
+    private final LongAdder abandonedReservations = new LongAdder();
+    private final LongAdder keptBookings = new LongAdder();
+    private final Queue<Workload> sessionsHoldingBookings = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param workload workload of the plugin to call; sessions are spawned off it.
+     * @param configuration harness configuration; {@link Main.Configuration#loadWorkers} (the number of users),
+     *                      {@link Main.Configuration#loadThreads}, {@link Main.Configuration#loadDurationS} and
+     *                      <tt>loadSession*</tt> settings shape the run.
+     */
+    public VirtualUsers(@Nonnull Workload workload, @Nonnull Main.Configuration configuration) {
+        this.workload = workload;
+        this.threads = configuration.loadThreads;
+        this.users = configuration.loadWorkers;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(configuration.loadDurationS);
+        this.abandonmentPercent = parseAbandonment(configuration.loadSessionAbandonment);
+        this.thinkTime = configuration.loadSessionThinkTime;
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(configuration.loadSessionThinkMs);
+        List<ActionType> funnel = workload.getSupportedActions().contains(ActionType.CREATE_RESERVATION) ? RESERVING_FUNNEL : BOOKING_FUNNEL;
+        int supportedSteps = 0;
+        while ((supportedSteps < funnel.size()) && workload.getSupportedActions().contains(funnel.get(supportedSteps))) {
+            supportedSteps++;
+        }
+        if (supportedSteps < funnel.size()) {
+            log.warn("Plugin does not support {}, sessions will end before it", funnel.get(supportedSteps));
+        }
+        this.funnel = funnel.subList(0, supportedSteps);
+        this.reachedSteps = new LongAdder[this.funnel.size()];
+        for (int i = 0; i < reachedSteps.length; i++) {
+            reachedSteps[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Parses probabilities (in percent) of a user leaving before each step, of form
+     * <tt>GET_PRODUCT_BY_ID=50,CREATE_RESERVATION=70</tt>. Steps not mentioned are never left before.
+     */
+    @Nonnull
+    public static Map<ActionType, Long> parseAbandonment(@Nonnull String definition) {
+        Map<ActionType, Long> result = new EnumMap<>(ActionType.class);
+        for (Map.Entry<String, String> abandonment : Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(definition).entrySet()) {
+            try {
+                long percent = Long.parseLong(abandonment.getValue().trim());
+                if ((percent < 0L) || (percent > 100L)) {
+                    throw new IllegalArgumentException("Abandonment is not a percentage: " + percent);
+                }
+                result.put(ActionType.valueOf(abandonment.getKey().trim()), percent);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid session abandonment entry: " + abandonment.getKey() + "=" + abandonment.getValue(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the users for the configured duration, waits for sessions in progress to end, cancels bookings they have
+     * kept and logs the report.
+     *
+     * @return outcomes of the calls made by all the users.
+     */
+    @Nonnull
+    public OpenLoopStatistics run() {
+        log.info(
+                "Running {} {} virtual users for {}s, thinking {} {}ms on average, through {} leaving before steps at {}%",
+                users,
+                threads,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                thinkTime,
+                TimeUnit.NANOSECONDS.toMillis(thinkNanos),
+                funnel,
+                abandonmentPercent
+        );
+        ExecutorService executor = WorkerThreads.newExecutor(threads, users, "virtual-user-%d");
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            results.add(executor.submit(() -> runUser(deadline)));
+        }
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for virtual users", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Virtual user has failed", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+            long elapsedNanos = System.nanoTime() - start;
+            statistics.finish(Math.min(durationNanos, elapsedNanos), elapsedNanos);
+        }
+        for (Workload session; (session = sessionsHoldingBookings.poll()) != null; ) {
+            session.cleanUp();
+        }
+        statistics.logReport();
+        logSessionReport();
+        return statistics;
+    }
+
+    private void runUser(long deadline) {
+        Random prng = new Random(System.nanoTime());
+        while (think(prng, deadline)) {
+            runSession(prng, deadline);
+        }
+    }
+
+    private void runSession(Random prng, long deadline) {
+        sessions.increment();
+        Workload session = workload.newSession();
+        ActionType lastStep = null;
+        for (int i = 0; i < funnel.size(); i++) {
+            ActionType step = funnel.get(i);
+            if ((i > 0) && ((prng.nextInt(100) < abandonmentPercent.getOrDefault(step, 0L)) || !think(prng, deadline))) {
+                break;
+            }
+            reachedSteps[i].increment();
+            long stepStart = System.nanoTime();
+            try {
+                CompletableFuture<?> call = session.start(step);
+                if (call == null) {
+                    statistics.recordSkip(step);
+                    break;
+                }
+                call.join();
+                statistics.recordSuccess(step, stepStart, stepStart, System.nanoTime());
+                lastStep = step;
+            } catch (RuntimeException e) {
+                log.debug("Virtual user has failed to {}", step, e);
+                statistics.recordFailure(step);
+                break;
+            }
+        }
+        if (lastStep == ActionType.CREATE_RESERVATION) {
+            abandonedReservations.increment();
+        } else if ((lastStep == ActionType.CONFIRM_BOOKING) || (lastStep == ActionType.CREATE_AND_CONFIRM_BOOKING)) {
+            keptBookings.increment();
+            sessionsHoldingBookings.add(session);
+        }
+    }
+
+    /**
+     * @return whether user has finished thinking before the run is over.
+     */
+    private boolean think(Random prng, long deadline) {
+        long thinkUntil = System.nanoTime() + thinkTime.nextNanos(prng, thinkNanos);
+        for (long now = System.nanoTime(); now < Math.min(thinkUntil, deadline); now = System.nanoTime()) {
+            LockSupport.parkNanos(Math.min(thinkUntil, deadline) - now);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return thinkUntil < deadline;
+    }
+
+    private void logSessionReport() {
+        long total = sessions.sum();
+        StringBuilder reached = new StringBuilder();
+        for (int i = 0; i < funnel.size(); i++) {
+            long count = reachedSteps[i].sum();
+            reached.append(String.format("%s%s: %d (%.1f%%)", (i > 0) ? ", " : "", funnel.get(i).methodName, count, (total > 0L) ? 100.0d * count / total : 0.0d));
+        }
+        log.info("{} sessions; reached {}", total, reached);
+        log.info(
+                "{} reservations left to expire, {} bookings kept till the end",
+                abandonedReservations.sum(),
+                keptBookings.sum()
+        );
+    }
+}
@@ -0,0 +1,145 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
+
+import javax.annotation.*;
+
+import io.bokun.inventory.plugin.harness.*;
+import org.HdrHistogram.*;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * A message exchanged between {@link LoadCoordinator} and {@link LoadWorkerServer}, sent as a single line of JSON.
+ * A run goes as follows:<ol>
+ *     <li>coordinator sends {@link Type#PREPARE} with the share of load the worker is to generate;</li>
+ *     <li>worker prepares the workload and replies {@link Type#READY};</li>
+ *     <li>once all workers are ready, coordinator sends each {@link Type#START}, telling them to start in a moment;</li>
+ *     <li>worker runs the load and replies {@link Type#REPORT}, with latencies as compressed histograms.</li>
+ * </ol>
+ * Worker replies {@link Type#FAILED} instead if anything goes wrong.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+final class WorkerMessage {
+
+    enum Type {
+        PREPARE, READY, START, REPORT, FAILED
+    }
+
+    /**
+     * Outcomes of one action on one worker.
+     */
+    static final class ActionReport {
+        long succeeded;
+        long failed;
+        long dropped;
+        long skipped;
+        String responseTimes;
+        String serviceTimes;
+    }
+
+    Type type;
+
+    // PREPARE
+    double rate;
+    long durationS;
+    int maxInFlight;
+    String action;
+    String mix;
+
+    // START
+    long startInMs;
+
+    // REPORT
+    long scheduledNanos;
+    long elapsedNanos;
+    Map<ActionType, ActionReport> actions;
+
+    // FAILED
+    String error;
+
+    private WorkerMessage() {
+    }
+
+    @Nonnull
+    static WorkerMessage of(@Nonnull Type type) {
+        WorkerMessage result = new WorkerMessage();
+        result.type = type;
+        return result;
+    }
+
+    @Nonnull
+    static WorkerMessage failed(@Nonnull Exception e) {
+        WorkerMessage result = of(Type.FAILED);
+        result.error = e.toString();
+        return result;
+    }
+
+    void write(@Nonnull Writer writer) throws IOException {
+        writer.write(RestUtil.GSON.toJson(this));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * @return next message read.
+     * @throws EOFException if the other side has closed the connection.
+     */
+    @Nonnull
+    static WorkerMessage read(@Nonnull BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new EOFException("Connection closed");
+        }
+        return RestUtil.GSON.fromJson(line, WorkerMessage.class);
+    }
+
+    /**
+     * @return message of given type read next.
+     * @throws IOException if other side has failed or replied something else.
+     */
+    @Nonnull
+    static WorkerMessage expect(@Nonnull BufferedReader reader, @Nonnull Type type) throws IOException {
+        WorkerMessage result = read(reader);
+        if (result.type == Type.FAILED) {
+            throw new IOException("Worker has failed: " + result.error);
+        }
+        if (result.type != type) {
+            throw new IOException("Expected " + type + " but got " + result.type);
+        }
+        return result;
+    }
+
+    /**
+     * @return histogram in its compressed encoding, as Base64. Encoding is lossless.
+     */
+    @Nonnull
+    static String encode(@Nonnull AbstractHistogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    @Nonnull
+    static Histogram decode(@Nonnull String encoded) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0L);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed histogram", e);
+        }
+    }
+
+    @Nonnull
+    static BufferedReader reader(@Nonnull InputStream in) {
+        return new BufferedReader(new InputStreamReader(in, UTF_8));
+    }
+
+    @Nonnull
+    static Writer writer(@Nonnull OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+    }
+}
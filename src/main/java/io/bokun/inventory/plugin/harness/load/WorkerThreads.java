@@ -0,0 +1,87 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import com.google.common.util.concurrent.*;
+import org.slf4j.*;
+
+/**
+ * Creates executors running load workers. Workers spend nearly all their time blocked waiting for the plugin, so on a
+ * JDK having virtual threads (21+) they can run one per virtual thread: blocking parks the virtual thread instead of
+ * occupying an OS thread and its stack, which lets a single harness keep tens of thousands of workers going. Harness
+ * is built for Java 8, so virtual threads are looked up reflectively.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class WorkerThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerThreads.class);
+
+    /**
+     * What kind of threads to run workers on.
+     */
+    public enum Kind {
+
+        /**
+         * A fixed pool of OS threads, one per worker.
+         */
+        PLATFORM,
+
+        /**
+         * A new virtual thread per worker; falls back to {@link #PLATFORM} if JDK doesn't have them.
+         */
+        VIRTUAL
+    }
+
+    @Nullable
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private WorkerThreads() {
+    }
+
+    @Nullable
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether JDK the harness runs on has virtual threads.
+     */
+    public static boolean isVirtualAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param kind kind of threads to run workers on.
+     * @param workers number of workers to be submitted.
+     * @param nameFormat name format of platform threads, e.g. <tt>load-worker-%d</tt>.
+     * @return executor running each worker submitted on a thread of its own.
+     */
+    @Nonnull
+    public static ExecutorService newExecutor(@Nonnull Kind kind, int workers, @Nonnull String nameFormat) {
+        if (kind == Kind.VIRTUAL) {
+            if (isVirtualAvailable()) {
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException("Could not create virtual thread executor", e);
+                }
+            }
+            log.warn("Virtual threads need JDK 21 or newer, running workers on platform threads instead");
+        }
+        return Executors.newFixedThreadPool(
+                workers,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(nameFormat)
+                        .setDaemon(true)
+                        .build()
+        );
+    }
+}
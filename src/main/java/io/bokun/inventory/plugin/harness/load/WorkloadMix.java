@@ -0,0 +1,103 @@
+package io.bokun.inventory.plugin.harness.load;
+
+import java.util.*;
+import java.util.function.*;
+
+import javax.annotation.*;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.*;
+import com.google.common.primitives.*;
+import io.bokun.inventory.plugin.harness.*;
+import org.slf4j.*;
+
+/**
+ * Picks actions at random, in proportion to their relative weights, e.g. mostly availability checks with an occasional
+ * booking. Not thread safe; meant to be called by {@link OpenLoopScheduler} thread only.
+ *
+ * @author Mindaugas Žakšauskas
+ */
+public final class WorkloadMix implements Supplier<ActionType> {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkloadMix.class);
+
+    private final ActionType[] actions;
+    private final long[] cumulativeWeights;
+    private final Random prng = new Random(System.nanoTime());
+
+    /**
+     * @param weights relative weight of each action; actions of zero weight are never picked.
+     */
+    public WorkloadMix(@Nonnull Map<ActionType, Long> weights) {
+        List<ActionType> actions = new ArrayList<>();
+        List<Long> cumulativeWeights = new ArrayList<>();
+        long total = 0L;
+        for (Map.Entry<ActionType, Long> weight : new EnumMap<>(weights).entrySet()) {
+            if (weight.getValue() < 0L) {
+                throw new IllegalArgumentException("Negative weight of " + weight.getKey() + ": " + weight.getValue());
+            }
+            if (weight.getValue() > 0L) {
+                total += weight.getValue();
+                actions.add(weight.getKey());
+                cumulativeWeights.add(total);
+            }
+        }
+        if (actions.isEmpty()) {
+            throw new IllegalArgumentException("Workload mix has no actions of positive weight: " + weights);
+        }
+        this.actions = actions.toArray(new ActionType[0]);
+        this.cumulativeWeights = Longs.toArray(cumulativeWeights);
+    }
+
+    /**
+     * Parses mix definition of form <tt>SHALLOW_AVAILABILITY=70,DEEP_AVAILABILITY=25,CANCEL_BOOKING=5</tt>.
+     */
+    @Nonnull
+    public static WorkloadMix parse(@Nonnull String definition) {
+        Map<ActionType, Long> weights = new EnumMap<>(ActionType.class);
+        for (Map.Entry<String, String> weight : Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(definition).entrySet()) {
+            try {
+                weights.put(ActionType.valueOf(weight.getKey().trim()), Long.parseLong(weight.getValue().trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid workload mix entry: " + weight.getKey() + "=" + weight.getValue(), e);
+            }
+        }
+        return new WorkloadMix(weights);
+    }
+
+    /**
+     * @return this mix, less actions the workload can't do. Their weight is spread proportionally among the rest.
+     */
+    @Nonnull
+    public WorkloadMix supportedBy(@Nonnull Workload workload) {
+        Map<ActionType, Long> weights = getWeights();
+        Set<ActionType> unsupported = Sets.difference(weights.keySet(), workload.getSupportedActions()).immutableCopy();
+        if (unsupported.isEmpty()) {
+            return this;
+        }
+        log.warn("Plugin does not support {}, leaving them out of the workload mix", unsupported);
+        weights.keySet().removeAll(unsupported);
+        return new WorkloadMix(weights);
+    }
+
+    @Nonnull
+    public Map<ActionType, Long> getWeights() {
+        Map<ActionType, Long> result = new EnumMap<>(ActionType.class);
+        for (int i = 0; i < actions.length; i++) {
+            result.put(actions[i], cumulativeWeights[i] - ((i > 0) ? cumulativeWeights[i - 1] : 0L));
+        }
+        return result;
+    }
+
+    @Override
+    public ActionType get() {
+        long pick = (long) (prng.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = Arrays.binarySearch(cumulativeWeights, pick + 1L);
+        return actions[(index >= 0) ? index : (-index - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return getWeights().toString();
+    }
+}